@@ -0,0 +1,117 @@
+package frc.robot.subsystems;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import frc.robot.Constants.DrivetrainConstants;
+
+/**
+ * Benchmarks for the per-loop swerve math. The motor controllers, angle sensors, drive encoders and gyro are
+ * stubbed with plain fields, and each benchmark calls the same {@link SwerveKinematics} and {@link SwerveOdometry}
+ * methods that {@link SwerveDriveSubsystem} and {@link SwerveDriveModule} call between their hardware reads and
+ * writes, so there is no copy of their math here to drift.
+ *
+ * <p>Run with {@code ./gradlew jmh}. The gc profiler reports the allocation rate next to ns/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SwerveKinematicsBenchmark {
+    private static final int INPUTS = 1024; // A power of two, so the index can wrap with a mask
+
+    private final SwerveKinematics mKinematics = new SwerveKinematics(DrivetrainConstants.WHEELBASE, DrivetrainConstants.TRACKWIDTH);
+
+    // Joystick inputs, varied so nothing can be constant-folded
+    private final double[] mForward = new double[INPUTS];
+    private final double[] mStrafe = new double[INPUTS];
+    private final double[] mRotation = new double[INPUTS];
+    private final double[] mGyroAngle = new double[INPUTS];
+    private int mIndex = 0;
+
+    private final SwerveModuleStates mStates = new SwerveModuleStates();
+
+    // Stubbed module hardware: angle sensor (degrees, unwrapped), drive distance and outputs
+    private final double[] mSensorAngle = new double[4];
+    private final double[] mDriveDistance = new double[4];
+    private final double[] mZeroOffset = { 325.25 + 6, 68.421 + 10, 175.095 + 6, 319.357 + 17 };
+    private final SwerveOdometry mOdometry = new SwerveOdometry();
+    private final SwerveKinematics.ModuleSetpoint[] mSetpoints = new SwerveKinematics.ModuleSetpoint[4];
+    private final double[] mDriveOutput = new double[4];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(5933);
+        for (int i = 0; i < INPUTS; i++) {
+            mForward[i] = random.nextDouble() * 2 - 1;
+            mStrafe[i] = random.nextDouble() * 2 - 1;
+            mRotation[i] = random.nextDouble() * 2 - 1;
+            mGyroAngle[i] = random.nextDouble() * 360;
+        }
+        for (int i = 0; i < 4; i++) {
+            mSensorAngle[i] = random.nextDouble() * 720 - 360;
+            mSetpoints[i] = new SwerveKinematics.ModuleSetpoint();
+        }
+    }
+
+    private int next() {
+        mIndex = (mIndex + 1) & (INPUTS - 1);
+        return mIndex;
+    }
+
+    /** {@link SwerveDriveSubsystem#calculateSwerveModuleStates(double, double, double, SwerveModuleStates)} */
+    @Benchmark
+    public SwerveModuleStates calculateSwerveModuleStates() {
+        int i = next();
+        mKinematics.calculate(mForward[i], mStrafe[i], mRotation[i], mGyroAngle[i], true, mStates);
+        return mStates;
+    }
+
+    /**
+     * {@link SwerveDriveSubsystem#holonomicDrive(double, double, double, boolean)}, field oriented and moving:
+     * the kinematics, then each module's setpoint
+     */
+    @Benchmark
+    public void holonomicDrive(Blackhole blackhole) {
+        int i = next();
+        mKinematics.calculate(mForward[i], mStrafe[i], mRotation[i], mGyroAngle[i], true, mStates);
+
+        for (int m = 0; m < 4; m++) {
+            SwerveKinematics.moduleSetpoint(mStates.getAngle(m) + 180, mZeroOffset[m], mSensorAngle[m], mSetpoints[m]);
+            mDriveOutput[m] = mStates.getSpeed(m);
+        }
+        blackhole.consume(mSetpoints);
+        blackhole.consume(mDriveOutput);
+    }
+
+    /**
+     * {@link SwerveDriveModule#setTargetAngle(double)} for all four modules, through
+     * {@link SwerveKinematics#moduleSetpoint(double, double, double, SwerveKinematics.ModuleSetpoint)}
+     */
+    @Benchmark
+    public void setTargetAngle(Blackhole blackhole) {
+        int i = next();
+        for (int m = 0; m < 4; m++) {
+            SwerveKinematics.moduleSetpoint(mGyroAngle[(i + m) & (INPUTS - 1)], mZeroOffset[m], mSensorAngle[m], mSetpoints[m]);
+        }
+        blackhole.consume(mSetpoints);
+    }
+
+    /** {@link SwerveOdometry#update(double, double, double[], double[])}, as run by SwerveDriveSubsystem.periodic() */
+    @Benchmark
+    public Object odometryUpdate() {
+        int i = next();
+        for (int m = 0; m < 4; m++) {
+            mDriveDistance[m] += mForward[(i + m) & (INPUTS - 1)];
+        }
+        return mOdometry.update(i * 0.02, mGyroAngle[i], mDriveDistance, mSensorAngle);
+    }
+}
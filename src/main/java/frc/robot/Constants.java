@@ -11,13 +11,16 @@ import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.LimitSwitchNormal;
 import com.ctre.phoenix.motorcontrol.LimitSwitchSource;
 import com.ctre.phoenix.motorcontrol.RemoteSensorSource;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
 import com.ctre.phoenix.motorcontrol.VelocityMeasPeriod;
 import com.ctre.phoenix.motorcontrol.can.TalonSRXConfiguration;
 import com.revrobotics.ColorMatch;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
 
 import edu.wpi.first.wpilibj.I2C;
 import edu.wpi.first.wpilibj.I2C.Port;
 import edu.wpi.first.wpilibj.util.Color;
+import frc.robot.util.CANFrameProfile;
 
 /**
  * The Constants class provides a convenient place for teams to hold robot-wide numerical or boolean
@@ -32,6 +35,140 @@ public final class Constants {
   
   // Declare inner public classes to segment constants
 
+  /**
+   * Constants for the vision co-processor link
+   */
+  public static final class VisionConstants {
+    // Accept the old "Identifier: x, distance, width, distanceW, L/C/R" text packets as well as binary frames
+    public static final boolean ACCEPT_TEXT_FRAMES = true;
+
+    public static final String COPROCESSOR_IP = "10.59.33.255";
+    // Where frc.robot.sim.VisionReplayServer runs when the robot code is simulated
+    public static final String SIM_COPROCESSOR_IP = "127.0.0.1";
+    public static final int SEND_PORT = 5800;
+    public static final int RFT_PORT = 5801;
+    public static final int PIECE_PORT = 5805;
+
+    // One direct buffer shared by every stream on the receiver thread
+    public static final int RECEIVE_BUFFER_SIZE = 1024;
+    // Longest the receiver thread blocks before checking for new or closed streams
+    public static final long SELECT_TIMEOUT_MS = 100;
+
+    // The mode is sent as soon as it changes, then repeated this often as a heartbeat
+    public static final long SENDER_KEEPALIVE_MS = 500;
+    public static final long SENDER_RECONNECT_MS = 1000;
+
+    // Seconds after which a vision frame is too old to act on
+    public static final double MAX_TARGET_AGE = 0.25;
+
+    // Stream health: a stream with no packets for STREAM_TIMEOUT seconds counts as stalled, and each
+    // stream's counters are published to NetworkTables ("Vision/<port>") every STATS_PUBLISH_PERIOD seconds
+    public static final double STREAM_TIMEOUT = 0.5;
+    public static final double STATS_PUBLISH_PERIOD = 0.5;
+
+    // Capture-time estimation. Binary frames are synced to the co-processor's clock over a window of frames;
+    // text frames carry no timestamp and are assumed to be DEFAULT_FRAME_LATENCY seconds old on arrival.
+    public static final int CLOCK_SYNC_WINDOW = 50;
+    public static final double MIN_FRAME_LATENCY = 0.010;
+    public static final double DEFAULT_FRAME_LATENCY = 0.050;
+
+    // Latency compensation treats degrees_x as degrees (positive = target right of center)
+    // and distance as inches, the same units as the odometry.
+    public static final boolean COMPENSATE_LATENCY = true;
+  }
+
+  /**
+   * Constants for the scheduler loop profiler (LoopProfiler)
+   */
+  public static final class ProfilerConstants {
+    public static final boolean ENABLED = true;
+    // A scheduler cycle longer than this many seconds is an overrun (TimedRobot's period)
+    public static final double BUDGET = 0.02;
+    public static final double REPORT_PERIOD = 2.0;
+    // Appended to in the operating directory (/home/lvuser on the robot)
+    public static final String LOG_FILE = "loop-profile.log";
+  }
+
+  /**
+   * Constants for the batched SmartDashboard publisher (DashboardPublisher)
+   */
+  public static final class DashboardConstants {
+    // Seconds between publishes; changed values wait at most this long to show up
+    public static final double PUBLISH_PERIOD = 0.1;
+  }
+
+  /**
+   * Constants for the binary telemetry recorder (TelemetryRecorder)
+   */
+  public static final class TelemetryConstants {
+    public static final boolean ENABLED = true;
+    // The roboRIO mounts a USB stick at /u; without one, the file goes in the operating directory
+    public static final String[] DIRECTORIES = { "/u", "/media/sda1" };
+    public static final String FILE_PREFIX = "telemetry-";
+    public static final String FILE_SUFFIX = ".tlm";
+    // Records kept in each file, one per 20 ms loop: 10 minutes
+    public static final int CAPACITY = 30_000;
+    public static final int MAX_FILES = 20;
+  }
+
+  /**
+   * Status frame periods for every motor controller, applied by CANFrameManager, and the numbers behind its
+   * bus utilization estimate. Frames a device's code reads get fast periods; frames nothing reads are slowed
+   * down. Spark MAX frames: kStatus0 applied output and faults, kStatus1 velocity, temperature, voltage and
+   * current, kStatus2 position. Talon SRX periods are capped at 255 ms by the Talon.
+   */
+  public static final class CANBusConstants {
+    public static final double BIT_RATE = 1_000_000;
+    // An extended-ID frame with 8 data bytes is 131 bits before bit stuffing
+    public static final double BITS_PER_FRAME = 140;
+    // Setpoint frames from the roboRIO, assumed for the estimate
+    public static final int CONTROL_FRAME_MS = 10;
+    public static final int CONFIG_TIMEOUT_MS = 10;
+
+    // The angle comes from the analog sensor frame, which the Spark MAX API doesn't let us change,
+    // so the frames here only carry unused motor data
+    public static final CANFrameProfile<PeriodicFrame> SWERVE_ANGLE = CANFrameProfile.sparkMax()
+        .with(PeriodicFrame.kStatus1, 100)
+        .with(PeriodicFrame.kStatus2, 100);
+    // Velocity for the dashboard and closed loop, position for odometry
+    public static final CANFrameProfile<PeriodicFrame> SWERVE_DRIVE = CANFrameProfile.sparkMax()
+        .with(PeriodicFrame.kStatus1, 20)
+        .with(PeriodicFrame.kStatus2, DrivetrainConstants.ODOMETRY_THREAD ? DrivetrainConstants.DRIVE_POSITION_FRAME_MS : 20);
+    // The follower takes its output from the leader's kStatus0; the leader's velocity is the flywheel speed
+    public static final CANFrameProfile<PeriodicFrame> THROWER_LEADER = CANFrameProfile.sparkMax()
+        .with(PeriodicFrame.kStatus0, ThrowerConstants.UPDATE_RATE)
+        .with(PeriodicFrame.kStatus1, 10)
+        .with(PeriodicFrame.kStatus2, 500);
+    public static final CANFrameProfile<PeriodicFrame> THROWER_FOLLOWER = CANFrameProfile.sparkMax()
+        .with(PeriodicFrame.kStatus0, 100)
+        .with(PeriodicFrame.kStatus1, 500)
+        .with(PeriodicFrame.kStatus2, 500);
+    public static final CANFrameProfile<PeriodicFrame> CONTROL_PANEL_SPINNER = CANFrameProfile.sparkMax()
+        .with(PeriodicFrame.kStatus1, 500)
+        .with(PeriodicFrame.kStatus2, 500);
+
+    // Position closed loop: the hopper reads its position (Status 2) and works out the error from the target it set
+    public static final CANFrameProfile<StatusFrameEnhanced> HOPPER = CANFrameProfile.talonSRX()
+        .with(StatusFrameEnhanced.Status_3_Quadrature, 255)
+        .with(StatusFrameEnhanced.Status_4_AinTempVbat, 255)
+        .with(StatusFrameEnhanced.Status_8_PulseWidth, 255)
+        .with(StatusFrameEnhanced.Status_10_Targets, 255)
+        .with(StatusFrameEnhanced.Status_12_Feedback1, 255)
+        .with(StatusFrameEnhanced.Status_13_Base_PIDF0, 255)
+        .with(StatusFrameEnhanced.Status_14_Turn_PIDF1, 255);
+    // Open loop with no sensor
+    public static final CANFrameProfile<StatusFrameEnhanced> CLIMBER_WINCH = CANFrameProfile.talonSRX()
+        .with(StatusFrameEnhanced.Status_1_General, 20)
+        .with(StatusFrameEnhanced.Status_2_Feedback0, 255)
+        .with(StatusFrameEnhanced.Status_3_Quadrature, 255)
+        .with(StatusFrameEnhanced.Status_4_AinTempVbat, 255)
+        .with(StatusFrameEnhanced.Status_8_PulseWidth, 255)
+        .with(StatusFrameEnhanced.Status_10_Targets, 255)
+        .with(StatusFrameEnhanced.Status_12_Feedback1, 255)
+        .with(StatusFrameEnhanced.Status_13_Base_PIDF0, 255)
+        .with(StatusFrameEnhanced.Status_14_Turn_PIDF1, 255);
+  }
+
   /**
   * Contains the CAN IDs of the Drivetrian SparkMax motors
   */ 
@@ -55,6 +192,40 @@ public final class Constants {
     public static final double TRACKWIDTH = 19.5;
     public static final double WIDTH = 25.75;
     public static final double LENGTH = 28;
+    // Top speed (feet per second) and acceleration (feet per second squared), for getMaxVelocity() and
+    // getMaxAcceleration()
+    public static final double MAX_VELOCITY = 10;
+    public static final double MAX_ACCELERATION = 5.5;
+
+    // Odometry runs on its own real-time thread at ODOMETRY_PERIOD seconds (200 Hz matches the navX update rate).
+    // When false it runs once per loop in the drivetrain's periodic().
+    public static final boolean ODOMETRY_THREAD = true;
+    public static final double ODOMETRY_PERIOD = 0.005;
+    public static final int ODOMETRY_THREAD_PRIORITY = 15;
+    // Drive encoder position status frame with the odometry thread (CANBusConstants.SWERVE_DRIVE), so the
+    // encoders are as fresh as the odometry samples
+    public static final int DRIVE_POSITION_FRAME_MS = 5;
+
+    // Samples of pose history kept for vision latency compensation (one second at 200 Hz)
+    public static final int POSE_HISTORY_SIZE = 200;
+    // Chassis velocity is the change in pose over this many seconds of history, which averages out encoder noise
+    public static final double VELOCITY_WINDOW = 0.1;
+
+    // Drive wheels run closed-loop on velocity with the module feedforward below. When false they run open
+    // loop at a fraction of full output, as before. Leave false until the gains below are replaced with the fit
+    // "Characterize Drive" prints; the ones here are placeholders.
+    public static final boolean VELOCITY_DRIVE = false;
+    // Drive output is voltage compensated to this, so the feedforward holds as the battery sags
+    public static final double NOMINAL_VOLTAGE = 12;
+    // Drive feedforward for each module (LF, RF, RB, LB) in volts, inches per second and inches per second
+    // squared. Starting values from the NEO's free speed (about 143 in/s through the MK2 gearing at 12 V);
+    // replace them with SwerveCharacterizationCommand's fit.
+    public static final double[] DRIVE_kS = { 0.2, 0.2, 0.2, 0.2 };
+    public static final double[] DRIVE_kV = { 0.084, 0.084, 0.084, 0.084 };
+    public static final double[] DRIVE_kA = { 0.01, 0.01, 0.01, 0.01 };
+    // Spark MAX velocity P for the drive (output fraction per motor RPM of error), in its own PID slot so the
+    // position gains for setTargetDistance() are untouched
+    public static final double DRIVE_VELOCITY_kP = 0.0001;
 
     // PID constants for swerve modules
     public static final double ANGLE_kP = 3.0;
@@ -77,6 +248,35 @@ public final class Constants {
     public static final double ROTATION_kD = 0.0;
   }
 
+  /**
+   * Contains how autonomous trajectories are generated (TrajectoryGenerator) and followed (FollowTrajectoryCommand)
+   */
+  public static final class TrajectoryConstants {
+    // Waypoint files ("name.csv") in this directory under the deploy directory (src/main/deploy), one path per file
+    public static final String PATH_DIRECTORY = "paths";
+    // Trajectories generated from them at build time ("name" + CACHE_EXTENSION), deployed to the same directory
+    // (see the generateTrajectories task) and memory-mapped at robot init instead of being generated again
+    public static final String CACHE_EXTENSION = ".traj";
+    // Trajectories are sampled every PERIOD seconds, the loop period
+    public static final double PERIOD = 0.02;
+    // Paths are planned for these fractions of the drivetrain's top speed and acceleration, leaving the rest of
+    // the wheels' output for the follower's corrections
+    public static final double VELOCITY_FRACTION = 0.8;
+    public static final double ACCELERATION_FRACTION = 0.8;
+
+    // Follower feedback on top of the trajectory's velocity: inches per second per inch of position error, and
+    // degrees per second per degree of heading error
+    public static final double TRANSLATION_kP = 2.0;
+    public static final double ROTATION_kP = 3.0;
+    // The follower finishes when the trajectory is over and the robot is within these (inches, degrees) of its
+    // end, or SETTLE_TIMEOUT seconds after it is over
+    public static final double POSITION_TOLERANCE = 2;
+    public static final double HEADING_TOLERANCE = 3;
+    public static final double SETTLE_TIMEOUT = 1.0;
+    // Below this speed (inches per second) the modules hold their angles rather than turn for a tiny command
+    public static final double MIN_STEER_SPEED = 1;
+  }
+
   /**
    * Contains the CAN IDs of the elevator SparkMax motors
    */
@@ -90,41 +290,146 @@ public final class Constants {
    * Contains the physical and PID constants of the Thrower subsystem
    */
   public static final class ThrowerConstants {
-    public static final double kP = 0;
+    // Flywheel model in volts, motor RPM and RPM per second, sent as the Spark MAX's arbitrary feedforward.
+    // Starting values from the NEO's free speed (motor RPM at 12 V); replace them with a characterization fit.
+    public static final double MOTOR_FREE_SPEED = 5676;
+    public static final double kS = 0.12;
+    public static final double kV = 12.0 / MOTOR_FREE_SPEED;
+    public static final double kA = 0.002;
+    // Output is voltage compensated so the model and the PID gains hold as the battery sags
+    public static final double NOMINAL_VOLTAGE = 12;
+
+    // The Spark MAX's velocity PID only corrects what the model misses, so its own FF stays 0
+    public static final double kP = 0.0002;
     public static final double kI = 0;
     public static final double kD = 0;
     public static final double FEED_FORWARD = 0;
     public static final double kIz = 0;
     public static final double MIN_OUTPUT = -1;
     public static final double MAX_OUTPUT = 1;
-    public static final double GEAR_RATIO_MOTOR_TO_WHEEL = 40/48; // 40T pinion, 48T wheel gear
+    public static final double GEAR_RATIO_MOTOR_TO_WHEEL = 40.0/48.0; // 40T pinion, 48T wheel gear: wheel RPM = motor RPM * ratio
     public static final int UPDATE_RATE = 5;  // 200 Hz update rate leader -> follower. Default 10ms
 
+    // Aiming at a target: each new vision distance goes through a median of this many frames, to drop single
+    // bad frames, then exponential smoothing with this time constant (seconds)
+    public static final int DISTANCE_MEDIAN_SAMPLES = 5;
+    public static final double DISTANCE_TIME_CONSTANT = 0.15;
+    // Seconds from the setpoint to the ball leaving for the target. Driving toward the target during that time
+    // shortens the shot, so the distance is led by the closing speed times this. Measure on the real robot.
+    public static final double SHOT_LEAD_TIME = 0.5;
+    // Wheel RPM a new setpoint has to differ from the one the Spark MAX has before it is sent
+    public static final double SETPOINT_DEADBAND = 25;
+    // Smoothing time constant (seconds) for the wheel acceleration, which is the loop-to-loop change in velocity
+    public static final double ACCELERATION_TIME_CONSTANT = 0.04;
+
+    // Recovery boost: a ball leaving drags the wheel down. Once it is more than RECOVERY_DIP (a fraction of the
+    // setpoint) slow and still slowing faster than RECOVERY_DECELERATION (motor RPM per second), the model's
+    // voltage for getting back to speed in RECOVERY_TIME seconds is added, up to RECOVERY_MAX_BOOST volts, until
+    // the wheel is within RECOVERY_EXIT of the setpoint.
+    public static final double RECOVERY_DIP = 0.02;
+    public static final double RECOVERY_DECELERATION = 500;
+    public static final double RECOVERY_TIME = 0.15;
+    public static final double RECOVERY_MAX_BOOST = 4;
+    public static final double RECOVERY_EXIT = 0.01;
+    // Volts the feedforward has to change by before it is sent again
+    public static final double FEEDFORWARD_DEADBAND = 0.05;
+
     public static final boolean TUNE = false;
   }
 
   /**
-   * Contains the LUT for the thrower
+   * Contains the drive characterization run (SwerveCharacterizationCommand). The robot drives forward during
+   * the ramp and back during the step, so give it about 15 feet of open floor.
+   */
+  public static final class SwerveCharacterization {
+    // Seconds for the modules to turn to straight ahead before the ramp
+    public static final double ALIGN_TIME = 0.5;
+    public static final double RAMP_RATE = 0.5;
+    public static final double RAMP_MAX_VOLTS = 4;
+    // Then brake until every wheel is slower than STOP_SPEED (inches per second), or STOP_TIMEOUT seconds
+    public static final double STOP_SPEED = 2;
+    public static final double STOP_TIMEOUT = 3;
+    // Then drive back at STEP_VOLTS for STEP_TIME seconds
+    public static final double STEP_VOLTS = 4;
+    public static final double STEP_TIME = 1.5;
+
+    // Sampled at the drive velocity status period (CANBusConstants.SWERVE_DRIVE kStatus1)
+    public static final double SAMPLE_PERIOD = 0.02;
+    public static final int CAPACITY = 1000;
+    // Samples slower than this (inches per second) are left out of the fit
+    public static final double MIN_FIT_VELOCITY = 2;
+
+    // Written to the operating directory as FILE_PREFIX + module + "-" + date + ".csv"
+    public static final String FILE_PREFIX = "swerve-characterization-";
+  }
+
+  /**
+   * Contains the thrower characterization run (ThrowerCharacterizationCommand)
+   */
+  public static final class ThrowerCharacterization {
+    // Quasistatic ramp: RAMP_RATE volts per second up to RAMP_MAX_VOLTS, slow enough that acceleration is tiny
+    public static final double RAMP_RATE = 0.5;
+    public static final double RAMP_MAX_VOLTS = 8;
+    // Then coast until the wheel is below COAST_STOP_RPM (or COAST_TIMEOUT seconds), and step to STEP_VOLTS for
+    // STEP_TIME seconds, which is where kA comes from
+    public static final double COAST_STOP_RPM = 50;
+    public static final double COAST_TIMEOUT = 20;
+    public static final double STEP_VOLTS = 6;
+    public static final double STEP_TIME = 3;
+
+    // Samples are taken at the leader's velocity status period (CANBusConstants.THROWER_LEADER kStatus1) into
+    // a buffer of CAPACITY samples, enough for the whole run
+    public static final double SAMPLE_PERIOD = 0.01;
+    public static final int CAPACITY = 5000;
+
+    // Samples slower than this (motor RPM) are left out of the fit, where static friction and noise dominate
+    public static final double MIN_FIT_VELOCITY = 50;
+    // The recommended kP makes the closed-loop velocity settle with this time constant (seconds)
+    public static final double RESPONSE_TIME = 0.1;
+
+    // Written to the operating directory as FILE_PREFIX + date + ".csv"
+    public static final String FILE_PREFIX = "thrower-characterization-";
+  }
+
+  /**
+   * Contains where the thrower's distance to wheel RPM table comes from
    */
   public static final class ThrowerLUT {
-    // Known distance to rpm values, where
-    // index = [some mathematical formula, e.g. (int)distance/20]
-    private static final double[] LUT = {
-
-    };
-
-    /**
-     * Use a LUT to map distance to RPMs. Linearly approximate between values.
-     */
-    public static double distanceToRPMs(double inches){
-      // TODO: implement LUT
-      return inches;
-    }
+    // "distance, rpm" lines in the deploy directory (src/main/deploy), loaded into a ShotTable
+    public static final String FILE = "shot-table.csv";
+    // While disabled, the file is checked this often (seconds) and reloaded if it changed, so the table can
+    // be retuned by copying a new file to /home/lvuser/deploy without redeploying code
+    public static final double RELOAD_CHECK_PERIOD = 1.0;
+    // Fastest wheel RPM a table may ask for: 90% of free speed, leaving voltage for load, recovery and battery
+    // sag. A table with a faster shot is refused, since the thrower would never get to it and never fire.
+    public static final double MAX_RPM = ThrowerConstants.MOTOR_FREE_SPEED * ThrowerConstants.GEAR_RATIO_MOTOR_TO_WHEEL * 0.9;
+  }
+
+  /**
+   * Contains when the shot coordinator feeds the next ball
+   */
+  public static final class ShotConstants {
+    // Flywheel within this fraction of its setpoint, predicted FEED_TIME seconds ahead from its acceleration
+    // (the time for a ball to get from the hopper to the wheel), so a recovering wheel can be fed on its way up
+    public static final double FLYWHEEL_TOLERANCE = 0.03;
+    public static final double FEED_TIME = 0.08;
+    // Target within this many degrees of straight ahead
+    public static final double HEADING_TOLERANCE = 2.0;
+    // Hopper within this many encoder ticks of its slot
+    public static final int HOPPER_TOLERANCE = 5;
+    // Seconds after feeding before the next ball, so the wheel's slowdown shows up in its velocity first
+    public static final double MIN_SHOT_INTERVAL = 0.15;
+    // Only feed when the hopper's sensor sees a ball in the loading slot. The sensor is still a stand-in (see
+    // HopperSubsystem), so turn this off if it misses balls and the stored count will be trusted on its own.
+    public static final boolean REQUIRE_BALL_SENSOR = true;
   }
 
   public static final class HopperConstants {
     public static final int MAIN_MOTOR_ID = 15;
     public static final double ENCODER_TICKS_TO_REVOLUTION = 4096.0;
+    public static final int SLOTS = 6;
+    // Balls the hopper holds; one slot stays empty
+    public static final int CAPACITY = 5;
 
     public static final int SENSOR_PORT = 0;
 	  public static final double BALL_LOADED_VOLTAGE = 3;
@@ -8,9 +8,12 @@
 package frc.robot;
 
 import edu.wpi.first.wpilibj.TimedRobot;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.util.CANFrameManager;
+import frc.robot.util.DashboardPublisher;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.TelemetryRecorder;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -23,6 +26,8 @@ public class Robot extends TimedRobot {
 
   private RobotContainer m_robotContainer;
 
+  private final DashboardPublisher.StringValue m_matchString = DashboardPublisher.string("Match String");
+
   /**
    * This function is run when the robot is first started up and should be used for any
    * initialization code.
@@ -32,6 +37,9 @@ public class Robot extends TimedRobot {
     // Instantiate our RobotContainer.  This will perform all our button bindings, and put our
     // autonomous chooser on the dashboard.
     m_robotContainer = new RobotContainer();
+    CANFrameManager.publish();
+    LoopProfiler.install();
+    TelemetryRecorder.start();
   }
 
   /**
@@ -47,7 +55,11 @@ public class Robot extends TimedRobot {
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
+    LoopProfiler.startCycle();
     CommandScheduler.getInstance().run();
+    LoopProfiler.endCycle();
+    DashboardPublisher.flush();
+    TelemetryRecorder.record();
   }
 
   /**
@@ -57,6 +69,7 @@ public class Robot extends TimedRobot {
   public void disabledInit() {
     // Kill vision
     m_robotContainer.visionShutDown();
+    TelemetryRecorder.flush();
   }
 
   @Override
@@ -106,7 +119,7 @@ public class Robot extends TimedRobot {
   @Override
   public void teleopPeriodic() {
     // Pull down the match specific string and put it on the Dashboard
-    SmartDashboard.putString("Match String", m_robotContainer.getGameSpecificMessage());
+    m_matchString.set(m_robotContainer.getGameSpecificMessage());
   }
 
   @Override
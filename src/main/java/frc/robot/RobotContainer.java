@@ -7,18 +7,27 @@
 
 package frc.robot;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.GenericHID;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj.XboxController.Axis;
 import edu.wpi.first.wpilibj.XboxController.Button;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.commands.DefaultSwerveCommand;
-import frc.robot.commands.DischargeAllCommand;
+import frc.robot.commands.FollowTrajectoryCommand;
 import frc.robot.commands.SampleColorCommand;
 import frc.robot.commands.SendVisionCommand;
+import frc.robot.commands.ShotCoordinatorCommand;
 import frc.robot.commands.SpinThreeTimesCommand;
-import frc.robot.commands.SpinUpThrowerCommand;
+import frc.robot.commands.SwerveCharacterizationCommand;
+import frc.robot.commands.ThrowerCharacterizationCommand;
 import frc.robot.commands.ThrowToTargetCommand;
 import frc.robot.commands.VisionApproachTargetCommand;
 import frc.robot.commands.VisionLineUpWithTargetCommand;
@@ -28,14 +37,21 @@ import frc.robot.subsystems.HopperSubsystem;
 import frc.robot.subsystems.IntakeSubsystem;
 import frc.robot.subsystems.SwerveDriveSubsystem;
 import frc.robot.subsystems.ThrowerSubsystem;
+import frc.robot.Constants.HopperConstants;
+import frc.robot.Constants.TrajectoryConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.util.SocketVisionReceiver;
 import frc.robot.util.SocketVisionSendWrapper;
 import frc.robot.util.SocketVisionWrapper;
+import frc.robot.util.Trajectory;
+import frc.robot.util.TrajectoryCache;
+import frc.robot.util.TrajectoryGenerator;
 import frc.robot.util.XBoxGamepad;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.ConditionalCommand;
 import edu.wpi.first.wpilibj2.command.FunctionalCommand;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
-import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
 import edu.wpi.first.wpilibj2.command.ParallelRaceGroup;
 import edu.wpi.first.wpilibj2.command.PerpetualCommand;
 import edu.wpi.first.wpilibj2.command.PrintCommand;
@@ -61,10 +77,14 @@ public class RobotContainer {
   private final IntakeSubsystem m_intake = new IntakeSubsystem();
   private final ClimberSubsystem m_climber = new ClimberSubsystem();
 
-  // Vision objects
-  private final SocketVisionWrapper rft_ = new SocketVisionWrapper("10.59.33.255", 5801);
-  private final SocketVisionWrapper piece_ = new SocketVisionWrapper("10.59.33.255", 5805);
-  private final SocketVisionSendWrapper sender_ = new SocketVisionSendWrapper("10.59.33.255", 5800);
+  // Vision objects. Every vision stream is read by the one receiver thread. In simulation the co-processor is
+  // frc.robot.sim.VisionReplayServer on this machine, so the sender can't also bind the mode port.
+  private final String m_coprocessorIp = RobotBase.isSimulation() ? VisionConstants.SIM_COPROCESSOR_IP : VisionConstants.COPROCESSOR_IP;
+  private final SocketVisionReceiver m_visionReceiver = new SocketVisionReceiver();
+  private final SocketVisionWrapper rft_ = new SocketVisionWrapper(m_visionReceiver, m_coprocessorIp, VisionConstants.RFT_PORT);
+  private final SocketVisionWrapper piece_ = new SocketVisionWrapper(m_visionReceiver, m_coprocessorIp, VisionConstants.PIECE_PORT);
+  private final SocketVisionSendWrapper sender_ = new SocketVisionSendWrapper(m_coprocessorIp, VisionConstants.SEND_PORT,
+      RobotBase.isSimulation() ? 0 : VisionConstants.SEND_PORT);
 
   // DriveStation for GameSpecificMessage
   DriverStation m_station = DriverStation.getInstance();
@@ -73,6 +93,9 @@ public class RobotContainer {
   private final XBoxGamepad m_primaryController = new XBoxGamepad(0);
   private final XBoxGamepad m_secondaryController = new XBoxGamepad(1);
 
+  // Autonomous routines to pick from on the dashboard
+  private final SendableChooser<Command> m_autoChooser = new SendableChooser<>();
+
   /**
    * The container for the robot. Contains subsystems, OI devices, and commands.
    */
@@ -81,6 +104,13 @@ public class RobotContainer {
     configureDefaultCommands();
     // Configure the button bindings
     configureButtonBindings();
+    // Generate the autonomous paths and put the chooser on the dashboard
+    configureAutonomous();
+
+    // Characterize the thrower from a dashboard button (run it with the hopper empty)
+    SmartDashboard.putData("Characterize Thrower", new ThrowerCharacterizationCommand(m_thrower));
+    // Characterize the drive from a dashboard button (the robot drives about 15 feet)
+    SmartDashboard.putData("Characterize Drive", new SwerveCharacterizationCommand(m_swerveDrive));
   }
 
   /**
@@ -122,26 +152,22 @@ public class RobotContainer {
       new InstantCommand(()-> m_swerveDrive.setFieldOriented(true), m_swerveDrive)
     );
 
-    // Put accumulate & print output on a button!
+    // Put position output on a button! Odometry runs every loop in the drivetrain's periodic(), so this only prints.
     m_primaryController.getButton(Button.kY).whileHeld(
-      new ParallelCommandGroup(
-        new InstantCommand(m_swerveDrive::accumulatePosition), // No need to state that this uses the swerve subsystem b/c it's only a sensor read.
-        new InstantCommand(() -> SmartDashboard.putNumberArray("Robot Position: ", m_swerveDrive.getPosition())) // Use a lambda to get at SmartDashboard
-      )
+      new InstantCommand(() -> SmartDashboard.putNumberArray("Robot Position: ", m_swerveDrive.getPosition())) // Use a lambda to get at SmartDashboard
     );
 
     m_secondaryController.getButton(Button.kStickLeft).whileHeld(
       new SampleColorCommand(m_controlPanel)
     );
 
-    // Throw at the RFT target on a button
+    // Throw at the RFT target on a button. Spin-up, line-up and hopper positioning all run at once, and the
+    // coordinator feeds each ball as soon as the shot is ready; when the last one has reached the wheel, the rest stop.
     m_secondaryController.getButton(Button.kA).whenPressed(
-      new SequentialCommandGroup(
-        new SpinUpThrowerCommand(m_thrower, rft_),
-        new ParallelRaceGroup(
-          new ThrowToTargetCommand(m_thrower, rft_),
-          new DischargeAllCommand(m_hopper)
-        )
+      new ParallelDeadlineGroup(
+        new ShotCoordinatorCommand(m_hopper, m_thrower, m_swerveDrive, rft_),
+        new ThrowToTargetCommand(m_thrower, m_swerveDrive, rft_),
+        new VisionLineUpWithTargetCommand(m_swerveDrive, rft_).perpetually() // Keep holding the line-up while shooting
       )
     );
 
@@ -163,7 +189,7 @@ public class RobotContainer {
            ) 
         ),
         new PerpetualCommand(new InstantCommand(()->{m_intake.raiseIntake(); m_intake.setMotor(-0.7);})), // Raise intake and backdrive if there are 5 balls in the daisy
-        () -> {return m_hopper.getStoredCount() < 5;} // The conditional to branch on: if there are less than 5 balls, intake; else, raise intake and backdrive
+        () -> {return m_hopper.getStoredCount() < HopperConstants.CAPACITY;} // The conditional to branch on: if there are less than 5 balls, intake; else, raise intake and backdrive
       )  
     ).whenReleased( // On release lift the intake, then outtake at 0.7 power for 1.5 seconds. Note that beforeStarting is a decorator that is written after the command body...
       new ParallelRaceGroup(
@@ -229,6 +255,36 @@ public class RobotContainer {
     m_climber.setDefaultCommand(new InstantCommand(m_climber::turnOffSolenoid, m_climber).perpetually()); // By default, have the solenoid off. Never ends via perpetually() decorator
   }
 
+  /**
+   * Put the autonomous routines on the dashboard to pick from: the vision approach, and a path for each waypoint
+   * file in the deploy directory's paths folder. Each path's trajectory is mapped from the cache the build
+   * deployed with it, or generated here at robot init if there isn't a matching one, so nothing is generated once
+   * the match starts.
+   */
+  private void configureAutonomous() {
+    m_autoChooser.setDefaultOption("Vision Approach", new VisionApproachTargetCommand(m_swerveDrive, rft_, 100, 5, 5));
+
+    TrajectoryGenerator generator = TrajectoryGenerator.forDrivetrain();
+    File directory = new File(Filesystem.getDeployDirectory(), TrajectoryConstants.PATH_DIRECTORY);
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(".csv"));
+    if (files == null) {
+      System.out.println("RobotContainer could not find any paths in " + directory);
+      files = new File[0];
+    }
+    Arrays.sort(files);
+    for (File file : files) {
+      String name = file.getName().substring(0, file.getName().length() - ".csv".length());
+      try {
+        Trajectory trajectory = TrajectoryCache.load(generator, file.toPath());
+        m_autoChooser.addOption("Path: " + name, new FollowTrajectoryCommand(m_swerveDrive, trajectory, true));
+        System.out.println("RobotContainer loaded path " + name + ": " + trajectory);
+      } catch (IOException e) {
+        System.out.println("RobotContainer could not load path " + name + ": " + e.getMessage());
+      }
+    }
+    SmartDashboard.putData("Autonomous", m_autoChooser);
+  }
+
   /**
    * This grabs the game message from the Driver Station
    * @return The game specific message.
@@ -243,6 +299,7 @@ public class RobotContainer {
    */
   public void visionInit(){
     sender_.init();
+    m_visionReceiver.init();
     rft_.init();
     piece_.init();
   }
@@ -255,16 +312,15 @@ public class RobotContainer {
     sender_.shutDown();
     rft_.shutDown();
     piece_.shutDown();
+    m_visionReceiver.shutDown();
   }
 
   /**
    * Use this to pass the autonomous command to the main {@link Robot} class.
    *
-   * @return the command to run in autonomous
+   * @return the command picked on the dashboard's "Autonomous" chooser
    */
   public Command getAutonomousCommand() {
-    Command autoCommand = new VisionApproachTargetCommand(m_swerveDrive, rft_, 100, 5, 5);
-    
-    return autoCommand;
+    return m_autoChooser.getSelected();
   }
 }
@@ -0,0 +1,113 @@
+/*----------------------------------------------------------------------------*/
+/* Copyright (c) 2019 FIRST. All Rights Reserved.                             */
+/* Open Source Software - may be modified and shared by FRC teams. The code   */
+/* must be accompanied by the FIRST BSD license file in the root directory of */
+/* the project.                                                               */
+/*----------------------------------------------------------------------------*/
+
+
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.TrajectoryConstants;
+import frc.robot.subsystems.SwerveDriveSubsystem;
+import frc.robot.util.DashboardPublisher;
+import frc.robot.util.PoseHistory;
+import frc.robot.util.RobotClock;
+import frc.robot.util.RobotPose;
+import frc.robot.util.Trajectory;
+
+/**
+ * Drives a {@link Trajectory}. Every loop the trajectory's velocity for the time since the start is sent straight
+ * to the drive as a feedforward, and the odometry's distance from where the trajectory says the robot should be is
+ * fed back proportionally on top, so the robot tracks the path without waiting for error to build up.
+ *
+ * <p>Finishes when the trajectory is over and the robot has settled at its end.
+ */
+public class FollowTrajectoryCommand extends CommandBase {
+  // Shared by every follower: x, y and heading error of whichever is running
+  private static final DashboardPublisher.NumberArrayValue s_errorValue = DashboardPublisher.numberArray("Auto/Tracking Error", 3);
+
+  private final SwerveDriveSubsystem m_drivetrain;
+  private final Trajectory m_trajectory;
+  private final boolean m_resetPosition;
+
+  private final double[] m_reference = new double[Trajectory.STRIDE];
+  private double m_startTime = 0;
+  private double m_positionError = 0;
+  private double m_headingError = 0;
+
+  /**
+   * Creates a new FollowTrajectoryCommand.
+   *
+   * @param drivetrain The drivetrain to drive.
+   * @param trajectory The trajectory to follow, in the odometry's frame.
+   * @param resetPosition true to set the odometry's position to the start of the trajectory first, for the
+   * first path of a routine. The heading always comes from the gyro, so the robot should start facing the
+   * trajectory's first heading.
+   */
+  public FollowTrajectoryCommand(SwerveDriveSubsystem drivetrain, Trajectory trajectory, boolean resetPosition) {
+    // Use addRequirements() here to declare subsystem dependencies.
+    addRequirements(drivetrain);
+
+    m_drivetrain = drivetrain;
+    m_trajectory = trajectory;
+    m_resetPosition = resetPosition;
+  }
+
+  public Trajectory getTrajectory() {
+    return m_trajectory;
+  }
+
+  // Called when the command is initially scheduled.
+  @Override
+  public void initialize() {
+    if (m_resetPosition) {
+      m_drivetrain.setRobotPosition(m_trajectory.get(0, Trajectory.X), m_trajectory.get(0, Trajectory.Y));
+    }
+    m_startTime = RobotClock.now();
+    m_positionError = Double.POSITIVE_INFINITY;
+    m_headingError = Double.POSITIVE_INFINITY;
+  }
+
+  // Called every time the scheduler runs while the command is scheduled.
+  @Override
+  public void execute() {
+    m_trajectory.sample(RobotClock.now() - m_startTime, m_reference);
+    RobotPose pose = m_drivetrain.getPose();
+
+    double xError = m_reference[Trajectory.X] - pose.getX();
+    double yError = m_reference[Trajectory.Y] - pose.getY();
+    m_headingError = PoseHistory.wrapDegrees(m_reference[Trajectory.HEADING] - pose.getHeading());
+    m_positionError = Math.hypot(xError, yError);
+    s_errorValue.set(0, xError);
+    s_errorValue.set(1, yError);
+    s_errorValue.set(2, m_headingError);
+
+    double vx = m_reference[Trajectory.VX] + TrajectoryConstants.TRANSLATION_kP * xError;
+    double vy = m_reference[Trajectory.VY] + TrajectoryConstants.TRANSLATION_kP * yError;
+    double omega = m_reference[Trajectory.OMEGA] + TrajectoryConstants.ROTATION_kP * m_headingError;
+
+    // Field velocity to robot velocity
+    double heading = Math.toRadians(pose.getHeading());
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    m_drivetrain.driveVelocity(vx * cos + vy * sin, -vx * sin + vy * cos, omega, m_reference[Trajectory.ACCELERATION]);
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    m_drivetrain.stopDriveMotors();
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    double overtime = RobotClock.now() - m_startTime - m_trajectory.getTotalTime();
+    if (overtime < 0) return false;
+    boolean settled = m_positionError <= TrajectoryConstants.POSITION_TOLERANCE
+        && Math.abs(m_headingError) <= TrajectoryConstants.HEADING_TOLERANCE;
+    return settled || overtime >= TrajectoryConstants.SETTLE_TIMEOUT;
+  }
+}
@@ -11,15 +11,21 @@ import com.revrobotics.ColorMatch;
 import com.revrobotics.ColorMatchResult;
 import com.revrobotics.ColorSensorV3;
 
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj.util.Color;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.Constants.ColorTargets;
 import frc.robot.subsystems.ControlPanelSubsystem;
+import frc.robot.util.DashboardPublisher;
 
 public class SampleColorCommand extends CommandBase {
   private final ControlPanelSubsystem m_subsystem;
 
+  private final DashboardPublisher.BooleanValue m_sampling = DashboardPublisher.bool("Color Sensor Sampling");
+  private final DashboardPublisher.NumberValue m_red = DashboardPublisher.number("Red");
+  private final DashboardPublisher.NumberValue m_green = DashboardPublisher.number("Green");
+  private final DashboardPublisher.NumberValue m_blue = DashboardPublisher.number("Blue");
+  private final DashboardPublisher.StringValue m_detectedColor = DashboardPublisher.string("Detected Color");
+
   /**
    * Creates a new SampleColor.
    */
@@ -33,7 +39,7 @@ public class SampleColorCommand extends CommandBase {
   // Called when the command is initially scheduled.
   @Override
   public void initialize() {
-    SmartDashboard.putBoolean("Color Sensor Sampling", true);
+    m_sampling.set(true);
   }
 
   // Called every time the scheduler runs while the command is scheduled.
@@ -63,16 +69,16 @@ public class SampleColorCommand extends CommandBase {
      * Open Smart Dashboard or Shuffleboard to see the color detected by the 
      * sensor.
      */
-    SmartDashboard.putNumber("Red", detectedColor.red);
-    SmartDashboard.putNumber("Green", detectedColor.green);
-    SmartDashboard.putNumber("Blue", detectedColor.blue);
-    SmartDashboard.putString("Detected Color", colorString);
+    m_red.set(detectedColor.red);
+    m_green.set(detectedColor.green);
+    m_blue.set(detectedColor.blue);
+    m_detectedColor.set(colorString);
   }
 
   // Called once the command ends or is interrupted.
   @Override
   public void end(boolean interrupted) {
-    SmartDashboard.putBoolean("Color Sensor Sampling", false);
+    m_sampling.set(false);
   }
 
   // Returns true when the command should end.
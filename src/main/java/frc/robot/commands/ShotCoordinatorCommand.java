@@ -0,0 +1,125 @@
+/*----------------------------------------------------------------------------*/
+/* Copyright (c) 2019 FIRST. All Rights Reserved.                             */
+/* Open Source Software - may be modified and shared by FRC teams. The code   */
+/* must be accompanied by the FIRST BSD license file in the root directory of */
+/* the project.                                                               */
+/*----------------------------------------------------------------------------*/
+
+
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.HopperConstants;
+import frc.robot.Constants.ShotConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.subsystems.HopperSubsystem;
+import frc.robot.subsystems.SwerveDriveSubsystem;
+import frc.robot.subsystems.ThrowerSubsystem;
+import frc.robot.util.DashboardPublisher;
+import frc.robot.util.RobotClock;
+import frc.robot.util.SocketVisionWrapper;
+import frc.robot.util.VisionTarget;
+
+/**
+ * Feeds the hopper's balls into the thrower one at a time, each as soon as the shot is ready: the flywheel is
+ * predicted to be at speed when the ball gets there, the target is straight ahead, and the hopper has settled
+ * in its slot with a ball to give. Spinning up and lining up are left to {@link ThrowToTargetCommand} and
+ * {@link VisionLineUpWithTargetCommand} running alongside, so nothing waits for anything it doesn't need.
+ *
+ * <p>Only requires the hopper. Finishes once every stored ball has been fed, or a hopper's worth if the count
+ * isn't known, or the ball sensor finds the loading slot empty. It then waits for the hopper to settle and
+ * for the last ball to reach the wheel, since finishing ends the thrower's command alongside it.
+ */
+public class ShotCoordinatorCommand extends CommandBase {
+  private HopperSubsystem m_hopper;
+  private ThrowerSubsystem m_thrower;
+  private SwerveDriveSubsystem m_drivetrain;
+  private SocketVisionWrapper m_vision;
+
+  private int m_shotsLeft = 0;
+  private double m_lastShotTime = Double.NEGATIVE_INFINITY;
+  // When the hopper last settled with nothing left to feed, or NaN if it hasn't since
+  private double m_emptyTime = Double.NaN;
+
+  private final DashboardPublisher.BooleanValue m_flywheelReadyValue = DashboardPublisher.bool("Shot/Flywheel Ready");
+  private final DashboardPublisher.BooleanValue m_alignedValue = DashboardPublisher.bool("Shot/Aligned");
+  private final DashboardPublisher.BooleanValue m_hopperReadyValue = DashboardPublisher.bool("Shot/Hopper Ready");
+
+  /**
+   * Creates a new ShotCoordinator.
+   * @param thrower Only read, so the thrower's command can keep running.
+   * @param drivetrain Only read, for latency compensation, so the line-up command can keep running.
+   */
+  public ShotCoordinatorCommand(HopperSubsystem hopper, ThrowerSubsystem thrower, SwerveDriveSubsystem drivetrain,
+      SocketVisionWrapper vision) {
+    // Use addRequirements() here to declare subsystem dependencies.
+    addRequirements(hopper);
+
+    m_hopper = hopper;
+    m_thrower = thrower;
+    m_drivetrain = drivetrain;
+    m_vision = vision;
+  }
+
+  // Called when the command is initially scheduled.
+  @Override
+  public void initialize() {
+    // Line the hopper up now, while the thrower spins up and the drivetrain turns
+    m_hopper.alignToSlot();
+    int stored = m_hopper.getStoredCount();
+    m_shotsLeft = stored > 0 ? stored : HopperConstants.CAPACITY;
+    m_lastShotTime = Double.NEGATIVE_INFINITY;
+    m_emptyTime = Double.NaN;
+  }
+
+  // Called every time the scheduler runs while the command is scheduled.
+  @Override
+  public void execute() {
+    boolean flywheelReady = m_thrower.willBeAtSetpoint(ShotConstants.FLYWHEEL_TOLERANCE, ShotConstants.FEED_TIME);
+    boolean aligned = isAligned();
+    boolean hopperReady = m_shotsLeft > 0 && m_hopper.atSetpoint(ShotConstants.HOPPER_TOLERANCE)
+        && (!ShotConstants.REQUIRE_BALL_SENSOR || m_hopper.ballLoaded());
+    m_flywheelReadyValue.set(flywheelReady);
+    m_alignedValue.set(aligned);
+    m_hopperReadyValue.set(hopperReady);
+
+    double now = RobotClock.now();
+    if (flywheelReady && aligned && hopperReady && now - m_lastShotTime >= ShotConstants.MIN_SHOT_INTERVAL) {
+      m_hopper.feedOne();
+      m_shotsLeft--;
+      m_lastShotTime = now;
+    }
+
+    boolean empty = m_shotsLeft == 0 || (ShotConstants.REQUIRE_BALL_SENSOR && !m_hopper.ballLoaded());
+    if (!empty || !m_hopper.atSetpoint(ShotConstants.HOPPER_TOLERANCE)) {
+      m_emptyTime = Double.NaN;
+    } else if (Double.isNaN(m_emptyTime)) {
+      m_emptyTime = now;
+    }
+  }
+
+  private boolean isAligned() {
+    VisionTarget target = m_vision.get().getTarget();
+    if (!target.hasTarget() || !target.isFresh(VisionConstants.MAX_TARGET_AGE)) return false;
+    if (VisionConstants.COMPENSATE_LATENCY) {
+      target = m_drivetrain.compensateVisionTarget(target); // Line the frame up with where we are now
+    }
+    return Math.abs(target.getDegreesX()) <= ShotConstants.HEADING_TOLERANCE;
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    // No need to do anything -- the hopper holds itself in PID
+    m_flywheelReadyValue.set(false);
+    m_alignedValue.set(false);
+    m_hopperReadyValue.set(false);
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    // The last ball has left the hopper once it settles on the next slot, then takes FEED_TIME to reach the wheel
+    return !Double.isNaN(m_emptyTime) && RobotClock.now() - m_emptyTime >= ShotConstants.FEED_TIME;
+  }
+}
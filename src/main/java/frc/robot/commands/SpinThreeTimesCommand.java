@@ -50,8 +50,9 @@ public class SpinThreeTimesCommand extends CommandBase {
   @Override
   public boolean isFinished() {
     // Don't read the same panel multiple times!
-    if(m_subsystem.readColor() != m_lastColor){
-      m_lastColor = m_subsystem.readColor();
+    Color color = m_subsystem.readColor();
+    if(color != m_lastColor){
+      m_lastColor = color;
       
       if(m_lastColor == m_startColor) m_numRevolutions ++;
     }
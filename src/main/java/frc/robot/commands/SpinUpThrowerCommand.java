@@ -8,7 +8,6 @@
 package frc.robot.commands;
 
 import edu.wpi.first.wpilibj2.command.CommandBase;
-import frc.robot.Constants.ThrowerLUT;
 import frc.robot.subsystems.ThrowerSubsystem;
 import frc.robot.util.SocketVisionWrapper;
 
@@ -30,7 +29,8 @@ public class SpinUpThrowerCommand extends CommandBase {
   // Called when the command is initially scheduled.
   @Override
   public void initialize() {
-    m_thrower.setSetpoint(ThrowerLUT.distanceToRPMs(m_vision.get().get_distance()));
+    // get_distance() reads as 0 if there is no recent target
+    m_thrower.setSetpoint(m_thrower.distanceToRPMs(m_vision.get().get_distance()));
   }
 
   // Called every time the scheduler runs while the command is scheduled.
@@ -0,0 +1,191 @@
+/*----------------------------------------------------------------------------*/
+/* Copyright (c) 2019 FIRST. All Rights Reserved.                             */
+/* Open Source Software - may be modified and shared by FRC teams. The code   */
+/* must be accompanied by the FIRST BSD license file in the root directory of */
+/* the project.                                                               */
+/*----------------------------------------------------------------------------*/
+
+
+package frc.robot.commands;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.SwerveCharacterization;
+import frc.robot.subsystems.SwerveDriveModule;
+import frc.robot.subsystems.SwerveDriveSubsystem;
+import frc.robot.subsystems.SwerveModuleStates;
+import frc.robot.util.CharacterizationSampler;
+import frc.robot.util.FlywheelCharacterization;
+import frc.robot.util.RobotClock;
+
+/**
+ * Characterizes each swerve module's drive: with every module pointed straight ahead, a slow voltage ramp
+ * forward, a stop, then a voltage step back. Each module's voltage and wheel speed are sampled by a
+ * {@link CharacterizationSampler} at the drive velocity status rate and fitted on their own, since modules differ
+ * in friction. When it ends,
+ * each module's kS/kV/kA are printed in a form that pastes into DrivetrainConstants, put on the dashboard
+ * under "Swerve Characterization", and the samples are written to one CSV per module.
+ *
+ * <p>The robot drives about 15 feet; see {@link SwerveCharacterization}.
+ */
+public class SwerveCharacterizationCommand extends CommandBase {
+  // Module angle for straight ahead, the same as SwerveDriveSubsystem.holonomicDrive() uses
+  private static final double STRAIGHT_AHEAD = 180;
+
+  private enum State { ALIGN, RAMP, STOP, STEP, DONE }
+
+  private SwerveDriveSubsystem m_drivetrain;
+
+  private final CharacterizationSampler m_sampler;
+  // Set by the main thread, read by the sampler. The commanded voltage is recorded rather than read back, so
+  // it has the same sign as the encoder whichever way setTargetAngle() turned the drive.
+  private volatile double m_volts = 0;
+
+  private State m_state = State.DONE;
+  private double m_stateStart = 0;
+
+  /**
+   * Creates a new SwerveCharacterizationCommand.
+   */
+  public SwerveCharacterizationCommand(SwerveDriveSubsystem drivetrain) {
+    // Use addRequirements() here to declare subsystem dependencies.
+    addRequirements(drivetrain);
+
+    m_drivetrain = drivetrain;
+    m_sampler = new CharacterizationSampler("SwerveCharacterization", SwerveModuleStates.MODULE_COUNT,
+        SwerveCharacterization.CAPACITY, i -> m_volts, i -> m_drivetrain.getSwerveModule(i).readDriveSpeed());
+  }
+
+  private void enter(State state) {
+    m_state = state;
+    m_stateStart = RobotClock.now();
+  }
+
+  private void setVoltage(double volts) {
+    m_volts = volts;
+    for (SwerveDriveModule module : m_drivetrain.getSwerveModules()) {
+      module.setDriveVoltage(volts);
+    }
+  }
+
+  // Called when the command is initially scheduled.
+  @Override
+  public void initialize() {
+    for (SwerveDriveModule module : m_drivetrain.getSwerveModules()) {
+      module.setTargetAngle(STRAIGHT_AHEAD);
+    }
+    setVoltage(0);
+    m_sampler.start(SwerveCharacterization.SAMPLE_PERIOD);
+    enter(State.ALIGN);
+  }
+
+  // Called every time the scheduler runs while the command is scheduled.
+  @Override
+  public void execute() {
+    double elapsed = RobotClock.now() - m_stateStart;
+    switch (m_state) {
+      case ALIGN:
+        if (elapsed >= SwerveCharacterization.ALIGN_TIME) {
+          m_sampler.record(CharacterizationSampler.RAMP);
+          enter(State.RAMP);
+        }
+        break;
+      case RAMP:
+        double rampTime = SwerveCharacterization.RAMP_MAX_VOLTS / SwerveCharacterization.RAMP_RATE;
+        if (elapsed < rampTime) {
+          setVoltage(SwerveCharacterization.RAMP_RATE * elapsed);
+        } else {
+          setVoltage(0);
+          m_sampler.pause();
+          enter(State.STOP);
+        }
+        break;
+      case STOP:
+        if (isStopped() || elapsed >= SwerveCharacterization.STOP_TIMEOUT) {
+          setVoltage(-SwerveCharacterization.STEP_VOLTS);
+          m_sampler.record(CharacterizationSampler.STEP);
+          enter(State.STEP);
+        }
+        break;
+      case STEP:
+        if (elapsed >= SwerveCharacterization.STEP_TIME) {
+          setVoltage(0);
+          m_sampler.pause();
+          enter(State.DONE);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private boolean isStopped() {
+    for (SwerveDriveModule module : m_drivetrain.getSwerveModules()) {
+      if (Math.abs(module.readDriveSpeed()) >= SwerveCharacterization.STOP_SPEED) return false;
+    }
+    return true;
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    m_sampler.stop();
+    m_drivetrain.stopDriveMotors();
+    if (interrupted) {
+      System.out.println("SwerveCharacterizationCommand interrupted; samples not fitted");
+      return;
+    }
+
+    int modules = m_sampler.getRecordingCount();
+    double[] kS = new double[modules];
+    double[] kV = new double[modules];
+    double[] kA = new double[modules];
+    boolean fitted = true;
+    for (int i = 0; i < modules; i++) {
+      try {
+        FlywheelCharacterization.Fit fit = FlywheelCharacterization.fit(m_sampler.getRecording(i),
+            SwerveCharacterization.MIN_FIT_VELOCITY);
+        System.out.println("SwerveCharacterizationCommand module " + i + ": " + fit);
+        kS[i] = fit.getKS();
+        kV[i] = fit.getKV();
+        kA[i] = fit.getKA();
+        SmartDashboard.putNumber("Swerve Characterization/Module " + i + " kS", kS[i]);
+        SmartDashboard.putNumber("Swerve Characterization/Module " + i + " kV", kV[i]);
+        SmartDashboard.putNumber("Swerve Characterization/Module " + i + " kA", kA[i]);
+        SmartDashboard.putNumber("Swerve Characterization/Module " + i + " RMS Error", fit.getRMSError());
+      } catch (IllegalArgumentException e) {
+        System.out.println("SwerveCharacterizationCommand could not fit module " + i + ": " + e.getMessage());
+        fitted = false;
+      }
+    }
+    if (fitted) {
+      System.out.println("DRIVE_kS = " + arrayLiteral(kS) + ", DRIVE_kV = " + arrayLiteral(kV) + ", DRIVE_kA = " + arrayLiteral(kA));
+    }
+
+    String date = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+    for (int i = 0; i < modules; i++) {
+      m_sampler.getRecording(i).writeCsvAsync(new File(Filesystem.getOperatingDirectory(),
+          SwerveCharacterization.FILE_PREFIX + i + "-" + date + ".csv"));
+    }
+  }
+
+  private static String arrayLiteral(double[] values) {
+    StringBuilder text = new StringBuilder("{ ");
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) text.append(", ");
+      text.append(String.format("%.4g", values[i]));
+    }
+    return text.append(" }").toString();
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    return m_state == State.DONE;
+  }
+}
@@ -8,42 +8,82 @@
 package frc.robot.commands;
 
 import edu.wpi.first.wpilibj2.command.CommandBase;
-import frc.robot.Constants.ThrowerLUT;
+import frc.robot.Constants.ThrowerConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.subsystems.SwerveDriveSubsystem;
 import frc.robot.subsystems.ThrowerSubsystem;
-import frc.robot.util.SocketVision;
+import frc.robot.util.DistanceFilter;
+import frc.robot.util.RobotPose;
 import frc.robot.util.SocketVisionWrapper;
+import frc.robot.util.VisionTarget;
 
+/**
+ * Holds the thrower at the speed for the target's distance while the robot drives. Each new vision frame is
+ * moved to the robot's current pose, then filtered; the filtered distance is led by how fast the robot is
+ * closing on the target, since the ball leaves a little later. The setpoint is passed on every loop, and
+ * the thrower only sends it to the Spark MAX when it changes by more than its deadband.
+ */
 public class ThrowToTargetCommand extends CommandBase {
   private ThrowerSubsystem m_subsystem;
+  private SwerveDriveSubsystem m_drivetrain;
   private SocketVisionWrapper m_vision;
 
+  private final DistanceFilter m_distanceFilter =
+      new DistanceFilter(ThrowerConstants.DISTANCE_MEDIAN_SAMPLES, ThrowerConstants.DISTANCE_TIME_CONSTANT);
+  private final double[] m_velocity = new double[2];
+  private int m_lastSequence = -1;
+  // Field bearing from the robot to the target in the last frame, in degrees counterclockwise
+  private double m_targetBearing = 0;
+
   private double setpoint = 0;
 
   /**
    * Creates a new ThrowToTarget.
+   * @param drivetrain Only read, for the robot's pose and velocity, so it isn't a requirement.
    */
-  public ThrowToTargetCommand(ThrowerSubsystem thrower, SocketVisionWrapper vision) {
+  public ThrowToTargetCommand(ThrowerSubsystem thrower, SwerveDriveSubsystem drivetrain, SocketVisionWrapper vision) {
     // Use addRequirements() here to declare subsystem dependencies.
     addRequirements(thrower);
 
     m_subsystem = thrower;
+    m_drivetrain = drivetrain;
     m_vision = vision;
   }
 
   // Called when the command is initially scheduled.
   @Override
   public void initialize() {
+    m_distanceFilter.reset();
+    m_lastSequence = -1;
   }
 
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
-    // Make sure that the vision data is valid
-    if(m_vision.get().get_direction() != SocketVision.NADA){
-      setpoint = ThrowerLUT.distanceToRPMs(m_vision.get().get_distance());
+    // Make sure that the vision data is valid and recent, and only filter each frame once
+    VisionTarget target = m_vision.get().getTarget();
+    if(target.hasTarget() && target.isFresh(VisionConstants.MAX_TARGET_AGE) && target.getSequence() != m_lastSequence
+        && target.getDistance() > 0){
+      m_lastSequence = target.getSequence();
+      VisionTarget now = target;
+      if(VisionConstants.COMPENSATE_LATENCY){
+        now = m_drivetrain.compensateVisionTarget(target); // Line the frame up with where we are now
+      }
+      m_distanceFilter.calculate(now.getDistance(), target.getCaptureTimestamp());
+
+      RobotPose pose = m_drivetrain.getPose();
+      m_targetBearing = Math.toRadians(pose.getHeading() - now.getDegreesX());
+    }
+
+    if(m_distanceFilter.hasValue()){
+      // Closing speed is the part of the chassis velocity that points at the target
+      m_drivetrain.getFieldVelocity(m_velocity);
+      double closingSpeed = m_velocity[0] * Math.cos(m_targetBearing) + m_velocity[1] * Math.sin(m_targetBearing);
+      double distance = m_distanceFilter.get() - closingSpeed * ThrowerConstants.SHOT_LEAD_TIME;
+      setpoint = m_subsystem.distanceToRPMs(distance);
+      m_subsystem.setSetpoint(setpoint);
     }
-    
-    m_subsystem.setSetpoint(setpoint);
+    // Until then, keep whatever speed the thrower was spun up to
   }
 
   // Called once the command ends or is interrupted.
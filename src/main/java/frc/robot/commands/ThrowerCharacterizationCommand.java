@@ -0,0 +1,136 @@
+/*----------------------------------------------------------------------------*/
+/* Copyright (c) 2019 FIRST. All Rights Reserved.                             */
+/* Open Source Software - may be modified and shared by FRC teams. The code   */
+/* must be accompanied by the FIRST BSD license file in the root directory of */
+/* the project.                                                               */
+/*----------------------------------------------------------------------------*/
+
+
+package frc.robot.commands;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.ThrowerCharacterization;
+import frc.robot.Constants.ThrowerConstants;
+import frc.robot.subsystems.ThrowerSubsystem;
+import frc.robot.util.CharacterizationSampler;
+import frc.robot.util.FlywheelCharacterization;
+import frc.robot.util.RobotClock;
+
+/**
+ * Characterizes the thrower: a slow voltage ramp, a coast to a stop, then a voltage step. Voltage and velocity
+ * are sampled by a {@link CharacterizationSampler} at the leader's velocity status rate. When it ends, the fitted kS/kV/kA and recommended kP/kFF are
+ * printed and put on the dashboard under "Thrower Characterization", and the samples are written to a CSV in
+ * the operating directory for {@link FlywheelCharacterization} to fit again offline.
+ *
+ * <p>The wheel spins freely up to ThrowerCharacterization.RAMP_MAX_VOLTS; keep the hopper empty.
+ */
+public class ThrowerCharacterizationCommand extends CommandBase {
+  private enum State { RAMP, COAST, STEP, DONE }
+
+  private ThrowerSubsystem m_thrower;
+
+  private final CharacterizationSampler m_sampler;
+
+  private State m_state = State.DONE;
+  private double m_stateStart = 0;
+
+  /**
+   * Creates a new ThrowerCharacterizationCommand.
+   */
+  public ThrowerCharacterizationCommand(ThrowerSubsystem thrower) {
+    // Use addRequirements() here to declare subsystem dependencies.
+    addRequirements(thrower);
+
+    m_thrower = thrower;
+    m_sampler = new CharacterizationSampler("ThrowerCharacterization", 1, ThrowerCharacterization.CAPACITY,
+        i -> m_thrower.readAppliedVoltage(), i -> m_thrower.readVelocity());
+  }
+
+  private void enter(State state) {
+    m_state = state;
+    m_stateStart = RobotClock.now();
+  }
+
+  // Called when the command is initially scheduled.
+  @Override
+  public void initialize() {
+    m_sampler.start(ThrowerCharacterization.SAMPLE_PERIOD);
+    enter(State.RAMP);
+    m_sampler.record(CharacterizationSampler.RAMP);
+  }
+
+  // Called every time the scheduler runs while the command is scheduled.
+  @Override
+  public void execute() {
+    double elapsed = RobotClock.now() - m_stateStart;
+    switch (m_state) {
+      case RAMP:
+        double rampTime = ThrowerCharacterization.RAMP_MAX_VOLTS / ThrowerCharacterization.RAMP_RATE;
+        if (elapsed < rampTime) {
+          m_thrower.setVoltage(ThrowerCharacterization.RAMP_RATE * elapsed);
+        } else {
+          m_thrower.setVoltage(0);
+          m_sampler.pause();
+          enter(State.COAST);
+        }
+        break;
+      case COAST:
+        if (m_thrower.readVelocity() < ThrowerCharacterization.COAST_STOP_RPM || elapsed >= ThrowerCharacterization.COAST_TIMEOUT) {
+          m_thrower.setVoltage(ThrowerCharacterization.STEP_VOLTS);
+          m_sampler.record(CharacterizationSampler.STEP);
+          enter(State.STEP);
+        }
+        break;
+      case STEP:
+        if (elapsed >= ThrowerCharacterization.STEP_TIME) {
+          m_sampler.pause();
+          enter(State.DONE);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    m_sampler.stop();
+    m_thrower.stopThrower();
+    FlywheelCharacterization.Recording recording = m_sampler.getRecording(0);
+    if (interrupted) {
+      System.out.println("ThrowerCharacterizationCommand interrupted; " + recording.size() + " samples not fitted");
+      return;
+    }
+
+    try {
+      FlywheelCharacterization.Fit fit = FlywheelCharacterization.fit(recording, ThrowerCharacterization.MIN_FIT_VELOCITY);
+      double kP = fit.getRecommendedKP(ThrowerConstants.NOMINAL_VOLTAGE, ThrowerCharacterization.RESPONSE_TIME);
+      double kFF = fit.getRecommendedFF(ThrowerConstants.NOMINAL_VOLTAGE);
+      System.out.println("ThrowerCharacterizationCommand: " + fit + ", kP = " + kP + ", kFF = " + kFF);
+      SmartDashboard.putNumber("Thrower Characterization/kS", fit.getKS());
+      SmartDashboard.putNumber("Thrower Characterization/kV", fit.getKV());
+      SmartDashboard.putNumber("Thrower Characterization/kA", fit.getKA());
+      SmartDashboard.putNumber("Thrower Characterization/RMS Error", fit.getRMSError());
+      SmartDashboard.putNumber("Thrower Characterization/kP", kP);
+      SmartDashboard.putNumber("Thrower Characterization/kFF", kFF);
+    } catch (IllegalArgumentException e) {
+      System.out.println("ThrowerCharacterizationCommand could not fit the run: " + e.getMessage());
+    }
+
+    recording.writeCsvAsync(new File(Filesystem.getOperatingDirectory(), ThrowerCharacterization.FILE_PREFIX
+        + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv"));
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    return m_state == State.DONE;
+  }
+}
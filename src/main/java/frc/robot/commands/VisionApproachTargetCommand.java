@@ -8,8 +8,10 @@
 package frc.robot.commands;
 
 import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.VisionConstants;
 import frc.robot.subsystems.SwerveDriveSubsystem;
 import frc.robot.util.SocketVisionWrapper;
+import frc.robot.util.VisionTarget;
 
 public class VisionApproachTargetCommand extends CommandBase {
   SwerveDriveSubsystem m_drivetrain;
@@ -63,10 +65,14 @@ public class VisionApproachTargetCommand extends CommandBase {
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
-    // Check vision error for valid result
-    if(m_vision.get().get_direction() != "nada"){
-      previousXCoord = m_vision.get().get_degrees_x();
-      previousDistance = m_vision.get().get_distance();
+    // Check vision error for a valid, recent result. Both values come from the same frame.
+    VisionTarget target = m_vision.get().getTarget();
+    if(target.hasTarget() && target.isFresh(VisionConstants.MAX_TARGET_AGE)){
+      if(VisionConstants.COMPENSATE_LATENCY){
+        target = m_drivetrain.compensateVisionTarget(target); // Line the frame up with where we are now
+      }
+      previousXCoord = target.getDegreesX();
+      previousDistance = target.getDistance();
     } else {
       // Assume robot continued to move at same rate
       previousXCoord = previousXCoord - m_drivetrain.getStrafeErrorDerivative();
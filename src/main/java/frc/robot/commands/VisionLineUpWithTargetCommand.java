@@ -8,8 +8,10 @@
 package frc.robot.commands;
 
 import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.VisionConstants;
 import frc.robot.subsystems.SwerveDriveSubsystem;
 import frc.robot.util.SocketVisionWrapper;
+import frc.robot.util.VisionTarget;
 
 public class VisionLineUpWithTargetCommand extends CommandBase {
   SwerveDriveSubsystem m_drivetrain;
@@ -49,10 +51,13 @@ public class VisionLineUpWithTargetCommand extends CommandBase {
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
-    // Check vision for valid results
-    String visionValid = m_vision.get().get_direction();
-    if(visionValid != "nada"){
-      vision_error_x = m_vision.get().get_degrees_x();
+    // Check vision for valid, recent results
+    VisionTarget target = m_vision.get().getTarget();
+    if(target.hasTarget() && target.isFresh(VisionConstants.MAX_TARGET_AGE)){
+      if(VisionConstants.COMPENSATE_LATENCY){
+        target = m_drivetrain.compensateVisionTarget(target); // Line the frame up with where we are now
+      }
+      vision_error_x = target.getDegreesX();
     } else {
       // Assume robot keeps moving to the side
       vision_error_x = vision_error_x - m_drivetrain.getStrafeErrorDerivative();
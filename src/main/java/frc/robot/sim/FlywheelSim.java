@@ -0,0 +1,129 @@
+package frc.robot.sim;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import frc.robot.Constants.ThrowerCharacterization;
+import frc.robot.Constants.ThrowerConstants;
+import frc.robot.util.FlywheelCharacterization;
+
+/**
+ * Checks {@link FlywheelCharacterization} on a laptop: a flywheel with known kS/kV/kA is put through the same
+ * ramp and step as ThrowerCharacterizationCommand, its velocity is sampled at the same rate with noise and
+ * measurement lag like a Spark MAX's, and the fit is compared with the truth. Exits with status 1 if any
+ * constant is off by more than the tolerance, so it can gate a build. Run it with
+ * {@code ./gradlew flywheelSim --args="..."}:
+ * <pre>
+ *  --ks 0.15            true static friction, volts
+ *  --kv 0.0021          true volts per RPM
+ *  --ka 0.002           true volts per RPM per second
+ *  --noise 3            velocity noise, RPM standard deviation
+ *  --lag 0              velocity measurement time constant, seconds
+ *  --min-velocity 50    slowest sample the fit uses, RPM
+ *  --tolerance 0.1      largest relative error allowed
+ *  --seed 5933          random seed for the noise
+ * </pre>
+ */
+public final class FlywheelSim {
+  // Physics steps per sample
+  private static final int SUBSTEPS = 20;
+
+  private FlywheelSim() {
+  }
+
+  public static void main(String... args) {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+    double kS = Double.parseDouble(options.getOrDefault("ks", "0.15"));
+    double kV = Double.parseDouble(options.getOrDefault("kv", "0.0021"));
+    double kA = Double.parseDouble(options.getOrDefault("ka", "0.002"));
+    double noise = Double.parseDouble(options.getOrDefault("noise", "3"));
+    double lag = Double.parseDouble(options.getOrDefault("lag", "0"));
+    double minVelocity = Double.parseDouble(options.getOrDefault("min-velocity", String.valueOf(ThrowerCharacterization.MIN_FIT_VELOCITY)));
+    double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.1"));
+    Random random = new Random(Long.parseLong(options.getOrDefault("seed", "5933")));
+
+    Flywheel flywheel = new Flywheel(kS, kV, kA, lag);
+    FlywheelCharacterization.Recording recording =
+        new FlywheelCharacterization.Recording(ThrowerCharacterization.CAPACITY);
+    double period = ThrowerCharacterization.SAMPLE_PERIOD;
+
+    // Ramp, then (the coast) start the step from rest. Like the robot's sampler, each sample is the velocity
+    // now and the voltage from now until the next sample.
+    double rampTime = ThrowerCharacterization.RAMP_MAX_VOLTS / ThrowerCharacterization.RAMP_RATE;
+    double time = 0;
+    for (double t = 0; t < rampTime; t += period) {
+      double volts = ThrowerCharacterization.RAMP_RATE * t;
+      recording.add(time, volts, flywheel.measure() + noise * random.nextGaussian(), 0);
+      flywheel.step(volts, period);
+      time += period;
+    }
+    flywheel.stop();
+    for (double t = 0; t < ThrowerCharacterization.STEP_TIME; t += period) {
+      recording.add(time, ThrowerCharacterization.STEP_VOLTS, flywheel.measure() + noise * random.nextGaussian(), 1);
+      flywheel.step(ThrowerCharacterization.STEP_VOLTS, period);
+      time += period;
+    }
+
+    FlywheelCharacterization.Fit fit = FlywheelCharacterization.fit(recording, minVelocity);
+    System.out.println("Truth: " + String.format("kS = %.6g V, kV = %.6g V/unit, kA = %.6g V/(unit/s)", kS, kV, kA));
+    System.out.println("Fit:   " + fit);
+    System.out.println(String.format("Recommended Spark MAX gains: kP = %.6g, kFF = %.6g",
+        fit.getRecommendedKP(ThrowerConstants.NOMINAL_VOLTAGE, ThrowerCharacterization.RESPONSE_TIME),
+        fit.getRecommendedFF(ThrowerConstants.NOMINAL_VOLTAGE)));
+
+    boolean pass = check("kS", fit.getKS(), kS, tolerance) & check("kV", fit.getKV(), kV, tolerance)
+        & check("kA", fit.getKA(), kA, tolerance);
+    System.exit(pass ? 0 : 1);
+  }
+
+  private static boolean check(String name, double fitted, double truth, double tolerance) {
+    double error = Math.abs(fitted - truth) / Math.abs(truth);
+    boolean pass = error <= tolerance;
+    System.out.println(String.format("%s off by %.1f%% %s", name, error * 100, pass ? "ok" : "FAIL"));
+    return pass;
+  }
+
+  /**
+   * The model the fit assumes, with static friction that holds the wheel still below kS.
+   */
+  private static final class Flywheel {
+    private final double m_kS;
+    private final double m_kV;
+    private final double m_kA;
+    private final double m_lag;
+    private double m_velocity = 0;
+    private double m_measured = 0;
+
+    Flywheel(double kS, double kV, double kA, double lag) {
+      m_kS = kS;
+      m_kV = kV;
+      m_kA = kA;
+      m_lag = lag;
+    }
+
+    void step(double volts, double seconds) {
+      double dt = seconds / SUBSTEPS;
+      for (int i = 0; i < SUBSTEPS; i++) {
+        if (m_velocity == 0 && Math.abs(volts) <= m_kS) continue;
+        double friction = m_velocity != 0 ? m_kS * Math.signum(m_velocity) : m_kS * Math.signum(volts);
+        double next = m_velocity + (volts - friction - m_kV * m_velocity) / m_kA * dt;
+        // Friction stops the wheel, it doesn't reverse it
+        m_velocity = m_velocity != 0 && Math.signum(next) != Math.signum(m_velocity) ? 0 : next;
+        m_measured += m_lag > 0 ? (m_velocity - m_measured) * Math.min(1, dt / m_lag) : m_velocity - m_measured;
+      }
+    }
+
+    void stop() {
+      m_velocity = 0;
+      m_measured = 0;
+    }
+
+    double measure() {
+      return m_measured;
+    }
+  }
+}
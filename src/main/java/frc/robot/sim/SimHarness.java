@@ -0,0 +1,108 @@
+package frc.robot.sim;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.hal.sim.DriverStationSim;
+import edu.wpi.first.hal.sim.SimHooks;
+
+import frc.robot.Robot;
+import frc.robot.util.Histogram;
+
+/**
+ * Runs the whole robot headless against the HAL simulator and the vendors' simulated Spark MAX, Talon SRX and
+ * navX devices. The robot is stepped in 20 ms ticks of simulated time, each tick running the mode's periodic
+ * method and {@code robotPeriodic()} (and so {@code CommandScheduler.getInstance().run()}) exactly like
+ * TimedRobot would, but as fast as the machine allows.
+ *
+ * <p>Every tick is timed, and the harness prints the loop-time distribution at the end. It exits with status 1
+ * if more ticks went over the budget than allowed, so it can gate a build. Run it with
+ * {@code ./gradlew simHarness --args="..."}:
+ * <pre>
+ *  --mode teleop        teleop or auto
+ *  --seconds 15         simulated seconds to run
+ *  --warmup 250         ticks to run before timing starts, so the JIT has settled
+ *  --budget-ms 20       a tick longer than this is an overrun
+ *  --max-overruns 0     overruns allowed before the run fails
+ * </pre>
+ */
+public final class SimHarness {
+  private static final double PERIOD = 0.02;
+
+  private SimHarness() {
+  }
+
+  public static void main(String... args) {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+    boolean autonomous = "auto".equals(options.getOrDefault("mode", "teleop"));
+    int ticks = (int) Math.round(Double.parseDouble(options.getOrDefault("seconds", "15")) / PERIOD);
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "250"));
+    double budgetMs = Double.parseDouble(options.getOrDefault("budget-ms", "20"));
+    int maxOverruns = Integer.parseInt(options.getOrDefault("max-overruns", "0"));
+
+    if (!HAL.initialize(500, 0)) {
+      System.out.println("SimHarness could not initialize the HAL");
+      System.exit(2);
+    }
+
+    // Simulated time only moves when we step it, so everything that reads the FPGA clock sees exact 20 ms ticks
+    SimHooks.pauseTiming();
+
+    DriverStationSim driverStation = new DriverStationSim();
+    driverStation.setDsAttached(true);
+    driverStation.setAutonomous(autonomous);
+    driverStation.setEnabled(true);
+    driverStation.notifyNewData();
+
+    Robot robot = new Robot();
+    robot.robotInit();
+    if (autonomous) {
+      robot.autonomousInit();
+    } else {
+      robot.teleopInit();
+    }
+
+    Histogram loopTimes = new Histogram(5, 10_000_000); // microseconds
+    int overruns = 0;
+    long budgetNanos = (long) (budgetMs * 1e6);
+
+    for (int tick = 0; tick < warmup + ticks; tick++) {
+      long start = System.nanoTime();
+      if (autonomous) {
+        robot.autonomousPeriodic();
+      } else {
+        robot.teleopPeriodic();
+      }
+      robot.robotPeriodic();
+      long elapsed = System.nanoTime() - start;
+
+      if (tick >= warmup) {
+        loopTimes.record(elapsed / 1000);
+        if (elapsed > budgetNanos) {
+          overruns++;
+          System.out.println(String.format("tick %d overran: %.3f ms", tick - warmup, elapsed * 1e-6));
+        }
+      }
+
+      SimHooks.stepTiming((long) (PERIOD * 1e6));
+    }
+
+    driverStation.setEnabled(false);
+    driverStation.notifyNewData();
+    robot.disabledInit();
+
+    System.out.println(String.format("%s, %d ticks after %d warmup: mean %.3f ms, p50 %.3f, p99 %.3f, p99.9 %.3f, max %.3f",
+        autonomous ? "auto" : "teleop", loopTimes.getCount(), warmup, loopTimes.getMean() * 1e-3,
+        loopTimes.getValueAtPercentile(50) * 1e-3, loopTimes.getValueAtPercentile(99) * 1e-3,
+        loopTimes.getValueAtPercentile(99.9) * 1e-3, loopTimes.getMax() * 1e-3));
+    System.out.println(String.format("%d of %d ticks over the %.1f ms budget (%d allowed)",
+        overruns, loopTimes.getCount(), budgetMs, maxOverruns));
+
+    // Vendor libraries leave non-daemon threads behind, so exit explicitly
+    System.exit(overruns > maxOverruns ? 1 : 0);
+  }
+}
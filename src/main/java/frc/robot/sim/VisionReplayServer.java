@@ -0,0 +1,293 @@
+package frc.robot.sim;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import frc.robot.Constants.VisionConstants;
+import frc.robot.util.SocketVision;
+import frc.robot.util.VisionPacketDecoder;
+
+/**
+ * A desktop stand-in for the vision co-processor. It streams target frames over UDP to the robot code
+ * (normally on loopback, with the robot running in simulation) and listens for the mode strings sent by
+ * {@link frc.robot.util.SocketVisionSender}, echoing each one back to where it came from.
+ *
+ * <p>Frames are either synthetic (a target drifting side to side while the distance changes) or replayed from
+ * a file of recorded text packets, one "Identifier: x, distance, width, distanceW, L/C/R" line per frame.
+ * Rate, loss, latency and jitter are configurable, so the receive path can be load-tested well above the real
+ * frame rate. Run it with {@code ./gradlew visionReplay --args="..."}:
+ * <pre>
+ *  --host 127.0.0.1        where to send frames
+ *  --ports 5801,5805       vision ports to stream to, one stream each
+ *  --mode-port 5800        port to listen on for mode strings, 0 to disable
+ *  --rate 30               frames per second per stream
+ *  --loss 0                fraction of frames dropped, 0 to 1
+ *  --latency 0             ms between "capture" and sending
+ *  --jitter 0              up to this many extra random ms of latency; can reorder frames
+ *  --format binary         binary or text frames
+ *  --replay FILE           replay recorded text packets instead of the synthetic target (loops)
+ *  --duration 0            seconds to run, 0 for forever
+ *  --seed 5933             random seed for loss and jitter
+ * </pre>
+ */
+public final class VisionReplayServer {
+  private final String m_host;
+  private final int[] m_ports;
+  private final int m_modePort;
+  private final double m_rate;
+  private final double m_loss;
+  private final double m_latencyMs;
+  private final double m_jitterMs;
+  private final boolean m_binary;
+  private final List<double[]> m_replayFrames;
+  private final double m_duration;
+  private final Random m_random;
+
+  private final long m_start = System.nanoTime();
+  private final AtomicLong m_sent = new AtomicLong();
+  private final AtomicLong m_dropped = new AtomicLong();
+  private final AtomicLong m_modesReceived = new AtomicLong();
+
+  // One thread captures and sends every stream's frames, so sends never overlap
+  private final ScheduledExecutorService m_executor = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "VisionReplayServer");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // Frames are {degreesX, distance, width, direction code}
+  private static final int DEGREES_X = 0;
+  private static final int DISTANCE = 1;
+  private static final int WIDTH = 2;
+  private static final int DIRECTION = 3;
+
+  private VisionReplayServer(Map<String, String> options) throws IOException {
+    m_host = options.getOrDefault("host", "127.0.0.1");
+    String[] ports = options.getOrDefault("ports", VisionConstants.RFT_PORT + "," + VisionConstants.PIECE_PORT).split(",");
+    m_ports = new int[ports.length];
+    for (int i = 0; i < ports.length; i++) {
+      m_ports[i] = Integer.parseInt(ports[i].trim());
+    }
+    m_modePort = Integer.parseInt(options.getOrDefault("mode-port", Integer.toString(VisionConstants.SEND_PORT)));
+    m_rate = Double.parseDouble(options.getOrDefault("rate", "30"));
+    m_loss = Double.parseDouble(options.getOrDefault("loss", "0"));
+    m_latencyMs = Double.parseDouble(options.getOrDefault("latency", "0"));
+    m_jitterMs = Double.parseDouble(options.getOrDefault("jitter", "0"));
+    m_binary = !"text".equals(options.getOrDefault("format", "binary"));
+    m_replayFrames = options.containsKey("replay") ? loadReplay(options.get("replay")) : null;
+    m_duration = Double.parseDouble(options.getOrDefault("duration", "0"));
+    m_random = new Random(Long.parseLong(options.getOrDefault("seed", "5933")));
+
+    if (m_rate <= 0) {
+      throw new IllegalArgumentException("--rate must be positive");
+    }
+  }
+
+  public static void main(String... args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--") || i + 1 >= args.length) {
+        System.out.println("Usage: VisionReplayServer [--option value]... (see the class javadoc)");
+        return;
+      }
+      options.put(args[i].substring(2), args[++i]);
+    }
+    new VisionReplayServer(options).run();
+  }
+
+  private void run() throws Exception {
+    InetAddress address = InetAddress.getByName(m_host);
+
+    try (DatagramSocket socket = new DatagramSocket()) {
+      long periodNanos = (long) (1e9 / m_rate);
+      for (int port : m_ports) {
+        Stream stream = new Stream(socket, new InetSocketAddress(address, port));
+        m_executor.scheduleAtFixedRate(stream::capture, 0, periodNanos, TimeUnit.NANOSECONDS);
+      }
+
+      if (m_modePort > 0) {
+        Thread modeListener = new Thread(this::listenForModes, "VisionReplayServer mode listener");
+        modeListener.setDaemon(true);
+        modeListener.start();
+      }
+
+      System.out.println("VisionReplayServer streaming " + (m_replayFrames == null ? "synthetic" : "replayed")
+          + (m_binary ? " binary" : " text") + " frames to " + m_host + " ports " + Arrays.toString(m_ports)
+          + " at " + m_rate + " Hz, loss " + m_loss + ", latency " + m_latencyMs + " + 0-" + m_jitterMs + " ms");
+
+      long lastSent = 0;
+      while (m_duration <= 0 || elapsed() < m_duration) {
+        Thread.sleep(1000);
+        long sent = m_sent.get();
+        System.out.println(String.format("sent %d (%d/s), dropped %d, modes received %d",
+            sent, sent - lastSent, m_dropped.get(), m_modesReceived.get()));
+        lastSent = sent;
+      }
+    } finally {
+      m_executor.shutdownNow();
+    }
+  }
+
+  private double elapsed() {
+    return (System.nanoTime() - m_start) * 1e-9;
+  }
+
+  /**
+   * One vision port. Frames are "captured" at the frame rate and sent after the configured latency.
+   */
+  private final class Stream {
+    private final DatagramSocket m_socket;
+    private final InetSocketAddress m_destination;
+    private int m_sequence = 0;
+    private int m_replayIndex = 0;
+
+    Stream(DatagramSocket socket, InetSocketAddress destination) {
+      m_socket = socket;
+      m_destination = destination;
+    }
+
+    void capture() {
+      long captureMicros = (System.nanoTime() - m_start) / 1000;
+      int sequence = m_sequence++;
+
+      double[] frame;
+      if (m_replayFrames != null) {
+        frame = m_replayFrames.get(m_replayIndex);
+        m_replayIndex = (m_replayIndex + 1) % m_replayFrames.size();
+      } else {
+        frame = syntheticFrame(captureMicros * 1e-6);
+      }
+
+      // A dropped frame still uses up its sequence number, the same as a packet lost on the network
+      if (m_random.nextDouble() < m_loss) {
+        m_dropped.incrementAndGet();
+        return;
+      }
+
+      byte[] payload = m_binary ? encodeBinary(sequence, captureMicros, frame) : encodeText(frame);
+      DatagramPacket packet = new DatagramPacket(payload, payload.length, m_destination);
+      double delayMs = m_latencyMs + m_jitterMs * m_random.nextDouble();
+      if (delayMs <= 0) {
+        send(packet);
+      } else {
+        m_executor.schedule(() -> send(packet), (long) (delayMs * 1e6), TimeUnit.NANOSECONDS);
+      }
+    }
+
+    private void send(DatagramPacket packet) {
+      try {
+        m_socket.send(packet);
+        m_sent.incrementAndGet();
+      } catch (IOException e) {
+        System.out.println("VisionReplayServer send to " + m_destination + " failed: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * A target 8 to 20 feet away, drifting up to 15 degrees either side of center.
+   */
+  private static double[] syntheticFrame(double time) {
+    double degreesX = 15 * Math.sin(2 * Math.PI * time / 8);
+    double distance = 168 + 72 * Math.sin(2 * Math.PI * time / 20);
+    double width = 4000 / distance;
+
+    byte direction = VisionPacketDecoder.DIRECTION_CENTER;
+    if (degreesX < -2) {
+      direction = VisionPacketDecoder.DIRECTION_LEFT;
+    } else if (degreesX > 2) {
+      direction = VisionPacketDecoder.DIRECTION_RIGHT;
+    }
+    return new double[] { degreesX, distance, width, direction };
+  }
+
+  /**
+   * Load recorded text packets, one per line. Blank lines and lines starting with # are skipped. The packets
+   * are parsed with the robot's own decoder, so anything the robot would reject is rejected here too.
+   */
+  private static List<double[]> loadReplay(String path) throws IOException {
+    VisionPacketDecoder decoder = new VisionPacketDecoder(true);
+    List<double[]> frames = new ArrayList<>();
+    int lineNumber = 0;
+    for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+      lineNumber++;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) continue;
+
+      if (!decoder.decode(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)))) {
+        System.out.println("VisionReplayServer skipping bad packet on line " + lineNumber + ": " + line);
+        continue;
+      }
+      frames.add(new double[] { decoder.getDegreesX(), decoder.getDistance(), decoder.getWidth(),
+          VisionPacketDecoder.codeFromDirection(decoder.getDirection()) });
+    }
+    if (frames.isEmpty()) {
+      throw new IOException("No frames in " + path);
+    }
+    return frames;
+  }
+
+  private static byte[] encodeBinary(int sequence, long captureMicros, double[] frame) {
+    ByteBuffer buffer = ByteBuffer.allocate(VisionPacketDecoder.FRAME_SIZE);
+    buffer.putShort(VisionPacketDecoder.MAGIC);
+    buffer.put(VisionPacketDecoder.VERSION);
+    buffer.put((byte) frame[DIRECTION]);
+    buffer.putInt(sequence);
+    buffer.putLong(captureMicros);
+    buffer.putFloat((float) frame[DEGREES_X]);
+    buffer.putFloat((float) frame[DISTANCE]);
+    buffer.putFloat((float) frame[WIDTH]);
+    return buffer.array();
+  }
+
+  private static byte[] encodeText(double[] frame) {
+    String direction = VisionPacketDecoder.directionFromCode((byte) frame[DIRECTION]);
+    String letter = SocketVision.NADA.equals(direction) ? "N" : direction.substring(0, 1).toUpperCase();
+    String text = String.format("Replay: %.3f, %.3f, %.3f, %.3f, %s",
+        frame[DEGREES_X], frame[DISTANCE], frame[WIDTH], frame[DISTANCE], letter);
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Print each mode string as it changes and echo every one back to the sender.
+   */
+  private void listenForModes() {
+    try (DatagramSocket socket = new DatagramSocket(m_modePort)) {
+      byte[] data = new byte[VisionConstants.RECEIVE_BUFFER_SIZE];
+      DatagramPacket packet = new DatagramPacket(data, data.length);
+      String lastMode = null;
+      while (true) {
+        packet.setLength(data.length);
+        socket.receive(packet);
+        m_modesReceived.incrementAndGet();
+
+        String mode = new String(data, 0, packet.getLength(), StandardCharsets.UTF_8);
+        if (!mode.equals(lastMode)) {
+          System.out.println(String.format("%.3f mode \"%s\" from %s", elapsed(), mode, packet.getSocketAddress()));
+          lastMode = mode;
+        }
+
+        socket.send(new DatagramPacket(data, packet.getLength(), packet.getSocketAddress()));
+      }
+    } catch (IOException e) {
+      System.out.println("VisionReplayServer mode listener stopped: " + e.getMessage());
+    }
+  }
+}
@@ -13,7 +13,9 @@ import com.ctre.phoenix.motorcontrol.can.TalonSRX;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.DoubleSolenoid.Value;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.CANBusConstants;
 import frc.robot.Constants.ClimberActuators;
+import frc.robot.util.CANFrameManager;
 
 public class ClimberSubsystem extends SubsystemBase {
   private DoubleSolenoid m_solenoid;
@@ -28,6 +30,7 @@ public class ClimberSubsystem extends SubsystemBase {
 
     // Motor settings
     m_winchMotor.configFactoryDefault();
+    CANFrameManager.apply("Climber winch", m_winchMotor, CANBusConstants.CLIMBER_WINCH);
   }
 
   @Override
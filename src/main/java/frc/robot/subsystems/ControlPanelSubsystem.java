@@ -17,8 +17,11 @@ import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.DoubleSolenoid.Value;
 import edu.wpi.first.wpilibj.util.Color;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.CANBusConstants;
 import frc.robot.Constants.ColorTargets;
 import frc.robot.Constants.ControlPanelActuators;
+import frc.robot.util.CANFrameManager;
+import frc.robot.util.LoopProfiler;
 
 public class ControlPanelSubsystem extends SubsystemBase {
   private DoubleSolenoid m_solenoid;
@@ -28,6 +31,9 @@ public class ControlPanelSubsystem extends SubsystemBase {
   private ColorMatch m_colorMatcher = new ColorMatch();
   private boolean m_raised;
 
+  // The closest color, read once per loop in periodic()
+  private Color m_color;
+
   /**
    * Creates a new ControlPanelSubsystem.
    */
@@ -37,17 +43,29 @@ public class ControlPanelSubsystem extends SubsystemBase {
     m_colorSensor = new ColorSensorV3(ControlPanelActuators.COLOR_SENSOR_PORT);
 
     m_spinner.setIdleMode(IdleMode.kBrake);
+    CANFrameManager.apply("Control panel spinner", m_spinner, CANBusConstants.CONTROL_PANEL_SPINNER);
 
     // Colors you want to search for must be added to the colorMatcher.
     m_colorMatcher.addColorMatch(ColorTargets.kBlueTarget);
     m_colorMatcher.addColorMatch(ColorTargets.kGreenTarget);
     m_colorMatcher.addColorMatch(ColorTargets.kRedTarget);
     m_colorMatcher.addColorMatch(ColorTargets.kYellowTarget);
+
+    sampleSensors();
   }
 
   @Override
   public void periodic() {
-    // This method will be called once per scheduler run
+    // This method will be called once per scheduler run, before any commands
+    sampleSensors();
+    LoopProfiler.lap(this);
+  }
+
+  /**
+   * Read the color sensor. Each read is an I2C transaction, so it only happens here.
+   */
+  private void sampleSensors() {
+    m_color = m_colorMatcher.matchClosestColor(m_colorSensor.getColor()).color;
   }
 
   /**
@@ -97,11 +115,11 @@ public class ControlPanelSubsystem extends SubsystemBase {
   }
 
   /**
-   * Get the closest color being read by the color sensor.
+   * Get the closest color being read by the color sensor, as of the start of this loop.
    * @return One of Red, Blue, Green, or Yellow.
    */
   public Color readColor(){
-    return m_colorMatcher.matchClosestColor(m_colorSensor.getColor()).color;
+    return m_color;
   }
 
   /**
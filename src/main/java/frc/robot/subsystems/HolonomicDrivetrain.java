@@ -1,9 +1,12 @@
 package frc.robot.subsystems;
 
+import frc.robot.util.TelemetryRecorder;
+
 public abstract class HolonomicDrivetrain extends Drivetrain {
 
 	private double mAdjustmentAngle = 0;
 	private boolean mFieldOriented = true;
+	private final TelemetryRecorder.DoubleChannel mAdjustmentAngleChannel = TelemetryRecorder.addDouble("Drive/Adjustment Angle");
 
 	public HolonomicDrivetrain(double width, double length) {
 		super(width, length);
@@ -31,6 +34,7 @@ public abstract class HolonomicDrivetrain extends Drivetrain {
 	public void setAdjustmentAngle(double adjustmentAngle) {
 		System.out.printf("New Adjustment Angle: % .3f\n", adjustmentAngle);
 		mAdjustmentAngle = adjustmentAngle;
+		mAdjustmentAngleChannel.set(adjustmentAngle);
 	}
 
 	public void setFieldOriented(boolean fieldOriented) {
@@ -13,13 +13,28 @@ import com.ctre.phoenix.motorcontrol.can.TalonSRX;
 
 import edu.wpi.first.wpilibj.AnalogInput;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.CANBusConstants;
 import frc.robot.Constants.HopperConstants;
+import frc.robot.util.CANFrameManager;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.TelemetryRecorder;
 
 public class HopperSubsystem extends SubsystemBase {
   private TalonSRX m_hopperMotor;
   private AnalogInput m_hopperSensor; // To be replaced with the actual sensor for the hopper
 
   private int m_storeCount = 0;
+
+  // The target we last commanded. Only setTarget() changes it: the Talon reports its target a frame or two late,
+  // and building the next slot on that would lose a move.
+  private double m_closedLoopTarget = 0;
+  // Read once per loop in periodic()
+  private double m_position = 0;
+  private double m_sensorVoltage = 0;
+
+  private final TelemetryRecorder.DoubleChannel m_targetChannel = TelemetryRecorder.addDouble("Hopper/Target");
+  private final TelemetryRecorder.DoubleChannel m_errorChannel = TelemetryRecorder.addDouble("Hopper/Error");
+  private final TelemetryRecorder.BooleanChannel m_ballLoadedChannel = TelemetryRecorder.addBoolean("Hopper/Ball Loaded");
   
   /**
    * Creates a new Hopper.
@@ -30,18 +45,37 @@ public class HopperSubsystem extends SubsystemBase {
     
     m_hopperMotor.configAllSettings(HopperConstants.GetMainMotorConfiguration());
     m_hopperMotor.setNeutralMode(NeutralMode.Brake);
+    CANFrameManager.apply("Hopper", m_hopperMotor, CANBusConstants.HOPPER);
+
+    sampleSensors();
+    m_closedLoopTarget = m_position;
   }
 
   @Override
   public void periodic() {
-    // This method will be called once per scheduler run
+    // This method will be called once per scheduler run, before any commands
+    sampleSensors();
+    m_targetChannel.set(m_closedLoopTarget);
+    m_errorChannel.set(m_closedLoopTarget - m_position);
+    m_ballLoadedChannel.set(ballLoaded());
+    LoopProfiler.lap(this);
+  }
+
+  private void sampleSensors() {
+    m_position = m_hopperMotor.getSelectedSensorPosition(0);
+    m_sensorVoltage = m_hopperSensor.getVoltage();
+  }
+
+  private void setTarget(double target) {
+    m_hopperMotor.set(ControlMode.Position, target);
+    m_closedLoopTarget = target;
   }
 
   /**
    * Set the next setpoint to one full revolution forward. DO NOT call repeatedly in execute().
    */
   public void dischargeAll() {
-    m_hopperMotor.set(ControlMode.Position, m_hopperMotor.getClosedLoopTarget() + HopperConstants.ENCODER_TICKS_TO_REVOLUTION);
+    setTarget(m_closedLoopTarget + HopperConstants.ENCODER_TICKS_TO_REVOLUTION);
     m_storeCount = 0;
   }
 
@@ -49,23 +83,41 @@ public class HopperSubsystem extends SubsystemBase {
    * Set the next setpoint to one-sixth revolution forward. DO NOT call repeatedly in execute().
    */
   public void nextSlot() {
-    m_hopperMotor.set(ControlMode.Position, m_hopperMotor.getClosedLoopTarget() + HopperConstants.ENCODER_TICKS_TO_REVOLUTION / 6);
+    setTarget(m_closedLoopTarget + HopperConstants.ENCODER_TICKS_TO_REVOLUTION / HopperConstants.SLOTS);
   }
 
   /**
    * Set the next setpoint to one-sixth revolution backward. DO NOT call repeatedly in execute().
    */
   public void previousSlot() {
-    m_hopperMotor.set(ControlMode.Position, m_hopperMotor.getClosedLoopTarget() - HopperConstants.ENCODER_TICKS_TO_REVOLUTION / 6);
+    setTarget(m_closedLoopTarget - HopperConstants.ENCODER_TICKS_TO_REVOLUTION / HopperConstants.SLOTS);
+  }
+
+  /**
+   * Set the setpoint to the nearest slot, so a hopper left between slots is lined up before the first shot.
+   * DO NOT call repeatedly in execute().
+   */
+  public void alignToSlot() {
+    double slot = HopperConstants.ENCODER_TICKS_TO_REVOLUTION / HopperConstants.SLOTS;
+    setTarget(Math.round(m_closedLoopTarget / slot) * slot);
+  }
+
+  /**
+   * Move the next stored ball into the thrower by going forward one slot. DO NOT call repeatedly in execute().
+   */
+  public void feedOne() {
+    nextSlot();
+    if (m_storeCount > 0) m_storeCount--;
   }
 
   /**
-   * Checks whether the closed-loop control is within maxError of the setpoint.
+   * Checks whether the hopper is within maxError of the last setpoint we commanded. The Talon's own closed loop
+   * error isn't used, since it lags a new setpoint by a frame or two and would pass on the error before the move.
    * @param maxError the maximum error (in encoder ticks)
    * @return Whether the absolute value of the closed loop error is less than maxError.
    */
   public boolean atSetpoint(int maxError) {
-    return Math.abs(m_hopperMotor.getClosedLoopError()) < maxError;
+    return Math.abs(m_closedLoopTarget - m_position) < maxError;
   }
 
   /**
@@ -88,7 +140,7 @@ public class HopperSubsystem extends SubsystemBase {
    * @return true if there is a ball in the loading slot.
    */
   public boolean ballLoaded(){
-    return m_hopperSensor.getVoltage() < HopperConstants.BALL_LOADED_VOLTAGE;
+    return m_sensorVoltage < HopperConstants.BALL_LOADED_VOLTAGE;
   }
 
 }
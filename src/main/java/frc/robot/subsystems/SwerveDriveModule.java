@@ -11,7 +11,9 @@ import com.revrobotics.EncoderType;
 import com.revrobotics.ControlType;
 
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj.controller.SimpleMotorFeedforward;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants.DrivetrainConstants;
 
 public class SwerveDriveModule extends SubsystemBase {
     // 42 ticks per rev (embedded encoder in Neo motor)
@@ -21,6 +23,9 @@ public class SwerveDriveModule extends SubsystemBase {
     //private static final double DRIVE_TICKS_PER_INCH = DRIVE_SENSOR_TICKS_PER_REV * 42.0/14.0 * 18.0/26.0 * 60.0/15.0 / ( 4.0*Math.PI);
     private static final double DRIVE_TICKS_PER_INCH = 42.0/14.0 * 18.0/26.0 * 60.0/15.0 / ( 4.0*Math.PI);
     private static final long STALL_TIMEOUT = 2000;
+    // PID slots on the drive Spark MAX: position for setTargetDistance(), velocity for setTargetVelocity()
+    private static final int DRIVE_POSITION_SLOT = 0;
+    private static final int DRIVE_VELOCITY_SLOT = 1;
 
     private long mStallTimeBegin = Long.MAX_VALUE;
 
@@ -46,6 +51,8 @@ public class SwerveDriveModule extends SubsystemBase {
     private double drive_kI;
     private double drive_kD;
     private double drive_kFF;
+    // Volts for a wheel speed in inches per second, from this module's characterization
+    private final SimpleMotorFeedforward mDriveFeedforward;
 
     private boolean driveInverted = false;
     private double driveGearRatio = 1;
@@ -61,9 +68,15 @@ public class SwerveDriveModule extends SubsystemBase {
     private double ANGLE_SENSOR_RANGE = ANGLE_SENSOR_MAX_VOLTAGE - ANGLE_SENSOR_MIN_VOLTAGE;
     public long bfc = 0;
 
-    private double[] m_positionVector = { 0, 0 };
-    private double m_deltaAngle = 0;
-    private double m_deltaDrive = 0;
+    // What the drive motor was last set to by setTargetAngle(); also read by the odometry thread
+    private volatile boolean mDriveMotorInverted = false;
+    // Reused by setTargetAngle()
+    private final SwerveKinematics.ModuleSetpoint mSetpoint = new SwerveKinematics.ModuleSetpoint();
+
+    // Sensor readings taken once per loop by sampleSensors(), so the getters don't each go out on the CAN bus
+    private double mAnglePosition = 0;
+    private double mDrivePosition = 0;
+    private double mDriveVelocity = 0;
 
     public SwerveDriveModule(int moduleNumber, CANSparkMax angleMotor, CANSparkMax driveMotor, double zeroOffset) {        this.moduleNumber = moduleNumber;
         
@@ -116,6 +129,15 @@ public class SwerveDriveModule extends SubsystemBase {
         m_pidControllerDrive.setD(0);
         m_pidControllerDrive.setFF(0);
 
+        // Velocity gains go in their own slot; the feedforward is sent with each setpoint
+        m_pidControllerDrive.setP(DrivetrainConstants.DRIVE_VELOCITY_kP, DRIVE_VELOCITY_SLOT);
+        m_pidControllerDrive.setI(0, DRIVE_VELOCITY_SLOT);
+        m_pidControllerDrive.setD(0, DRIVE_VELOCITY_SLOT);
+        m_pidControllerDrive.setFF(0, DRIVE_VELOCITY_SLOT);
+        mDriveFeedforward = new SimpleMotorFeedforward(DrivetrainConstants.DRIVE_kS[moduleNumber],
+                DrivetrainConstants.DRIVE_kV[moduleNumber], DrivetrainConstants.DRIVE_kA[moduleNumber]);
+        driveMotor.enableVoltageCompensation(DrivetrainConstants.NOMINAL_VOLTAGE);
+
         //set frame..?
         //driveMotor.setControlFramePeriodMs(periodMs);
         
@@ -132,6 +154,18 @@ public class SwerveDriveModule extends SubsystemBase {
         angleMotor.setSmartCurrentLimit(25, 25);
         driveMotor.setSmartCurrentLimit(25, 25);
     	// SmartDashboard.putBoolean("Motor Jammed" + moduleNumber, angleMotorJam);
+
+        sampleSensors();
+    }
+
+    /**
+     * Read the angle sensor and the drive encoder. SwerveDriveSubsystem calls this at the start of every loop;
+     * the getters below return these readings until the next call.
+     */
+    public void sampleSensors() {
+        mAnglePosition = m_analogSensorAngle.getPosition();
+        mDrivePosition = m_encoderDrive.getPosition();
+        mDriveVelocity = m_encoderDrive.getVelocity();
     }
 
     /**
@@ -174,7 +208,7 @@ public class SwerveDriveModule extends SubsystemBase {
  
 
     public double getRawSensorPosition() {
-        return m_analogSensorAngle.getPosition();
+        return mAnglePosition;
     }
     /**
      * Get the current angle of the swerve module
@@ -183,11 +217,15 @@ public class SwerveDriveModule extends SubsystemBase {
      * @return An angle in the range [0, 360)
      */
     public double getCurrentAngle() {
+        return toModuleAngle(mAnglePosition);
+    }
+
+    private double toModuleAngle(double sensorPosition) {
         // double angle = mAngleMotor.getSelectedSensorPosition(0) * (360.0 / 1024.0); // orig
         // new all spark max controllers and based on 2910's 2019 code
         // double angle = ( 1.0 - (m_analogSensorAngle.getPosition() - ANGLE_SENSOR_MIN_VOLTAGE) / ANGLE_SENSOR_RANGE) * 360.0; 
         // double angle = ( 1.0 - m_analogSensorAngle.getPosition()) * 360.0; // getPosition returning a value in [0,1)
-        double angle = ( m_analogSensorAngle.getPosition()) * 360.0; // getPosition returning a value in [0,1)
+        double angle = ( sensorPosition) * 360.0; // getPosition returning a value in [0,1)
         angle -= mZeroOffset;
         angle %= 360;
         if (angle < 0) angle += 360;
@@ -196,7 +234,7 @@ public class SwerveDriveModule extends SubsystemBase {
     }
 
     /** 
-     * Get the raw voltage from the angle analog sensor 
+     * Get the raw voltage from the angle analog sensor. Not sampled, so this reads the sensor every call.
      * 
      * @return Raw voltage from sensor, presumably in range either [0, 3] or maybe [0, 5]
      */
@@ -209,7 +247,10 @@ public class SwerveDriveModule extends SubsystemBase {
      * @return
      */
     public double getDriveDistance() {
-        double ticks = mDriveMotor.getEncoder().getPosition();
+        return toDriveDistance(mDrivePosition);
+    }
+
+    private double toDriveDistance(double ticks) {
         if (driveInverted)
             ticks = -ticks;
 
@@ -221,7 +262,7 @@ public class SwerveDriveModule extends SubsystemBase {
      * If you've not set the Position Conversion Factor, (i.e. default) the return is in rotations.  
      */
     public double getDrivePosition() {
-        return m_encoderDrive.getPosition();
+        return mDrivePosition;
     }
 
     /**
@@ -229,7 +270,7 @@ public class SwerveDriveModule extends SubsystemBase {
      * If you've not set the Velocity Conversion Factor, (i.e. default) the return is in RPMs.
      */
     public double getDriveVelocity() {
-        return m_encoderDrive.getVelocity();
+        return mDriveVelocity;
     }
 
 
@@ -277,42 +318,19 @@ public class SwerveDriveModule extends SubsystemBase {
 
         lastTargetAngle = targetAngle;
 
-        targetAngle %= 360;
-
         // SmartDashboard.putNumber("Module " + moduleNumber + " Target Angle Desired ", targetAngle % 360);
 
-        targetAngle += mZeroOffset;
-
         // double currentAngle = mAngleMotor.getSelectedSensorPosition(0) * (360.0 / 1024.0); // 2910's original 2018 code
         // we've set the conversion factor so getPosition returns a value in [0,1)
-        double currentAngle = ( m_analogSensorAngle.getPosition()) * 360.0; 
-        
-        double currentAngleMod = currentAngle % 360;
-        if (currentAngleMod < 0) currentAngleMod += 360;
-
-        double delta = currentAngleMod - targetAngle;
-
-        if (delta > 180) {
-            targetAngle += 360;
-        } else if (delta < -180) {
-            targetAngle -= 360;
-        }
-
-        delta = currentAngleMod - targetAngle;
-        if (delta > 90 || delta < -90) {
-            if (delta > 90)
-                targetAngle += 180;
-            else if (delta < -90)
-                targetAngle -= 180;
-            mDriveMotor.setInverted(false);
-        } else {
-            mDriveMotor.setInverted(true);
-        }
+        double currentAngle = ( mAnglePosition) * 360.0; 
 
-        targetAngle += currentAngle - currentAngleMod;
+        // Zero offset, shorter way round and drive direction, all in SwerveKinematics
+        SwerveKinematics.moduleSetpoint(targetAngle, mZeroOffset, currentAngle, mSetpoint);
+        mDriveMotorInverted = mSetpoint.isDriveInverted();
+        mDriveMotor.setInverted(mDriveMotorInverted);
 
-        targetAngle = targetAngle  / 360.0; // * 3.3;  // changed 11/13/19 to be range of [0, 1) 11/29 range [0, 3.3)
-        m_pidControllerAngle.setReference(targetAngle, ControlType.kPosition); // new for all Spark Max controllers
+        // changed 11/13/19 to be range of [0, 1) 11/29 range [0, 3.3)
+        m_pidControllerAngle.setReference(mSetpoint.getRotations(), ControlType.kPosition); // new for all Spark Max controllers
         // SmartDashboard.putNumber("Module " + moduleNumber + " Target Angle Set ", targetAngle);
 
     }
@@ -326,19 +344,45 @@ public class SwerveDriveModule extends SubsystemBase {
         // SmartDashboard.putNumber("Module " + moduleNumber + " Drive Ticks ", distance);
 
         // TODO: confirm the distance is set in the right units
-        m_pidControllerDrive.setReference(distance, ControlType.kPosition);
+        m_pidControllerDrive.setReference(distance, ControlType.kPosition, DRIVE_POSITION_SLOT);
         // mDriveMotor.set(ControlMode.MotionMagic, distance);
     }
 
+    /**
+     * Run the drive open loop.
+     * @param speed Fraction of DrivetrainConstants.NOMINAL_VOLTAGE, from -1 to 1.
+     */
     public void setTargetSpeed(double speed) {
         if (driveInverted) speed = -speed;
 
         mDriveMotor.set(speed);  
-        // 10/26/19:
-        // If for some reason the simple approach of setting the speed 
-        // as the voltage percent, above, doesn't work, maybe it will be
-        // better to set the motor's speed using the PID controller, i.e.:
-        // m_pidControllerDrive.setReference(speed, ControlType.kVelocity);
+    }
+
+    /**
+     * Run the drive closed loop on wheel speed: the module's feedforward supplies the voltage the speed and
+     * acceleration should take, and the Spark MAX's velocity PID corrects the rest.
+     * @param inchesPerSecond Wheel speed along the module's direction.
+     * @param inchesPerSecondSquared Wheel acceleration, or 0 if not known.
+     */
+    public void setTargetVelocity(double inchesPerSecond, double inchesPerSecondSquared) {
+        if (driveInverted) {
+            inchesPerSecond = -inchesPerSecond;
+            inchesPerSecondSquared = -inchesPerSecondSquared;
+        }
+
+        double feedforward = mDriveFeedforward.calculate(inchesPerSecond, inchesPerSecondSquared);
+        // The encoder counts motor revolutions, so its velocity is in motor RPM
+        double rpm = inchesToEncoderTicks(inchesPerSecond) * 60;
+        m_pidControllerDrive.setReference(rpm, ControlType.kVelocity, DRIVE_VELOCITY_SLOT, feedforward);
+    }
+
+    /**
+     * Run the drive open loop at a voltage, for characterization.
+     */
+    public void setDriveVoltage(double volts) {
+        if (driveInverted) volts = -volts;
+
+        mDriveMotor.set(volts / DrivetrainConstants.NOMINAL_VOLTAGE);
     }
     /**
      * Setting the drive motor to either brake mode of Coast
@@ -372,47 +416,45 @@ public class SwerveDriveModule extends SubsystemBase {
     }
 
     /**
-     *  Set the max acceleration and velocity for Smart Motion (Magic Motion for Talons)
-     * TODO: Need to look up the Talon command and then find the equivalent Spark Max  
-     * command (for current version of API), 
-     * then insert the Spark Max command here.  Be very careful about units-- make 
-     * sure to write this code to make the robot do, via the Spark Max, exactly what it
-     * was built and programmed to do with the Talons.
-     * @param maxAcceleration
-     * @param maxVelocity
+     * Get the direction the module moves when getDriveDistance() increases, for odometry.
+     * The drive subsystem points modules at (kinematics angle + 180), and the drive motor is
+     * inverted unless setTargetAngle() turned the module around; inverting a brushless
+     * Spark Max inverts its encoder too, so both have to be undone here.
+     * @return An angle in the range [0, 360), counterclockwise from the front of the robot
      */
-    public void setMotionConstraints(double maxAcceleration, double maxVelocity) {
+    public double getDriveAngle() {
+        return toDriveAngle(getCurrentAngle());
+    }
+
+    private double toDriveAngle(double currentAngle) {
+        double angle = currentAngle - (mDriveMotorInverted ? 180 : 0);
+        if (angle < 0) angle += 360;
 
-        m_pidControllerDrive.setSmartMotionMaxAccel(inchesToEncoderTicks(maxAcceleration * 12) / 10, 0);
-        m_pidControllerDrive.setSmartMotionMaxVelocity(inchesToEncoderTicks(maxVelocity * 12) / 10, 0);
+        return angle;
     }
 
     /**
-     * Get the X, Y position vector for this swerve module.
-     * @return double[2] X, Y position vector.
+     * Same as getDriveDistance(), but reads the encoder now instead of using the loop's sample.
+     * For the odometry thread, which runs faster than the loop.
      */
-    public double[] getXYPosition(){
-      return m_positionVector;
+    public double readDriveDistance() {
+        return toDriveDistance(m_encoderDrive.getPosition());
     }
 
     /**
-     * Accumulate X and Y position into the position vector for this module.
+     * Read the wheel speed in inches per second straight from the drive's last status frame. Safe to call from
+     * another thread.
      */
-    public void accumulatePosition(){
-      m_deltaDrive = m_encoderDrive.getPosition() - m_deltaDrive;
-      double angleRadians = ( m_analogSensorAngle.getPosition() - ANGLE_SENSOR_MIN_VOLTAGE ) * 2 * Math.PI / ANGLE_SENSOR_RANGE; // Scale the sensor output to [0, 2*PI)
-      m_deltaAngle = angleRadians - m_deltaAngle;
-      m_positionVector[0] += m_deltaDrive * Math.cos(m_deltaAngle);
-      m_positionVector[1] += m_deltaDrive * Math.sin(m_deltaAngle);
+    public double readDriveSpeed() {
+        // RPM to inches per second
+        return toDriveDistance(m_encoderDrive.getVelocity()) / 60;
     }
 
     /**
-     * Set the position vector of this module to newX, newY.
-     * @param newX The new X-coord of the module.
-     * @param newY The new Y-coord of the module.
+     * Same as getDriveAngle(), but reads the angle sensor now instead of using the loop's sample.
+     * For the odometry thread, which runs faster than the loop.
      */
-    public void setPosition(double newX, double newY) {
-      m_positionVector[0] = newX;
-      m_positionVector[1] = newY;
+    public double readDriveAngle() {
+        return toDriveAngle(toModuleAngle(m_analogSensorAngle.getPosition()));
     }
 }
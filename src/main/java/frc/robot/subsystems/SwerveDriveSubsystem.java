@@ -4,11 +4,22 @@ import com.kauailabs.navx.frc.AHRS;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
 
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.SPI;
+import edu.wpi.first.wpilibj.Threads;
 import edu.wpi.first.wpilibj.controller.PIDController;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpiutil.math.MathUtil;
+import frc.robot.Constants.CANBusConstants;
 import frc.robot.Constants.DrivetrainConstants;
+import frc.robot.Constants.TrajectoryConstants;
+import frc.robot.util.CANFrameManager;
+import frc.robot.util.DashboardPublisher;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.PoseHistory;
+import frc.robot.util.RobotClock;
+import frc.robot.util.RobotPose;
+import frc.robot.util.TelemetryRecorder;
+import frc.robot.util.VisionTarget;
 
 // import the drivetrain constants statically so they can simply be used
 // as variables (see swervedrivemodules below)
@@ -39,6 +50,38 @@ public class SwerveDriveSubsystem extends HolonomicDrivetrain {
 
     private AHRS mNavX = new AHRS(SPI.Port.kMXP, (byte) 200);
 
+    private final SwerveKinematics mKinematics = new SwerveKinematics(DrivetrainConstants.WHEELBASE, DrivetrainConstants.TRACKWIDTH);
+    // Inches from the center of the robot to each wheel
+    private final double mRotationRadius = Math.hypot(DrivetrainConstants.WHEELBASE, DrivetrainConstants.TRACKWIDTH) / 2;
+    // The module states of the last holonomicDrive() or pidMove(), reused every loop
+    private final SwerveModuleStates mModuleStates = new SwerveModuleStates();
+
+    // Field position from the module encoders and the gyro. Updated by the odometry thread if
+    // DrivetrainConstants.ODOMETRY_THREAD, otherwise every loop; the arrays belong to whichever does the updating.
+    private final SwerveOdometry mOdometry = new SwerveOdometry();
+    private final double[] mModuleDistances = new double[SwerveModuleStates.MODULE_COUNT];
+    private final double[] mModuleAngles = new double[SwerveModuleStates.MODULE_COUNT];
+    private Notifier mOdometryNotifier = null;
+    private boolean mOdometryThreadPrioritySet = false;
+
+    // Recent poses, so delayed vision measurements can be lined up with where the robot was
+    private final PoseHistory mPoseHistory = new PoseHistory(DrivetrainConstants.POSE_HISTORY_SIZE);
+    private final double[] mPoseThen = new double[3];
+    private final double[] mPoseNow = new double[3];
+
+    // For printPositions(). The modules no longer track their own x and y, so the old "Swerve Module i" {x, y}
+    // keys are gone: the robot's position is the odometry pose, and each module gets keys of its own.
+    private final DashboardPublisher.NumberArrayValue mPoseValue = DashboardPublisher.numberArray("Drive/Pose", 3);
+    private final DashboardPublisher.NumberValue[] mModuleDistanceValues = new DashboardPublisher.NumberValue[SwerveModuleStates.MODULE_COUNT];
+    private final DashboardPublisher.NumberValue[] mModuleAngleValues = new DashboardPublisher.NumberValue[SwerveModuleStates.MODULE_COUNT];
+
+    private final TelemetryRecorder.DoubleArrayChannel mPoseChannel = TelemetryRecorder.addDoubleArray("Drive/Pose", 3);
+    private final TelemetryRecorder.DoubleChannel mGyroChannel = TelemetryRecorder.addDouble("Drive/Gyro Angle");
+    private final TelemetryRecorder.DoubleArrayChannel mModuleAnglesChannel =
+            TelemetryRecorder.addDoubleArray("Drive/Module Angles", SwerveModuleStates.MODULE_COUNT);
+    private final TelemetryRecorder.DoubleArrayChannel mModuleSpeedsChannel =
+            TelemetryRecorder.addDoubleArray("Drive/Module Speeds", SwerveModuleStates.MODULE_COUNT);
+
     public SwerveDriveSubsystem() {
         super(DrivetrainConstants.WIDTH, DrivetrainConstants.LENGTH);
         zeroGyro();
@@ -69,11 +112,17 @@ public class SwerveDriveSubsystem extends HolonomicDrivetrain {
             // 11/26/19 less positive angle offset settings turns wheel angle clockwise looking from the top   
         };
 
+        for (int i = 0; i < SwerveModuleStates.MODULE_COUNT; i++) {
+            mModuleDistanceValues[i] = DashboardPublisher.number("Swerve Module " + i + " Distance");
+            mModuleAngleValues[i] = DashboardPublisher.number("Swerve Module " + i + " Angle");
+        }
+
         for (SwerveDriveModule module : mSwerveModules) {
+            CANFrameManager.apply("Swerve angle " + module.getAngleMotor().getDeviceId(), module.getAngleMotor(), CANBusConstants.SWERVE_ANGLE);
+            CANFrameManager.apply("Swerve drive " + module.getDriveMotor().getDeviceId(), module.getDriveMotor(), CANBusConstants.SWERVE_DRIVE);
             module.setTargetAngle(0);
             module.setDriveGearRatio(5.7777);
             module.setDriveWheelRadius(module.getDriveWheelRadius() * 1.05);
-            module.setMotionConstraints(getMaxAcceleration(), getMaxVelocity());
             module.setAngleKD(DrivetrainConstants.ANGLE_kD);
             module.setAngleKI(DrivetrainConstants.ANGLE_kI);
             module.setAngleKP(DrivetrainConstants.ANGLE_kP);
@@ -82,36 +131,146 @@ public class SwerveDriveSubsystem extends HolonomicDrivetrain {
         strafeController = new PIDController(DrivetrainConstants.STRAFE_kP, DrivetrainConstants.STRAFE_kI, DrivetrainConstants.STRAFE_kD);
         forwardController = new PIDController(DrivetrainConstants.FORWARD_kP, DrivetrainConstants.FORWARD_kI, DrivetrainConstants.FORWARD_kD);
         rotationController = new PIDController(DrivetrainConstants.ROTATION_kP, DrivetrainConstants.ROTATION_kI, DrivetrainConstants.ROTATION_kD);
+
+        if (DrivetrainConstants.ODOMETRY_THREAD) {
+            mOdometryNotifier = new Notifier(this::runOdometryThread);
+            mOdometryNotifier.setName("SwerveOdometry");
+            mOdometryNotifier.startPeriodic(DrivetrainConstants.ODOMETRY_PERIOD);
+        }
     }
 
     /**
-     * compute the angles of the four modules and return a vector of them
+     * compute the angles and speeds of the four modules without driving them
      * uses private member isFieldOriented to decide to adjust based on gyro reading
      * @param forward how far forward the robot is going
      * @param strafe how far to the side the robot is going
      * @param rotation how much to spin the robot 
-     * @param fo true if the computation is to be based on the field (field oriented)
-     * @return vector of angles of the set points for the four modules, in order: LF, RF, RB, LB
+     * @param states receives the set points for the four modules, in order: LF, RF, RB, LB
+     */
+    public void calculateSwerveModuleStates(double forward, double strafe, double rotation, SwerveModuleStates states) {
+        mKinematics.calculate(forward, strafe, rotation, isFieldOriented() ? getGyroAngle() : 0, isFieldOriented(), states);
+    }
+
+    /**
+     * @return the module angles and (normalized) speeds last sent by holonomicDrive() or pidMove(). Reused
+     * every loop, so read it rather than keeping it.
      */
-    public double[] calculateSwerveModuleAngles(double forward, double strafe, double rotation) {
-        if (isFieldOriented()) {
-            double angleRad = Math.toRadians(getGyroAngle());
-            double temp = forward * Math.cos(angleRad) + strafe * Math.sin(angleRad);
-            strafe = -forward * Math.sin(angleRad) + strafe * Math.cos(angleRad);
-            forward = temp;
+    public SwerveModuleStates getModuleStates() {
+        return mModuleStates;
+    }
+
+    /**
+     * Runs first thing in every scheduler loop, so each module's sensors are read once and every command
+     * this loop sees the same readings.
+     */
+    @Override
+    public void periodic() {
+        for (SwerveDriveModule module : mSwerveModules) {
+            module.sampleSensors();
         }
 
-        double a = strafe - rotation * (DrivetrainConstants.WHEELBASE / DrivetrainConstants.TRACKWIDTH);
-        double b = strafe + rotation * (DrivetrainConstants.WHEELBASE / DrivetrainConstants.TRACKWIDTH);
-        double c = forward - rotation * (DrivetrainConstants.TRACKWIDTH / DrivetrainConstants.WHEELBASE);
-        double d = forward + rotation * (DrivetrainConstants.TRACKWIDTH / DrivetrainConstants.WHEELBASE);
+        if (mOdometryNotifier == null) {
+            for (int i = 0; i < mSwerveModules.length; i++) {
+                mModuleDistances[i] = mSwerveModules[i].getDriveDistance();
+                mModuleAngles[i] = mSwerveModules[i].getDriveAngle();
+            }
+            updateOdometry();
+        }
 
-        return new double[]{
-                Math.atan2(b, c) * 180 / Math.PI,
-                Math.atan2(b, d) * 180 / Math.PI,
-                Math.atan2(a, d) * 180 / Math.PI,
-                Math.atan2(a, c) * 180 / Math.PI
-        };
+        RobotPose pose = getPose();
+        mPoseChannel.set(0, pose.getX());
+        mPoseChannel.set(1, pose.getY());
+        mPoseChannel.set(2, pose.getHeading());
+        mGyroChannel.set(getGyroAngle());
+        for (int i = 0; i < mSwerveModules.length; i++) {
+            mModuleAnglesChannel.set(i, mSwerveModules[i].getCurrentAngle());
+            // What holonomicDrive() asked for last loop
+            mModuleSpeedsChannel.set(i, mModuleStates.getSpeed(i));
+        }
+        LoopProfiler.lap(this);
+    }
+
+    /**
+     * Runs on the Notifier's own thread, so odometry keeps its rate when the main loop overruns.
+     */
+    private void runOdometryThread() {
+        if (!mOdometryThreadPrioritySet) {
+            Threads.setCurrentThreadPriority(true, DrivetrainConstants.ODOMETRY_THREAD_PRIORITY);
+            mOdometryThreadPrioritySet = true;
+        }
+        // The loop's samples would be up to a loop old, so read the sensors directly
+        for (int i = 0; i < mSwerveModules.length; i++) {
+            mModuleDistances[i] = mSwerveModules[i].readDriveDistance();
+            mModuleAngles[i] = mSwerveModules[i].readDriveAngle();
+        }
+        updateOdometry();
+    }
+
+    /**
+     * Add mModuleDistances and mModuleAngles, just filled in by the caller, to the odometry.
+     */
+    private void updateOdometry() {
+        double timestamp = RobotClock.now();
+        RobotPose pose = mOdometry.update(timestamp, getGyroAngle(), mModuleDistances, mModuleAngles);
+
+        // Record where we are for latency compensation
+        mPoseHistory.add(pose.getTimestamp(), pose.getX(), pose.getY(), pose.getHeading());
+    }
+
+    /**
+     * @return where the robot is on the field: inches, and degrees counterclockwise. Safe to call from any thread.
+     */
+    public RobotPose getPose() {
+        return mOdometry.getPose();
+    }
+
+    /**
+     * Get how fast the robot is moving across the field, from the change in odometry over the last
+     * DrivetrainConstants.VELOCITY_WINDOW seconds. Only call from the main robot thread.
+     * @param out double[2] that receives {x, y} in inches per second, in the same frame as {@link #getPose()}.
+     * @return false if there isn't enough history yet (out is set to 0).
+     */
+    public boolean getFieldVelocity(double[] out) {
+        RobotPose pose = getPose();
+        double then = pose.getTimestamp() - DrivetrainConstants.VELOCITY_WINDOW;
+        if (!mPoseHistory.sample(then, mPoseThen)) {
+            out[0] = 0;
+            out[1] = 0;
+            return false;
+        }
+        out[0] = (pose.getX() - mPoseThen[0]) / DrivetrainConstants.VELOCITY_WINDOW;
+        out[1] = (pose.getY() - mPoseThen[1]) / DrivetrainConstants.VELOCITY_WINDOW;
+        return true;
+    }
+
+    /**
+     * Re-project a vision measurement from the pose the robot was in when the frame was captured to the pose
+     * it is in now, so transport and processing delay don't show up as error. If there is no history yet, the
+     * target is returned unchanged.
+     * @param target The frame to correct. Its degrees_x is treated as degrees, positive to the right, and its
+     * distance as inches.
+     * @return A copy of the frame whose degrees_x and distance are as seen from the current pose.
+     */
+    public VisionTarget compensateVisionTarget(VisionTarget target) {
+        if (!mPoseHistory.sample(target.getCaptureTimestamp(), mPoseThen) || !mPoseHistory.latest(mPoseNow)) {
+            return target;
+        }
+
+        if (target.getDistance() <= 0) {
+            // No range, so only the change in heading can be corrected
+            return target.withMeasurement(target.getDegreesX() + PoseHistory.wrapDegrees(mPoseNow[2] - mPoseThen[2]), target.getDistance());
+        }
+
+        // Place the target on the field using the pose at capture time...
+        double bearingThen = Math.toRadians(mPoseThen[2] - target.getDegreesX());
+        double targetX = mPoseThen[0] + target.getDistance() * Math.cos(bearingThen);
+        double targetY = mPoseThen[1] + target.getDistance() * Math.sin(bearingThen);
+
+        // ...then look at it from where we are now
+        double dx = targetX - mPoseNow[0];
+        double dy = targetY - mPoseNow[1];
+        double bearingNow = Math.toDegrees(Math.atan2(dy, dx));
+        return target.withMeasurement(PoseHistory.wrapDegrees(mPoseNow[2] - bearingNow), Math.hypot(dx, dy));
     }
 
     public AHRS getNavX() {
@@ -146,51 +305,58 @@ public class SwerveDriveSubsystem extends HolonomicDrivetrain {
         forward *= getSpeedMultiplier();
         strafe *= getSpeedMultiplier();
  
-        if (fieldOriented) {
-            double angleRad = Math.toRadians(getGyroAngle());
-            double temp = forward * Math.cos(angleRad) +
-                    strafe * Math.sin(angleRad);
-            strafe = -forward * Math.sin(angleRad) + strafe * Math.cos(angleRad);
-            forward = temp;
-        }
-        
-        double a = strafe - rotation * (DrivetrainConstants.WHEELBASE / DrivetrainConstants.TRACKWIDTH);
-        double b = strafe + rotation * (DrivetrainConstants.WHEELBASE / DrivetrainConstants.TRACKWIDTH);
-        double c = forward - rotation * (DrivetrainConstants.TRACKWIDTH / DrivetrainConstants.WHEELBASE);
-        double d = forward + rotation * (DrivetrainConstants.TRACKWIDTH / DrivetrainConstants.WHEELBASE);
-
-        double[] angles = new double[]{
-                Math.atan2(b, c) * 180 / Math.PI,
-                Math.atan2(b, d) * 180 / Math.PI,
-                Math.atan2(a, d) * 180 / Math.PI,
-                Math.atan2(a, c) * 180 / Math.PI
-        };
-        
+        mKinematics.calculate(forward, strafe, rotation, fieldOriented ? getGyroAngle() : 0, fieldOriented, mModuleStates);
 
-        double[] speeds = new double[]{
-                Math.sqrt(b * b + c * c),
-                Math.sqrt(b * b + d * d),
-                Math.sqrt(a * a + d * d),
-                Math.sqrt(a * a + c * c)
-        };
+        boolean moving = Math.abs(forward) > 0.05 ||
+                Math.abs(strafe) > 0.05 ||
+                Math.abs(rotation) > 0.05;
+
+        driveModules(moving, 0);
+    }
 
-        double max = speeds[0];
+    /**
+     * Drive at a velocity, such as one from a trajectory. Unlike holonomicDrive() the speed multiplier isn't
+     * applied, so the robot goes as fast as asked (up to getMaxVelocity() at the fastest wheel).
+     * @param forward inches per second forward
+     * @param left inches per second to the left
+     * @param omega degrees per second counterclockwise
+     * @param acceleration inches per second squared along the direction of travel, for the drive feedforward
+     */
+    public void driveVelocity(double forward, double left, double omega, double acceleration) {
+        // Full output is getMaxVelocity(), in feet per second. Turning at omega moves the wheels at omega times
+        // the distance from the center to a wheel.
+        double maxSpeed = getMaxVelocity() * 12;
+        double rotationSpeed = Math.toRadians(omega) * mRotationRadius;
+        mKinematics.calculate(forward / maxSpeed, left / maxSpeed, rotationSpeed / maxSpeed / mKinematics.getRotationScale(),
+                0, false, mModuleStates);
 
-        for (double speed : speeds) {
-            if (speed > max) {
-                max = speed;
-            }
-        }
+        // Each wheel speeds up in proportion to its speed
+        double speed = Math.hypot(forward, left);
+        double accelerationPerSpeed = speed > 0 ? acceleration / speed : 0;
+        boolean moving = Math.max(speed, Math.abs(rotationSpeed)) > TrajectoryConstants.MIN_STEER_SPEED;
+        driveModules(moving, accelerationPerSpeed);
+    }
 
+    /**
+     * Send mModuleStates, just filled in by the caller, to the modules.
+     * @param moving false to leave the modules pointing where they are
+     * @param accelerationPerSpeed each module's acceleration, per inch per second of its speed, for the feedforward
+     */
+    private void driveModules(boolean moving, double accelerationPerSpeed) {
+        // Full output is getMaxVelocity(), in feet per second
+        double maxSpeed = getMaxVelocity() * 12;
         for (int i = 0; i < 4; i++) {
-            if (Math.abs(forward) > 0.05 ||
-                    Math.abs(strafe) > 0.05 ||
-                    Math.abs(rotation) > 0.05) {
-                mSwerveModules[i].setTargetAngle(angles[i] + 180);
+            if (moving) {
+                mSwerveModules[i].setTargetAngle(mModuleStates.getAngle(i) + 180);
             } else {
                 mSwerveModules[i].setTargetAngle(mSwerveModules[i].getTargetAngle());
             }
-            mSwerveModules[i].setTargetSpeed(speeds[i]);
+            if (DrivetrainConstants.VELOCITY_DRIVE) {
+                double speed = mModuleStates.getSpeed(i) * maxSpeed;
+                mSwerveModules[i].setTargetVelocity(speed, speed * accelerationPerSpeed);
+            } else {
+                mSwerveModules[i].setTargetSpeed(mModuleStates.getSpeed(i));
+            }
         }
     }
     
@@ -232,12 +398,12 @@ public class SwerveDriveSubsystem extends HolonomicDrivetrain {
 
     @Override
     public double getMaxAcceleration() {
-      return 5.5;
+      return DrivetrainConstants.MAX_ACCELERATION;
     }
 
     @Override
     public double getMaxVelocity() {
-      return 10; 
+      return DrivetrainConstants.MAX_VELOCITY;
     }
 
     /**
@@ -370,41 +536,31 @@ public class SwerveDriveSubsystem extends HolonomicDrivetrain {
     }
 
     /**
-     * Accumulate the position vector of each of the swerve modules.
+     * Publishes the odometry pose as "Drive/Pose" = {x, y, heading} in inches and degrees, and each module's drive
+     * distance and angle.
      */
-    public void accumulatePosition(){
-      for(SwerveDriveModule module : mSwerveModules) {
-        module.accumulatePosition();
-      }
-    }
-
     public void printPositions(){
+      RobotPose pose = getPose();
+      mPoseValue.set(0, pose.getX());
+      mPoseValue.set(1, pose.getY());
+      mPoseValue.set(2, pose.getHeading());
       for(int i = 0; i < 4; i++){
-        SmartDashboard.putNumberArray("Swerve Module " + i, mSwerveModules[i].getXYPosition());
+        mModuleDistanceValues[i].set(mSwerveModules[i].getDriveDistance());
+        mModuleAngleValues[i].set(mSwerveModules[i].getDriveAngle());
       }
     }
 
     /**
-     * Returns the average position of the swerve drive modules.
-     * @return double[2] = {x, y}; average x, y of the swerve modules
+     * Returns the position of the robot from odometry.
+     * @return double[2] = {x, y} in inches
      */
     public double[] getPosition(){
-      double[] vector = {0,0};
-
-      for(SwerveDriveModule module : mSwerveModules){
-        vector[0] += module.getXYPosition()[0];
-        vector[1] += module.getXYPosition()[1];
-      }
-
-      vector[0] /= 4;
-      vector[1] /= 4;
-
-      return vector;
+      RobotPose pose = getPose();
+      return new double[]{ pose.getX(), pose.getY() };
     }
 
     public void setRobotPosition(double x, double y){
-      for(SwerveDriveModule module : mSwerveModules){
-        module.setPosition(x, y);
-      }
+      mOdometry.resetPosition(x, y);
+      mPoseHistory.clear();
     }
 }
@@ -0,0 +1,162 @@
+package frc.robot.subsystems;
+
+/**
+ * The swerve drive math, kept apart from the motor controllers and sensors so it can be benchmarked and
+ * tested off the robot. {@link SwerveDriveSubsystem} and {@link SwerveDriveModule} only add the hardware
+ * reads and writes around these methods. Nothing here allocates.
+ *
+ * <p>Modules are always in the order LF, RF, RB, LB. Angles are in degrees.
+ */
+public class SwerveKinematics {
+    // The geometry never changes, so the ratios are worked out once
+    private final double mWheelbaseOverTrackwidth;
+    private final double mTrackwidthOverWheelbase;
+    private final double mRotationScale;
+
+    public SwerveKinematics(double wheelbase, double trackwidth) {
+        mWheelbaseOverTrackwidth = wheelbase / trackwidth;
+        mTrackwidthOverWheelbase = trackwidth / wheelbase;
+        mRotationScale = Math.hypot(mWheelbaseOverTrackwidth, mTrackwidthOverWheelbase);
+    }
+
+    /**
+     * @return how fast calculate() turns each module for a rotation of 1, in the units of forward and strafe.
+     * Divide a wheel speed from turning by this to get the rotation to ask for.
+     */
+    public double getRotationScale() {
+        return mRotationScale;
+    }
+
+    /**
+     * Compute the angle and speed of each module, with the speeds normalized so none is over full output.
+     * @param forward how far forward the robot is going
+     * @param strafe how far to the side the robot is going
+     * @param rotation how much to spin the robot
+     * @param gyroAngle the robot's heading, used when fieldOriented
+     * @param fieldOriented true if forward and strafe are relative to the field rather than the robot
+     * @param states receives the module angles and speeds
+     */
+    public void calculate(double forward, double strafe, double rotation, double gyroAngle, boolean fieldOriented,
+            SwerveModuleStates states) {
+        if (fieldOriented) {
+            double angleRad = Math.toRadians(gyroAngle);
+            double cos = Math.cos(angleRad);
+            double sin = Math.sin(angleRad);
+            double temp = forward * cos + strafe * sin;
+            strafe = -forward * sin + strafe * cos;
+            forward = temp;
+        }
+
+        double a = strafe - rotation * mWheelbaseOverTrackwidth;
+        double b = strafe + rotation * mWheelbaseOverTrackwidth;
+        double c = forward - rotation * mTrackwidthOverWheelbase;
+        double d = forward + rotation * mTrackwidthOverWheelbase;
+
+        double[] angles = states.mAngles;
+        angles[0] = Math.toDegrees(Math.atan2(b, c));
+        angles[1] = Math.toDegrees(Math.atan2(b, d));
+        angles[2] = Math.toDegrees(Math.atan2(a, d));
+        angles[3] = Math.toDegrees(Math.atan2(a, c));
+
+        double[] speeds = states.mSpeeds;
+        speeds[0] = Math.sqrt(b * b + c * c);
+        speeds[1] = Math.sqrt(b * b + d * d);
+        speeds[2] = Math.sqrt(a * a + d * d);
+        speeds[3] = Math.sqrt(a * a + c * c);
+        states.normalize(1);
+    }
+
+    /**
+     * Pick the angle motor setpoint for a module: the target angle, or the target plus 180 degrees with the
+     * drive reversed, whichever is closer to where the module is pointing now.
+     * @param targetAngle the angle to point the module, including its zero offset
+     * @param currentAngle the module's current angle from its sensor, not wrapped
+     * @return the setpoint in degrees, on the same continuous scale as currentAngle
+     */
+    public static double optimizeAngle(double targetAngle, double currentAngle) {
+        double currentAngleMod = currentAngle % 360;
+        if (currentAngleMod < 0) currentAngleMod += 360;
+
+        double delta = currentAngleMod - targetAngle;
+
+        if (delta > 180) {
+            targetAngle += 360;
+        } else if (delta < -180) {
+            targetAngle -= 360;
+        }
+
+        delta = currentAngleMod - targetAngle;
+        if (delta > 90) {
+            targetAngle += 180;
+        } else if (delta < -90) {
+            targetAngle -= 180;
+        }
+
+        return targetAngle + (currentAngle - currentAngleMod);
+    }
+
+    /**
+     * Work out everything a module does with a target angle short of talking to its motor controllers: add its
+     * zero offset, pick the closer of the target and its reverse, and decide which way the drive has to run.
+     * SwerveDriveModule.setTargetAngle() is this plus the two writes.
+     * @param targetAngle the angle to point the module, from {@link #calculate}, without the zero offset
+     * @param zeroOffset the module's sensor reading when it points at angle 0
+     * @param currentAngle the module's current angle from its sensor, not wrapped
+     * @param out receives the angle motor setpoint and drive direction
+     */
+    public static void moduleSetpoint(double targetAngle, double zeroOffset, double currentAngle, ModuleSetpoint out) {
+        targetAngle %= 360;
+        targetAngle += zeroOffset;
+
+        // Turn the shorter way, running the drive backwards if the module ends up facing the other way
+        double setpoint = optimizeAngle(targetAngle, currentAngle);
+        out.mDriveInverted = !isReversed(setpoint, targetAngle);
+        out.mRotations = setpoint / 360.0;
+    }
+
+    /**
+     * @param setpoint a setpoint from {@link #optimizeAngle(double, double)}
+     * @param targetAngle the target angle it was computed from
+     * @return true if the setpoint is the target turned around, so the drive has to run backwards
+     */
+    public static boolean isReversed(double setpoint, double targetAngle) {
+        double difference = (setpoint - targetAngle) % 360;
+        if (difference < 0) difference += 360;
+        return difference > 90 && difference < 270;
+    }
+
+    /**
+     * Add a module's movement to its position.
+     * @param position double[2] {x, y} to add to
+     * @param distance how far the module moved
+     * @param angleRadians the direction it moved in
+     */
+    public static void integrate(double[] position, double distance, double angleRadians) {
+        position[0] += distance * Math.cos(angleRadians);
+        position[1] += distance * Math.sin(angleRadians);
+    }
+
+    /**
+     * A module's angle motor setpoint and drive direction, filled in by
+     * {@link SwerveKinematics#moduleSetpoint(double, double, double, ModuleSetpoint)}. Each module owns one and
+     * reuses it, so setting an angle doesn't allocate.
+     */
+    public static final class ModuleSetpoint {
+        private double mRotations = 0;
+        private boolean mDriveInverted = false;
+
+        /**
+         * @return the angle motor setpoint in sensor rotations, on the same continuous scale as the sensor
+         */
+        public double getRotations() {
+            return mRotations;
+        }
+
+        /**
+         * @return true if the drive motor has to be inverted for positive speeds to move the module toward the target
+         */
+        public boolean isDriveInverted() {
+            return mDriveInverted;
+        }
+    }
+}
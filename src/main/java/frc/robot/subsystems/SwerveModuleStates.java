@@ -0,0 +1,39 @@
+package frc.robot.subsystems;
+
+/**
+ * The angle and speed of each swerve module, filled in by {@link SwerveKinematics}. Whoever calls the
+ * kinematics owns one of these and reuses it every loop, so driving doesn't allocate.
+ *
+ * <p>Modules are in the order LF, RF, RB, LB. Angles are in degrees and speeds are fractions of full output.
+ */
+public class SwerveModuleStates {
+    public static final int MODULE_COUNT = 4;
+
+    final double[] mAngles = new double[MODULE_COUNT];
+    final double[] mSpeeds = new double[MODULE_COUNT];
+
+    public double getAngle(int module) {
+        return mAngles[module];
+    }
+
+    public double getSpeed(int module) {
+        return mSpeeds[module];
+    }
+
+    /**
+     * Scale every speed down by the same factor so none is over maxSpeed. Speeds already in range are left
+     * alone, so the modules keep pulling in the right proportions when one of them saturates.
+     */
+    public void normalize(double maxSpeed) {
+        double max = 0;
+        for (double speed : mSpeeds) {
+            max = Math.max(max, Math.abs(speed));
+        }
+        if (max > maxSpeed) {
+            double scale = maxSpeed / max;
+            for (int i = 0; i < MODULE_COUNT; i++) {
+                mSpeeds[i] *= scale;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package frc.robot.subsystems;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import frc.robot.util.PoseHistory;
+import frc.robot.util.RobotPose;
+
+/**
+ * Tracks the robot's position on the field from the swerve modules and the gyro. Each update takes how far every
+ * module's wheel has rolled since the last update and which way it was pointing, averages them into one robot
+ * motion, and turns that onto the field using the gyro heading halfway through the step. The heading itself comes
+ * straight from the gyro, which drifts far less than the wheels slip.
+ *
+ * <p>Positions are in inches, x forward and y left at zero heading; angles are in degrees, counterclockwise
+ * positive. Updating doesn't allocate beyond the published {@link RobotPose}.
+ *
+ * <p>update() must always be called from the same thread, which may be a dedicated odometry thread. getPose() and
+ * resetPosition() are safe from any thread.
+ */
+public class SwerveOdometry {
+    private final double[] mLastDistances = new double[SwerveModuleStates.MODULE_COUNT];
+    private final double[] mRobotMotion = new double[2];
+    private boolean mHasBaseline = false;
+    private double mLastHeading = 0;
+
+    private double mX = 0;
+    private double mY = 0;
+
+    // A position from resetPosition() for the updating thread to pick up
+    private final AtomicReference<RobotPose> mPendingReset = new AtomicReference<>();
+
+    private volatile RobotPose mPose = RobotPose.ORIGIN;
+
+    /**
+     * Add one set of sensor readings.
+     * @param timestamp when the sensors were read, in RobotClock seconds
+     * @param heading the gyro heading, counterclockwise positive
+     * @param distances how far each module's wheel has rolled in total, in inches
+     * @param angles the direction each module rolls when its distance increases, counterclockwise from the
+     * front of the robot
+     * @return the new pose, which is also what {@link #getPose()} returns from now on
+     */
+    public RobotPose update(double timestamp, double heading, double[] distances, double[] angles) {
+        int modules = mLastDistances.length;
+
+        RobotPose reset = mPendingReset.getAndSet(null);
+        if (reset != null) {
+            mX = reset.getX();
+            mY = reset.getY();
+        }
+
+        if (mHasBaseline) {
+            mRobotMotion[0] = 0;
+            mRobotMotion[1] = 0;
+            for (int i = 0; i < modules; i++) {
+                SwerveKinematics.integrate(mRobotMotion, distances[i] - mLastDistances[i], Math.toRadians(angles[i]));
+            }
+            double forward = mRobotMotion[0] / modules;
+            double left = mRobotMotion[1] / modules;
+
+            // The robot turned during the step, so use the heading from the middle of it
+            double midHeading = Math.toRadians(mLastHeading + PoseHistory.wrapDegrees(heading - mLastHeading) / 2);
+            double cos = Math.cos(midHeading);
+            double sin = Math.sin(midHeading);
+            mX += forward * cos - left * sin;
+            mY += forward * sin + left * cos;
+        }
+
+        System.arraycopy(distances, 0, mLastDistances, 0, modules);
+        mLastHeading = heading;
+        mHasBaseline = true;
+
+        double wrappedHeading = heading % 360;
+        if (wrappedHeading < 0) wrappedHeading += 360;
+        RobotPose pose = new RobotPose(timestamp, mX, mY, wrappedHeading);
+        mPose = pose;
+        return pose;
+    }
+
+    /**
+     * Move the robot to a known position. The heading still comes from the gyro. The position is applied by the
+     * next update, so motion from the current step is counted from the new position.
+     */
+    public void resetPosition(double x, double y) {
+        RobotPose pose = mPose;
+        RobotPose reset = new RobotPose(pose.getTimestamp(), x, y, pose.getHeading());
+        mPendingReset.set(reset);
+        mPose = reset;
+    }
+
+    /**
+     * @return the latest pose. Cheap enough to call as often as needed.
+     */
+    public RobotPose getPose() {
+        return mPose;
+    }
+}
@@ -7,18 +7,31 @@
 
 package frc.robot.subsystems;
 
+import java.io.File;
+import java.io.IOException;
+
 import com.revrobotics.CANEncoder;
 import com.revrobotics.CANPIDController;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.ControlType;
 import com.revrobotics.CANSparkMax.IdleMode;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
-import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
 
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.LinearFilter;
+import edu.wpi.first.wpilibj.RobotState;
+import edu.wpi.first.wpilibj.controller.SimpleMotorFeedforward;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.CANBusConstants;
 import frc.robot.Constants.ThrowerConstants;
+import frc.robot.Constants.ThrowerLUT;
 import frc.robot.Constants.ThrowerMotors;
+import frc.robot.util.CANFrameManager;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.RobotClock;
+import frc.robot.util.ShotTable;
+import frc.robot.util.TelemetryRecorder;
 
 public class ThrowerSubsystem extends SubsystemBase {
 
@@ -36,7 +49,38 @@ public class ThrowerSubsystem extends SubsystemBase {
   private double kMaxOutput = ThrowerConstants.MAX_OUTPUT;
   private double kMinOutput = ThrowerConstants.MIN_OUTPUT;
 
+  private final SimpleMotorFeedforward m_feedforward =
+      new SimpleMotorFeedforward(ThrowerConstants.kS, ThrowerConstants.kV, ThrowerConstants.kA);
+
+  // The motor RPM the Spark MAX is holding
   private double m_setpoint = 0;
+  // The same, or NaN when the controller isn't running a velocity setpoint
+  private double m_sentSetpoint = Double.NaN;
+  // The arbitrary feedforward volts last sent with it
+  private double m_sentFeedforward = Double.NaN;
+
+  // Extra volts while the wheel gets back to speed after a shot
+  private boolean m_recovering = false;
+  private double m_recoveryBoost = 0;
+
+  // The leader's velocity, read once per loop in periodic()
+  private double m_velocity = 0;
+  // Its smoothed rate of change in RPM per second, for predicting where the wheel is headed
+  private double m_acceleration = 0;
+  private double m_lastVelocityTime = Double.NaN;
+  private final LinearFilter m_accelerationFilter =
+      LinearFilter.singlePoleIIR(ThrowerConstants.ACCELERATION_TIME_CONSTANT, 0.02);
+
+  // Distance to wheel RPM, from ThrowerLUT.FILE. Null if it has never loaded.
+  private final File m_shotTableFile = new File(Filesystem.getDeployDirectory(), ThrowerLUT.FILE);
+  private ShotTable m_shotTable = null;
+  private long m_shotTableModified = 0;
+  private double m_lastShotTableCheck = Double.NEGATIVE_INFINITY;
+
+  private final TelemetryRecorder.DoubleChannel m_setpointChannel = TelemetryRecorder.addDouble("Thrower/Setpoint");
+  private final TelemetryRecorder.DoubleChannel m_velocityChannel = TelemetryRecorder.addDouble("Thrower/Velocity");
+  private final TelemetryRecorder.DoubleChannel m_feedforwardChannel = TelemetryRecorder.addDouble("Thrower/Feedforward");
+  private final TelemetryRecorder.BooleanChannel m_recoveringChannel = TelemetryRecorder.addBoolean("Thrower/Recovering");
 
   /**
    * Creates a new Thrower.
@@ -47,10 +91,12 @@ public class ThrowerSubsystem extends SubsystemBase {
 
     m_leftMotor.setIdleMode(IdleMode.kCoast);
     m_rightMotor.setIdleMode(IdleMode.kCoast);
+    m_leftMotor.enableVoltageCompensation(ThrowerConstants.NOMINAL_VOLTAGE);
 
     m_rightMotor.follow(m_leftMotor, ThrowerMotors.INVERT_FOLLOWER);
-    // Set the leader to a custom update rate, default 10ms
-    m_leftMotor.setPeriodicFramePeriod(PeriodicFrame.kStatus0, ThrowerConstants.UPDATE_RATE);
+    // The leader's output goes to the follower at a custom update rate, default 10ms
+    CANFrameManager.apply("Thrower leader", m_leftMotor, CANBusConstants.THROWER_LEADER);
+    CANFrameManager.apply("Thrower follower", m_rightMotor, CANBusConstants.THROWER_FOLLOWER);
 
     // Pull out the objects to reference the native encoder & pid controller
     m_throwerController = m_leftMotor.getPIDController();
@@ -74,11 +120,70 @@ public class ThrowerSubsystem extends SubsystemBase {
     SmartDashboard.putNumber("Thrower I Zone", kIz);
     SmartDashboard.putNumber("Min Output", kMinOutput);
     SmartDashboard.putNumber("Max Output", kMaxOutput);
+
+    loadShotTable();
+  }
+
+  /**
+   * Load the shot table if its file has changed since it was last loaded. A file that doesn't parse, or asks
+   * for a speed over ThrowerLUT.MAX_RPM, is reported and the old table is kept.
+   */
+  private void loadShotTable() {
+    long modified = m_shotTableFile.lastModified();
+    if (modified == m_shotTableModified && m_shotTable != null) return;
+    m_shotTableModified = modified;
+
+    try {
+      ShotTable table = ShotTable.load(m_shotTableFile.toPath());
+      if (table.getMaxRPM() > ThrowerLUT.MAX_RPM) {
+        System.out.println(String.format("ThrowerSubsystem could not load the shot table: %s asks for %.0f wheel RPM, "
+            + "over the %.0f the thrower can hold", m_shotTableFile, table.getMaxRPM(), ThrowerLUT.MAX_RPM));
+        return;
+      }
+      m_shotTable = table;
+      System.out.println("ThrowerSubsystem loaded " + m_shotTable.size() + " shots from " + m_shotTableFile);
+    } catch (IOException e) {
+      System.out.println("ThrowerSubsystem could not load the shot table: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Look up the wheel speed for a shot from the shot table.
+   * @param inches The distance to the target.
+   * @return The wheel RPMs to pass to {@link #setSetpoint(double)}, or 0 if there is no shot table.
+   */
+  public double distanceToRPMs(double inches) {
+    return m_shotTable == null ? 0 : m_shotTable.get(inches);
   }
 
   @Override
   public void periodic() {
-    // This method will be called once per scheduler run
+    // This method will be called once per scheduler run, before any commands
+    double now = RobotClock.now();
+    double velocity = m_throwerEncoder.getVelocity();
+    if (!Double.isNaN(m_lastVelocityTime) && now > m_lastVelocityTime) {
+      m_acceleration = m_accelerationFilter.calculate((velocity - m_velocity) / (now - m_lastVelocityTime));
+    }
+    m_velocity = velocity;
+    m_lastVelocityTime = now;
+
+    if (!Double.isNaN(m_sentSetpoint)) {
+      updateRecovery();
+      // Only goes out when the boost starts, ends or moves enough to matter
+      if (Math.abs(feedforward() - m_sentFeedforward) > ThrowerConstants.FEEDFORWARD_DEADBAND) {
+        sendReference();
+      }
+    }
+    m_setpointChannel.set(m_setpoint);
+    m_velocityChannel.set(m_velocity);
+    m_feedforwardChannel.set(Double.isNaN(m_sentFeedforward) ? 0 : m_sentFeedforward);
+    m_recoveringChannel.set(m_recovering);
+
+    // Retune between matches: pick up a new shot table while disabled
+    if (RobotState.isDisabled() && now - m_lastShotTableCheck >= ThrowerLUT.RELOAD_CHECK_PERIOD) {
+      m_lastShotTableCheck = now;
+      loadShotTable();
+    }
 
     // Tune the thrower's constants
     if(ThrowerConstants.TUNE){
@@ -101,15 +206,87 @@ public class ThrowerSubsystem extends SubsystemBase {
         kMinOutput = min; kMaxOutput = max; 
       }
     }
+    LoopProfiler.lap(this);
   }
 
   /**
-   * Set the target speed for the thrower
+   * Set the target speed for the thrower. Safe to call every loop: the setpoint is only sent to the Spark MAX
+   * when it moves more than ThrowerConstants.SETPOINT_DEADBAND from the one it already has.
    * @param wheelTargetRPMs The target speed for the thrower wheel.
    */
   public void setSetpoint(double wheelTargetRPMs){
-    m_setpoint = wheelTargetRPMs * ThrowerConstants.GEAR_RATIO_MOTOR_TO_WHEEL;
-    m_throwerController.setReference(m_setpoint, ControlType.kVelocity);
+    // The controller works in motor RPM
+    double setpoint = wheelTargetRPMs / ThrowerConstants.GEAR_RATIO_MOTOR_TO_WHEEL;
+    double deadband = ThrowerConstants.SETPOINT_DEADBAND / ThrowerConstants.GEAR_RATIO_MOTOR_TO_WHEEL;
+    // NaN compares false, so the first setpoint after a stop always goes out
+    if (Math.abs(setpoint - m_sentSetpoint) <= deadband) return;
+
+    // A new speed isn't a dip to recover from
+    m_setpoint = setpoint;
+    m_recovering = false;
+    m_recoveryBoost = 0;
+    sendReference();
+  }
+
+  /**
+   * Spot a ball dragging the wheel down and work out the boost that gets it back up in
+   * ThrowerConstants.RECOVERY_TIME. The PID would get there on its own, but only once the error builds up.
+   */
+  private void updateRecovery() {
+    if (m_setpoint <= 0) {
+      m_recovering = false;
+    } else if (!m_recovering) {
+      m_recovering = m_velocity < m_setpoint * (1 - ThrowerConstants.RECOVERY_DIP)
+          && m_acceleration < -ThrowerConstants.RECOVERY_DECELERATION;
+    } else if (m_velocity >= m_setpoint * (1 - ThrowerConstants.RECOVERY_EXIT)) {
+      m_recovering = false;
+    }
+
+    if (m_recovering) {
+      double boost = ThrowerConstants.kA * (m_setpoint - m_velocity) / ThrowerConstants.RECOVERY_TIME;
+      m_recoveryBoost = Math.max(0, Math.min(ThrowerConstants.RECOVERY_MAX_BOOST, boost));
+    } else {
+      m_recoveryBoost = 0;
+    }
+  }
+
+  private double feedforward() {
+    return m_feedforward.calculate(m_setpoint) + m_recoveryBoost;
+  }
+
+  private void sendReference() {
+    double feedforward = feedforward();
+    m_throwerController.setReference(m_setpoint, ControlType.kVelocity, 0, feedforward);
+    m_sentSetpoint = m_setpoint;
+    m_sentFeedforward = feedforward;
+  }
+
+  /**
+   * Drive the thrower open loop, for characterization.
+   * @param volts Voltage for the motors; output is compensated to ThrowerConstants.NOMINAL_VOLTAGE.
+   */
+  public void setVoltage(double volts){
+    m_setpoint = 0;
+    m_sentSetpoint = Double.NaN;
+    m_sentFeedforward = Double.NaN;
+    m_recovering = false;
+    m_recoveryBoost = 0;
+    m_leftMotor.set(volts / ThrowerConstants.NOMINAL_VOLTAGE);
+  }
+
+  /**
+   * Read the leader's velocity in motor RPM straight from its last status frame. Unlike the rest of the
+   * subsystem, safe to call from another thread.
+   */
+  public double readVelocity(){
+    return m_throwerEncoder.getVelocity();
+  }
+
+  /**
+   * Read the voltage the leader is applying straight from its last status frame. Safe to call from another thread.
+   */
+  public double readAppliedVoltage(){
+    return m_leftMotor.getAppliedOutput() * m_leftMotor.getBusVoltage();
   }
 
   /**
@@ -117,6 +294,10 @@ public class ThrowerSubsystem extends SubsystemBase {
    */
   public void stopThrower(){
     m_setpoint = 0;
+    m_sentSetpoint = Double.NaN;
+    m_sentFeedforward = Double.NaN;
+    m_recovering = false;
+    m_recoveryBoost = 0;
     m_leftMotor.disable();
   }
 
@@ -125,6 +306,19 @@ public class ThrowerSubsystem extends SubsystemBase {
    * @return true if velocity of motor is within thresholdPercent of target.
    */
   public boolean atSetpoint(double thresholdPercent){
-    return Math.abs(m_setpoint - m_throwerEncoder.getVelocity()) <= Math.abs(m_setpoint * thresholdPercent);
+    return Math.abs(m_setpoint - m_velocity) <= Math.abs(m_setpoint * thresholdPercent);
+  }
+
+  /**
+   * Get whether the thrower will be within a threshold of the setpoint a little while from now, going by how
+   * fast it is speeding up or slowing down. A wheel recovering from a shot passes this before
+   * {@link #atSetpoint(double)}; a wheel swinging through the setpoint fast doesn't.
+   * @param seconds How far ahead to look, such as the time for a ball to reach the wheel.
+   * @return false if the thrower is stopped.
+   */
+  public boolean willBeAtSetpoint(double thresholdPercent, double seconds) {
+    if (Double.isNaN(m_sentSetpoint) || m_setpoint == 0) return false;
+    double predicted = m_velocity + m_acceleration * seconds;
+    return Math.abs(m_setpoint - predicted) <= Math.abs(m_setpoint * thresholdPercent);
   }
 }
@@ -0,0 +1,97 @@
+package frc.robot.util;
+
+import java.util.Map;
+
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
+import com.ctre.phoenix.motorcontrol.can.TalonSRX;
+import com.revrobotics.CANError;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+import frc.robot.Constants.CANBusConstants;
+
+/**
+ * Applies {@link CANFrameProfile}s to the motor controllers and keeps a running estimate of how busy they make
+ * the CAN bus. Subsystems call {@code apply} once per device when they build it, after any factory reset, so
+ * every status frame period on the robot comes from {@link CANBusConstants}.
+ *
+ * <p>The estimate counts each device's status frames plus one control frame every
+ * {@link CANBusConstants#CONTROL_FRAME_MS}, at {@link CANBusConstants#BITS_PER_FRAME} bits each. It leaves out
+ * frames the vendor libraries don't let us change, the PDP and the navX, so compare it with the Driver
+ * Station's measured utilization rather than treating it as exact.
+ *
+ * <p>Only used from the main robot thread during construction.
+ */
+public final class CANFrameManager {
+  // The Talon SRX status frame period is a byte
+  private static final int TALON_MAX_PERIOD_MS = 255;
+
+  private static int s_deviceCount = 0;
+  private static double s_framesPerSecond = 0;
+
+  private CANFrameManager() {
+  }
+
+  /**
+   * Set every status frame period of a Spark MAX.
+   * @param name What to call the device in warnings.
+   */
+  public static void apply(String name, CANSparkMax motor, CANFrameProfile<PeriodicFrame> profile) {
+    for (Map.Entry<PeriodicFrame, Integer> frame : profile.getPeriods().entrySet()) {
+      CANError error = motor.setPeriodicFramePeriod(frame.getKey(), frame.getValue());
+      if (error != CANError.kOk) {
+        System.out.println("CANFrameManager could not set " + name + " " + frame.getKey() + ": " + error);
+      }
+    }
+    register(profile.getFramesPerSecond());
+  }
+
+  /**
+   * Set every status frame period of a Talon SRX. Periods over 255 ms are sent as 255 ms.
+   * @param name What to call the device in warnings.
+   */
+  public static void apply(String name, TalonSRX motor, CANFrameProfile<StatusFrameEnhanced> profile) {
+    double framesPerSecond = 0;
+    for (Map.Entry<StatusFrameEnhanced, Integer> frame : profile.getPeriods().entrySet()) {
+      int periodMs = Math.min(frame.getValue(), TALON_MAX_PERIOD_MS);
+      ErrorCode error = motor.setStatusFramePeriod(frame.getKey(), periodMs, CANBusConstants.CONFIG_TIMEOUT_MS);
+      if (error != ErrorCode.OK) {
+        System.out.println("CANFrameManager could not set " + name + " " + frame.getKey() + ": " + error);
+      }
+      framesPerSecond += 1000.0 / periodMs;
+    }
+    register(framesPerSecond);
+  }
+
+  private static void register(double statusFramesPerSecond) {
+    s_deviceCount++;
+    s_framesPerSecond += statusFramesPerSecond + 1000.0 / CANBusConstants.CONTROL_FRAME_MS;
+  }
+
+  /**
+   * @return Estimated frames per second on the bus from every device applied so far.
+   */
+  public static double getEstimatedFramesPerSecond() {
+    return s_framesPerSecond;
+  }
+
+  /**
+   * @return Estimated share of the bus's bandwidth in use, from 0 to 1.
+   */
+  public static double getEstimatedUtilization() {
+    return s_framesPerSecond * CANBusConstants.BITS_PER_FRAME / CANBusConstants.BIT_RATE;
+  }
+
+  /**
+   * Put the estimate on the dashboard. The estimate only changes when devices are applied, so once after
+   * the subsystems are built is enough.
+   */
+  public static void publish() {
+    SmartDashboard.putNumber("CAN/Devices", s_deviceCount);
+    SmartDashboard.putNumber("CAN/Estimated Frames per Second", getEstimatedFramesPerSecond());
+    SmartDashboard.putNumber("CAN/Estimated Utilization %", getEstimatedUtilization() * 100);
+  }
+}
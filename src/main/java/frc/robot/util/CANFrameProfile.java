@@ -0,0 +1,89 @@
+package frc.robot.util;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
+
+/**
+ * How often a motor controller sends each of its status frames, in milliseconds. Profiles start from the
+ * factory defaults and are changed one frame at a time with {@link #with(Enum, int)}, which returns a new
+ * profile, so they can be shared as constants. {@link CANFrameManager} applies them to the devices.
+ *
+ * @param <F> The device's frame enum: {@link PeriodicFrame} for a Spark MAX, {@link StatusFrameEnhanced} for a
+ *     Talon SRX.
+ */
+public final class CANFrameProfile<F extends Enum<F>> {
+  private final EnumMap<F, Integer> m_periods;
+
+  private CANFrameProfile(EnumMap<F, Integer> periods) {
+    m_periods = periods;
+  }
+
+  /**
+   * @return The Spark MAX factory defaults: applied output and faults every 10 ms, velocity, temperature,
+   *     voltage and current every 20 ms, position every 20 ms.
+   */
+  public static CANFrameProfile<PeriodicFrame> sparkMax() {
+    EnumMap<PeriodicFrame, Integer> periods = new EnumMap<>(PeriodicFrame.class);
+    periods.put(PeriodicFrame.kStatus0, 10);
+    periods.put(PeriodicFrame.kStatus1, 20);
+    periods.put(PeriodicFrame.kStatus2, 20);
+    return new CANFrameProfile<>(periods);
+  }
+
+  /**
+   * @return The Talon SRX factory defaults for the frames it sends without a special sensor attached. The
+   *     MotionMagic frame is the same frame as Targets, so only Targets is listed.
+   */
+  public static CANFrameProfile<StatusFrameEnhanced> talonSRX() {
+    EnumMap<StatusFrameEnhanced, Integer> periods = new EnumMap<>(StatusFrameEnhanced.class);
+    periods.put(StatusFrameEnhanced.Status_1_General, 10);
+    periods.put(StatusFrameEnhanced.Status_2_Feedback0, 20);
+    periods.put(StatusFrameEnhanced.Status_3_Quadrature, 160);
+    periods.put(StatusFrameEnhanced.Status_4_AinTempVbat, 160);
+    periods.put(StatusFrameEnhanced.Status_8_PulseWidth, 160);
+    periods.put(StatusFrameEnhanced.Status_10_Targets, 160);
+    periods.put(StatusFrameEnhanced.Status_12_Feedback1, 160);
+    periods.put(StatusFrameEnhanced.Status_13_Base_PIDF0, 160);
+    periods.put(StatusFrameEnhanced.Status_14_Turn_PIDF1, 160);
+    return new CANFrameProfile<>(periods);
+  }
+
+  /**
+   * @param frame One of the frames in this profile.
+   * @param periodMs How often the device should send it.
+   * @return A copy of this profile with the frame's period changed.
+   */
+  public CANFrameProfile<F> with(F frame, int periodMs) {
+    if (!m_periods.containsKey(frame)) {
+      throw new IllegalArgumentException("Not a frame this device sends: " + frame);
+    }
+    if (periodMs <= 0) {
+      throw new IllegalArgumentException("Frame period must be positive: " + periodMs);
+    }
+    EnumMap<F, Integer> periods = new EnumMap<>(m_periods);
+    periods.put(frame, periodMs);
+    return new CANFrameProfile<>(periods);
+  }
+
+  /**
+   * @return Every frame and its period in milliseconds, in frame order.
+   */
+  public Map<F, Integer> getPeriods() {
+    return Collections.unmodifiableMap(m_periods);
+  }
+
+  /**
+   * @return How many status frames per second the device sends with this profile.
+   */
+  public double getFramesPerSecond() {
+    double framesPerSecond = 0;
+    for (int periodMs : m_periods.values()) {
+      framesPerSecond += 1000.0 / periodMs;
+    }
+    return framesPerSecond;
+  }
+}
@@ -0,0 +1,94 @@
+package frc.robot.util;
+
+import java.util.function.IntToDoubleFunction;
+
+import edu.wpi.first.wpilibj.Notifier;
+
+/**
+ * Samples voltage and velocity for a characterization run into {@link FlywheelCharacterization.Recording}s, one per
+ * mechanism (a flywheel, or each swerve module). Sampling runs on a Notifier at a fixed period, so the main loop's
+ * timing doesn't show up in the data and the fit gets the evenly spaced samples it needs. The command running the
+ * run only says which phase it is in.
+ */
+public final class CharacterizationSampler {
+  // Phases of a run. Acceleration isn't taken across phases.
+  public static final int RAMP = 0;
+  public static final int STEP = 1;
+  private static final int NOT_RECORDING = -1;
+
+  private final FlywheelCharacterization.Recording[] m_recordings;
+  private final IntToDoubleFunction m_voltage;
+  private final IntToDoubleFunction m_velocity;
+  private final Notifier m_notifier = new Notifier(this::sample);
+  // Set by the main thread, read by the Notifier's
+  private volatile int m_phase = NOT_RECORDING;
+
+  /**
+   * @param name The Notifier's thread name.
+   * @param recordings How many mechanisms are sampled.
+   * @param capacity Samples each recording holds, enough for the whole run.
+   * @param voltage Reads the voltage applied to a mechanism, by index. Called on the Notifier's thread.
+   * @param velocity Reads a mechanism's velocity, by index. Called on the Notifier's thread.
+   */
+  public CharacterizationSampler(String name, int recordings, int capacity, IntToDoubleFunction voltage,
+      IntToDoubleFunction velocity) {
+    m_recordings = new FlywheelCharacterization.Recording[recordings];
+    for (int i = 0; i < recordings; i++) {
+      m_recordings[i] = new FlywheelCharacterization.Recording(capacity);
+    }
+    m_voltage = voltage;
+    m_velocity = velocity;
+    m_notifier.setName(name);
+  }
+
+  // Runs on the Notifier's thread
+  private void sample() {
+    int phase = m_phase;
+    if (phase == NOT_RECORDING) return;
+    double time = RobotClock.now();
+    for (int i = 0; i < m_recordings.length; i++) {
+      m_recordings[i].add(time, m_voltage.applyAsDouble(i), m_velocity.applyAsDouble(i), phase);
+    }
+  }
+
+  /**
+   * Clear the recordings and start sampling every period seconds. Nothing is recorded until {@link #record(int)}.
+   */
+  public void start(double period) {
+    m_phase = NOT_RECORDING;
+    for (FlywheelCharacterization.Recording recording : m_recordings) {
+      recording.clear();
+    }
+    m_notifier.startPeriodic(period);
+  }
+
+  /**
+   * @param phase {@link #RAMP} or {@link #STEP}: record samples as part of that phase from now on.
+   */
+  public void record(int phase) {
+    m_phase = phase;
+  }
+
+  /**
+   * Stop recording, between phases.
+   */
+  public void pause() {
+    m_phase = NOT_RECORDING;
+  }
+
+  /**
+   * Stop sampling altogether. The recordings keep what was recorded.
+   */
+  public void stop() {
+    m_phase = NOT_RECORDING;
+    m_notifier.stop();
+  }
+
+  public FlywheelCharacterization.Recording getRecording(int index) {
+    return m_recordings[index];
+  }
+
+  public int getRecordingCount() {
+    return m_recordings.length;
+  }
+}
@@ -0,0 +1,186 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+import frc.robot.Constants.DashboardConstants;
+
+/**
+ * Publishes values to the SmartDashboard table without spending loop time on it. Code that shows something on
+ * the dashboard gets a handle for the key once, then sets the handle as often as it likes: setting only stores
+ * the value and notes whether it changed. Robot calls {@link #flush()} at the end of every loop, and every
+ * {@link DashboardConstants#PUBLISH_PERIOD} seconds the values that changed are written to their cached
+ * NetworkTables entries in one pass.
+ *
+ * <p>Keys are the same as {@code SmartDashboard.put*} keys, so dashboards don't notice the difference. Only
+ * used from the main robot thread.
+ */
+public final class DashboardPublisher {
+  private static final List<Value> VALUES = new ArrayList<>();
+  private static NetworkTable s_table = null;
+  private static double s_lastFlush = Double.NEGATIVE_INFINITY;
+
+  private DashboardPublisher() {
+  }
+
+  public static NumberValue number(String key) {
+    return add(new NumberValue(entry(key)));
+  }
+
+  public static BooleanValue bool(String key) {
+    return add(new BooleanValue(entry(key)));
+  }
+
+  public static StringValue string(String key) {
+    return add(new StringValue(entry(key)));
+  }
+
+  /**
+   * @param length How many values the array holds.
+   */
+  public static NumberArrayValue numberArray(String key, int length) {
+    return add(new NumberArrayValue(entry(key), length));
+  }
+
+  private static NetworkTableEntry entry(String key) {
+    if (s_table == null) {
+      s_table = NetworkTableInstance.getDefault().getTable("SmartDashboard");
+    }
+    return s_table.getEntry(key);
+  }
+
+  private static <V extends Value> V add(V value) {
+    VALUES.add(value);
+    return value;
+  }
+
+  /**
+   * Publish the values that changed, if the publish period has passed. Called at the end of every loop.
+   */
+  public static void flush() {
+    double now = RobotClock.now();
+    if (now - s_lastFlush < DashboardConstants.PUBLISH_PERIOD) return;
+    s_lastFlush = now;
+
+    for (int i = 0; i < VALUES.size(); i++) {
+      Value value = VALUES.get(i);
+      if (value.m_dirty) {
+        value.m_dirty = false;
+        value.publish();
+      }
+    }
+  }
+
+  /**
+   * A dashboard key with a value waiting to be published.
+   */
+  public abstract static class Value {
+    final NetworkTableEntry m_entry;
+    // Starts dirty so the first value is published even if it's the default
+    boolean m_dirty = true;
+
+    private Value(NetworkTableEntry entry) {
+      m_entry = entry;
+    }
+
+    abstract void publish();
+  }
+
+  public static final class NumberValue extends Value {
+    private double m_value = 0;
+
+    private NumberValue(NetworkTableEntry entry) {
+      super(entry);
+    }
+
+    public void set(double value) {
+      // Compare bits so NaN to NaN isn't a change
+      if (Double.doubleToLongBits(value) != Double.doubleToLongBits(m_value)) {
+        m_value = value;
+        m_dirty = true;
+      }
+    }
+
+    @Override
+    void publish() {
+      m_entry.setDouble(m_value);
+    }
+  }
+
+  public static final class BooleanValue extends Value {
+    private boolean m_value = false;
+
+    private BooleanValue(NetworkTableEntry entry) {
+      super(entry);
+    }
+
+    public void set(boolean value) {
+      if (value != m_value) {
+        m_value = value;
+        m_dirty = true;
+      }
+    }
+
+    @Override
+    void publish() {
+      m_entry.setBoolean(m_value);
+    }
+  }
+
+  public static final class StringValue extends Value {
+    private String m_value = "";
+
+    private StringValue(NetworkTableEntry entry) {
+      super(entry);
+    }
+
+    public void set(String value) {
+      if (value == null) value = "";
+      if (!value.equals(m_value)) {
+        m_value = value;
+        m_dirty = true;
+      }
+    }
+
+    @Override
+    void publish() {
+      m_entry.setString(m_value);
+    }
+  }
+
+  public static final class NumberArrayValue extends Value {
+    private final double[] m_values;
+
+    private NumberArrayValue(NetworkTableEntry entry, int length) {
+      super(entry);
+      m_values = new double[length];
+    }
+
+    public void set(int index, double value) {
+      if (Double.doubleToLongBits(value) != Double.doubleToLongBits(m_values[index])) {
+        m_values[index] = value;
+        m_dirty = true;
+      }
+    }
+
+    /**
+     * Copy in as many values as the array holds.
+     */
+    public void set(double[] values) {
+      int length = Math.min(values.length, m_values.length);
+      for (int i = 0; i < length; i++) {
+        set(i, values[i]);
+      }
+    }
+
+    @Override
+    void publish() {
+      // NetworkTables copies the array, so it can be reused
+      m_entry.setDoubleArray(m_values);
+    }
+  }
+}
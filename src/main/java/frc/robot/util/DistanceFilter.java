@@ -0,0 +1,71 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.MedianFilter;
+
+/**
+ * Smooths a stream of vision distances. Each measurement goes through a median of the last few, which throws
+ * out single bad frames without lagging a real change for long, then exponential smoothing with a time
+ * constant. The smoothing uses the actual time between measurements, since vision frames don't arrive on the
+ * loop period.
+ *
+ * <p>Feed it each frame once: repeating a frame would outvote the others in the median.
+ */
+public final class DistanceFilter {
+  private final MedianFilter m_median;
+  private final double m_timeConstant;
+
+  private double m_value = 0;
+  private double m_lastTimestamp = Double.NaN;
+
+  /**
+   * @param medianSamples How many measurements the median is taken over.
+   * @param timeConstant Seconds for the smoothed value to move about two thirds of the way to a new one.
+   */
+  public DistanceFilter(int medianSamples, double timeConstant) {
+    m_median = new MedianFilter(medianSamples);
+    m_timeConstant = timeConstant;
+  }
+
+  /**
+   * Add a measurement.
+   * @param distance The measured distance.
+   * @param timestamp When it was measured, in {@link RobotClock} seconds.
+   * @return The smoothed distance.
+   */
+  public double calculate(double distance, double timestamp) {
+    double median = m_median.calculate(distance);
+    if (Double.isNaN(m_lastTimestamp)) {
+      // Start from the first measurement, not from 0
+      m_value = median;
+    } else {
+      double dt = Math.max(0, timestamp - m_lastTimestamp);
+      double alpha = m_timeConstant > 0 ? 1 - Math.exp(-dt / m_timeConstant) : 1;
+      m_value += alpha * (median - m_value);
+    }
+    m_lastTimestamp = timestamp;
+    return m_value;
+  }
+
+  /**
+   * @return The smoothed distance, or 0 before the first measurement.
+   */
+  public double get() {
+    return m_value;
+  }
+
+  /**
+   * @return true once there has been a measurement since the last reset.
+   */
+  public boolean hasValue() {
+    return !Double.isNaN(m_lastTimestamp);
+  }
+
+  /**
+   * Forget every measurement, such as when starting on a new target.
+   */
+  public void reset() {
+    m_median.reset();
+    m_value = 0;
+    m_lastTimestamp = Double.NaN;
+  }
+}
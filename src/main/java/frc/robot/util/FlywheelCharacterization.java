@@ -0,0 +1,321 @@
+package frc.robot.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Fits a flywheel model, volts = kS * sign(velocity) + kV * velocity + kA * acceleration, to samples of applied
+ * voltage and measured velocity by least squares, and recommends velocity PIDF gains from it. The samples come
+ * from ThrowerCharacterizationCommand on the robot or frc.robot.sim.FlywheelSim on a laptop, in a
+ * {@link Recording}.
+ *
+ * <p>Differentiating noisy velocity would bias kA and kS, so the fit works on the model's exact discrete form
+ * instead: over one sample period dt, next velocity = alpha * velocity + beta * volts + gamma * sign(velocity),
+ * with alpha = e^(-kV dt / kA), beta = (1 - alpha) / kV and gamma = -kS * beta. Those three are found by least
+ * squares and turned back into kS, kV and kA. This needs evenly spaced samples, as a Notifier gives.
+ *
+ * <p>Fit a recording saved on the robot with {@code ./gradlew flywheelFit --args="thrower-characterization-....csv"}.
+ */
+public final class FlywheelCharacterization {
+  private FlywheelCharacterization() {
+  }
+
+  public static void main(String... args) throws IOException {
+    if (args.length < 1) {
+      System.out.println("Usage: FlywheelCharacterization <recording csv> [min velocity] [nominal volts] [response seconds]");
+      System.exit(2);
+    }
+    Recording recording = Recording.readCsv(Paths.get(args[0]));
+    double minVelocity = args.length > 1 ? Double.parseDouble(args[1]) : 50;
+    double nominalVoltage = args.length > 2 ? Double.parseDouble(args[2]) : 12;
+    double responseTime = args.length > 3 ? Double.parseDouble(args[3]) : 0.1;
+
+    Fit fit = fit(recording, minVelocity);
+    System.out.println(fit);
+    System.out.println(String.format("Recommended Spark MAX gains at %.1f V: kP = %.6g, kFF = %.6g", nominalVoltage,
+        fit.getRecommendedKP(nominalVoltage, responseTime), fit.getRecommendedFF(nominalVoltage)));
+  }
+
+  /**
+   * @param minVelocity Samples slower than this are left out: a wheel that is barely moving (or only looks like
+   * it is, from noise) is held by static friction that the model doesn't describe, and would skew kS.
+   * @throws IllegalArgumentException If there aren't enough moving samples to fit three terms.
+   */
+  public static Fit fit(Recording recording, double minVelocity) {
+    // Normal equations (X'X) b = X'y for next velocity against the columns velocity, volts, sign(velocity)
+    double[][] xtx = new double[3][3];
+    double[] xty = new double[3];
+    double[] row = new double[3];
+    double sumY = 0;
+    double sumYY = 0;
+    double sumDt = 0;
+    int count = 0;
+
+    int size = recording.size();
+    for (int i = 0; i + 1 < size; i++) {
+      // Don't step across the gap between phases
+      if (recording.m_phase[i] != recording.m_phase[i + 1]) continue;
+      double velocity = recording.m_velocity[i];
+      double dt = recording.m_time[i + 1] - recording.m_time[i];
+      if (Math.abs(velocity) < minVelocity || velocity == 0 || dt <= 0) continue;
+
+      row[0] = velocity;
+      row[1] = recording.m_voltage[i];
+      row[2] = Math.signum(velocity);
+      double y = recording.m_velocity[i + 1];
+      for (int r = 0; r < 3; r++) {
+        for (int c = 0; c < 3; c++) {
+          xtx[r][c] += row[r] * row[c];
+        }
+        xty[r] += row[r] * y;
+      }
+      sumY += y;
+      sumYY += y * y;
+      sumDt += dt;
+      count++;
+    }
+    if (count < 3) {
+      throw new IllegalArgumentException("Only " + count + " usable samples; the wheel has to move to be characterized");
+    }
+
+    double[] b = solve(xtx, xty.clone());
+    double alpha = b[0];
+    double beta = b[1];
+    double gamma = b[2];
+    if (!(alpha > 0 && alpha < 1) || beta == 0) {
+      throw new IllegalArgumentException("The samples don't look like a flywheel (alpha = " + alpha + ", beta = " + beta + ")");
+    }
+    double dt = sumDt / count;
+    double kV = (1 - alpha) / beta;
+    double kA = -kV * dt / Math.log(alpha);
+    double kS = -gamma / beta;
+
+    // Residual from the same sums: SSres = y'y - b'X'y at the least-squares solution
+    double ssResidual = sumYY - (b[0] * xty[0] + b[1] * xty[1] + b[2] * xty[2]);
+    double rmsError = Math.sqrt(Math.max(0, ssResidual) / count);
+    return new Fit(kS, kV, kA, rmsError, count);
+  }
+
+  // Gaussian elimination with partial pivoting. Overwrites its arguments.
+  private static double[] solve(double[][] a, double[] b) {
+    int n = b.length;
+    for (int col = 0; col < n; col++) {
+      int pivot = col;
+      for (int r = col + 1; r < n; r++) {
+        if (Math.abs(a[r][col]) > Math.abs(a[pivot][col])) pivot = r;
+      }
+      if (Math.abs(a[pivot][col]) < 1e-12) {
+        throw new IllegalArgumentException("The samples can't separate kS, kV and kA; run both the ramp and the step");
+      }
+      double[] rowSwap = a[col];
+      a[col] = a[pivot];
+      a[pivot] = rowSwap;
+      double bSwap = b[col];
+      b[col] = b[pivot];
+      b[pivot] = bSwap;
+
+      for (int r = col + 1; r < n; r++) {
+        double factor = a[r][col] / a[col][col];
+        for (int c = col; c < n; c++) {
+          a[r][c] -= factor * a[col][c];
+        }
+        b[r] -= factor * b[col];
+      }
+    }
+
+    double[] x = new double[n];
+    for (int r = n - 1; r >= 0; r--) {
+      double sum = b[r];
+      for (int c = r + 1; c < n; c++) {
+        sum -= a[r][c] * x[c];
+      }
+      x[r] = sum / a[r][r];
+    }
+    return x;
+  }
+
+  /**
+   * The fitted model, in volts and whatever velocity units the recording used.
+   */
+  public static final class Fit {
+    private final double m_kS;
+    private final double m_kV;
+    private final double m_kA;
+    private final double m_rmsError;
+    private final int m_samples;
+
+    Fit(double kS, double kV, double kA, double rmsError, int samples) {
+      m_kS = kS;
+      m_kV = kV;
+      m_kA = kA;
+      m_rmsError = rmsError;
+      m_samples = samples;
+    }
+
+    public double getKS() {
+      return m_kS;
+    }
+
+    public double getKV() {
+      return m_kV;
+    }
+
+    public double getKA() {
+      return m_kA;
+    }
+
+    /**
+     * @return The RMS error of the model's velocity one sample ahead. About the velocity noise for a good run;
+     * much more means the wheel isn't behaving like the model (rubbing, a loose belt, a ball in the way).
+     */
+    public double getRMSError() {
+      return m_rmsError;
+    }
+
+    public int getSamples() {
+      return m_samples;
+    }
+
+    /**
+     * @return The Spark MAX velocity kFF (output fraction per unit of velocity) matching kV, for a controller
+     * without an arbitrary feedforward.
+     */
+    public double getRecommendedFF(double nominalVoltage) {
+      return m_kV / nominalVoltage;
+    }
+
+    /**
+     * The velocity kP that, on top of the feedforward, makes the closed loop settle with the given time
+     * constant: the model's pole moves from -kV / kA to -(kV + kP) / kA.
+     * @return The Spark MAX kP in output fraction per unit of velocity error, or 0 if the wheel is already that fast.
+     */
+    public double getRecommendedKP(double nominalVoltage, double responseTime) {
+      return Math.max(0, m_kA / responseTime - m_kV) / nominalVoltage;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("kS = %.6g V, kV = %.6g V/unit, kA = %.6g V/(unit/s), RMS error %.3g over %d samples",
+          m_kS, m_kV, m_kA, m_rmsError, m_samples);
+    }
+  }
+
+  /**
+   * A preallocated buffer of samples. One thread adds samples while the others only read what was added before
+   * they read {@link #size()}.
+   */
+  public static final class Recording {
+    private final double[] m_time;
+    private final double[] m_voltage;
+    private final double[] m_velocity;
+    private final int[] m_phase;
+    private volatile int m_size = 0;
+
+    public Recording(int capacity) {
+      m_time = new double[capacity];
+      m_voltage = new double[capacity];
+      m_velocity = new double[capacity];
+      m_phase = new int[capacity];
+    }
+
+    /**
+     * @param phase Which part of the run the sample is from. Acceleration isn't taken across phases.
+     * @return false if the buffer is full and the sample was dropped.
+     */
+    public boolean add(double time, double voltage, double velocity, int phase) {
+      int i = m_size;
+      if (i == m_time.length) return false;
+      m_time[i] = time;
+      m_voltage[i] = voltage;
+      m_velocity[i] = velocity;
+      m_phase[i] = phase;
+      m_size = i + 1; // Publishes the sample
+      return true;
+    }
+
+    public int size() {
+      return m_size;
+    }
+
+    public void clear() {
+      m_size = 0;
+    }
+
+    /**
+     * @return A new recording holding just the samples added so far.
+     */
+    public Recording copy() {
+      int size = m_size;
+      Recording copy = new Recording(size);
+      System.arraycopy(m_time, 0, copy.m_time, 0, size);
+      System.arraycopy(m_voltage, 0, copy.m_voltage, 0, size);
+      System.arraycopy(m_velocity, 0, copy.m_velocity, 0, size);
+      System.arraycopy(m_phase, 0, copy.m_phase, 0, size);
+      copy.m_size = size;
+      return copy;
+    }
+
+    /**
+     * Write "time, phase, voltage, velocity" lines with a header.
+     */
+    public void writeCsv(Path file) throws IOException {
+      int size = m_size;
+      try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        writer.write("time,phase,voltage,velocity");
+        writer.newLine();
+        for (int i = 0; i < size; i++) {
+          writer.write(m_time[i] + "," + m_phase[i] + "," + m_voltage[i] + "," + m_velocity[i]);
+          writer.newLine();
+        }
+      }
+    }
+
+    /**
+     * Write the samples added so far to a file like {@link #writeCsv(Path)}, on a daemon thread: a copy is
+     * written, so the disk doesn't hold up the robot loop and the recording can be cleared for another run
+     * straight away. Success or failure is printed.
+     */
+    public void writeCsvAsync(File file) {
+      Recording copy = copy();
+      Thread writer = new Thread(() -> {
+        try {
+          copy.writeCsv(file.toPath());
+          System.out.println("FlywheelCharacterization wrote " + file);
+        } catch (IOException e) {
+          System.out.println("FlywheelCharacterization could not write " + file + ": " + e.getMessage());
+        }
+      }, "Characterization writer");
+      writer.setDaemon(true);
+      writer.start();
+    }
+
+    /**
+     * Read a file written by {@link #writeCsv(Path)}.
+     */
+    public static Recording readCsv(Path file) throws IOException {
+      List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      Recording recording = new Recording(Math.max(0, lines.size() - 1));
+      for (int i = 1; i < lines.size(); i++) {
+        String line = lines.get(i).trim();
+        if (line.isEmpty()) continue;
+        String[] fields = line.split(",");
+        if (fields.length != 4) {
+          throw new IOException(file + " line " + (i + 1) + ": expected \"time,phase,voltage,velocity\"");
+        }
+        try {
+          recording.add(Double.parseDouble(fields[0]), Double.parseDouble(fields[2]), Double.parseDouble(fields[3]),
+              Integer.parseInt(fields[1]));
+        } catch (NumberFormatException e) {
+          throw new IOException(file + " line " + (i + 1) + ": " + e.getMessage());
+        }
+      }
+      return recording;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package frc.robot.util;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size log-linear histogram of non-negative long values (e.g. microseconds), in the style of
+ * HdrHistogram. Values are grouped by power of two, and each power of two is split into linear sub-buckets,
+ * so every recorded value keeps about the same relative precision. With 5 significant bits that is about 6%.
+ *
+ * <p>Recording is a few shifts and an array increment; nothing is allocated after construction. Not
+ * thread-safe: record, read and reset it from one thread.
+ */
+public class Histogram {
+  private final int m_subBucketBits;
+  private final int m_subBucketCount;
+  private final int m_subBucketHalfCount;
+  private final long[] m_counts;
+
+  private long m_totalCount = 0;
+  private long m_min = Long.MAX_VALUE;
+  private long m_max = 0;
+  private double m_sum = 0;
+
+  /**
+   * @param significantBits The number of bits of each value kept exactly, 1 to 16. 5 gives about 6% precision.
+   * @param highestTrackableValue Values above this are counted in the highest bucket. The min, max and mean
+   * still use the real values.
+   */
+  public Histogram(int significantBits, long highestTrackableValue) {
+    if (significantBits < 1 || significantBits > 16) {
+      throw new IllegalArgumentException("significantBits must be between 1 and 16");
+    }
+    m_subBucketBits = significantBits;
+    m_subBucketCount = 1 << significantBits;
+    m_subBucketHalfCount = m_subBucketCount >> 1;
+    m_counts = new long[bucketIndex(Math.max(highestTrackableValue, m_subBucketCount)) + 1];
+  }
+
+  /**
+   * Count one value. Negative values are counted as 0.
+   */
+  public void record(long value) {
+    if (value < 0) value = 0;
+
+    m_counts[Math.min(bucketIndex(value), m_counts.length - 1)]++;
+    m_totalCount++;
+    m_sum += value;
+    if (value < m_min) m_min = value;
+    if (value > m_max) m_max = value;
+  }
+
+  /**
+   * Forget every recorded value.
+   */
+  public void reset() {
+    Arrays.fill(m_counts, 0);
+    m_totalCount = 0;
+    m_min = Long.MAX_VALUE;
+    m_max = 0;
+    m_sum = 0;
+  }
+
+  public long getCount() {
+    return m_totalCount;
+  }
+
+  /**
+   * @return The smallest recorded value, or 0 if nothing has been recorded.
+   */
+  public long getMin() {
+    return m_totalCount == 0 ? 0 : m_min;
+  }
+
+  /**
+   * @return The largest recorded value, or 0 if nothing has been recorded.
+   */
+  public long getMax() {
+    return m_max;
+  }
+
+  /**
+   * @return The mean of the recorded values, or 0 if nothing has been recorded.
+   */
+  public double getMean() {
+    return m_totalCount == 0 ? 0 : m_sum / m_totalCount;
+  }
+
+  /**
+   * Get the value that the given percentage of recorded values are at or below. The answer is the top of the
+   * bucket the percentile falls in, capped at the largest recorded value.
+   * @param percentile 0 to 100.
+   * @return The value, or 0 if nothing has been recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (m_totalCount == 0) return 0;
+
+    double fraction = Math.max(0, Math.min(100, percentile)) / 100;
+    long target = Math.max(1, (long) Math.ceil(fraction * m_totalCount));
+    long seen = 0;
+    for (int i = 0; i < m_counts.length; i++) {
+      seen += m_counts[i];
+      if (seen >= target) {
+        return Math.min(highestValueInBucket(i), m_max);
+      }
+    }
+    return m_max;
+  }
+
+  /*
+   * Values below m_subBucketCount get a bucket each. Above that, each power of
+   * two gets m_subBucketHalfCount buckets, indexed by the value's top
+   * significant bits.
+   */
+  private int bucketIndex(long value) {
+    if (value < m_subBucketCount) return (int) value;
+
+    int shift = (63 - Long.numberOfLeadingZeros(value)) - (m_subBucketBits - 1);
+    return shift * m_subBucketHalfCount + (int) (value >>> shift);
+  }
+
+  private long highestValueInBucket(int index) {
+    if (index < m_subBucketCount) return index;
+
+    int shift = index / m_subBucketHalfCount - 1;
+    long subBucket = index % m_subBucketHalfCount + m_subBucketHalfCount;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
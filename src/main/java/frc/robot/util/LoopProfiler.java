@@ -0,0 +1,246 @@
+package frc.robot.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+import frc.robot.Constants.ProfilerConstants;
+
+/**
+ * Times each piece of a {@link CommandScheduler} cycle, so a loop overrun can be traced to the command or
+ * subsystem that caused it. Robot.robotPeriodic() wraps the scheduler in {@link #startCycle()} and
+ * {@link #endCycle()}, and each lap between them is charged to a section:
+ * <ul>
+ * <li>a subsystem, for the time up to its {@link #lap(Subsystem)} call at the end of its periodic(). Subsystems
+ * that don't call it have their periodic() counted in the next lap.</li>
+ * <li>"Buttons", for polling every button binding, including initializing any commands they schedule</li>
+ * <li>a command, for its execute() plus the previous command's isFinished() and end()</li>
+ * <li>"Scheduler", for the rest of the cycle</li>
+ * <li>"Cycle", for the whole cycle</li>
+ * </ul>
+ *
+ * <p>Laps go into {@link Histogram}s in microseconds. Every {@link ProfilerConstants#REPORT_PERIOD} seconds
+ * their p50, p99 and max are published to NetworkTables under "LoopProfiler/&lt;section&gt;" and written to
+ * {@link ProfilerConstants#LOG_FILE} in the operating directory, and the histograms start over. A cycle over
+ * {@link ProfilerConstants#BUDGET} raises "LoopProfiler/Overrun" until the next report and logs its slowest
+ * section. The file is written by a background thread, so the loop never waits on the disk.
+ *
+ * <p>Only used from the main robot thread. Recording a lap doesn't allocate once every section has been seen.
+ */
+public final class LoopProfiler {
+  private static final String BUTTONS = "Buttons";
+  private static final String SCHEDULER = "Scheduler";
+  private static final String CYCLE = "Cycle";
+
+  // Sections by whatever they were charged for (a command or subsystem instance, or a name), and by name, so
+  // several instances of one command class share a section
+  private static final Map<Object, Section> SECTIONS_BY_KEY = new IdentityHashMap<>();
+  private static final Map<String, Section> SECTIONS_BY_NAME = new HashMap<>();
+  private static final List<Section> SECTIONS = new ArrayList<>();
+
+  private static boolean s_installed = false;
+  private static long s_cycleStart = 0;
+  private static long s_lastMark = 0;
+  private static boolean s_inCycle = false;
+
+  // The slowest lap in the current cycle
+  private static Section s_slowestSection = null;
+  private static long s_slowestNanos = 0;
+
+  private static long s_lastReport = 0;
+  private static long s_overruns = 0;
+  private static long s_overrunsAtLastReport = 0;
+  private static NetworkTableEntry s_overrunEntry = null;
+  private static NetworkTableEntry s_overrunCountEntry = null;
+
+  private static final BlockingQueue<String> LOG_QUEUE = new ArrayBlockingQueue<>(64);
+
+  private LoopProfiler() {
+  }
+
+  /**
+   * Hook into the scheduler. Call once, after RobotContainer has made its button bindings, so that the
+   * "Buttons" lap comes after all of them.
+   */
+  public static void install() {
+    if (!ProfilerConstants.ENABLED || s_installed) return;
+    s_installed = true;
+
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    scheduler.addButton(() -> lap(BUTTONS));
+    scheduler.onCommandExecute(command -> lap((Object) command));
+
+    NetworkTable table = NetworkTableInstance.getDefault().getTable("LoopProfiler");
+    s_overrunEntry = table.getEntry("Overrun");
+    s_overrunCountEntry = table.getEntry("Overruns");
+    s_lastReport = System.nanoTime();
+
+    Thread logger = new Thread(LoopProfiler::writeLog, "LoopProfiler log");
+    logger.setDaemon(true);
+    logger.start();
+  }
+
+  /**
+   * Call right before {@code CommandScheduler.getInstance().run()}.
+   */
+  public static void startCycle() {
+    if (!s_installed) return;
+    s_cycleStart = System.nanoTime();
+    s_lastMark = s_cycleStart;
+    s_slowestSection = null;
+    s_slowestNanos = 0;
+    s_inCycle = true;
+  }
+
+  /**
+   * Charge the time since the last lap to a subsystem. Call at the end of its periodic().
+   */
+  public static void lap(Subsystem subsystem) {
+    lap((Object) subsystem);
+  }
+
+  private static void lap(Object key) {
+    if (!s_inCycle) return;
+    long now = System.nanoTime();
+    long nanos = now - s_lastMark;
+    s_lastMark = now;
+
+    Section section = section(key);
+    section.m_histogram.record(nanos / 1000);
+    if (nanos > s_slowestNanos) {
+      s_slowestNanos = nanos;
+      s_slowestSection = section;
+    }
+  }
+
+  /**
+   * Call right after {@code CommandScheduler.getInstance().run()}.
+   */
+  public static void endCycle() {
+    if (!s_inCycle) return;
+    lap(SCHEDULER);
+    s_inCycle = false;
+
+    long cycleNanos = s_lastMark - s_cycleStart;
+    section(CYCLE).m_histogram.record(cycleNanos / 1000);
+
+    if (cycleNanos > ProfilerConstants.BUDGET * 1e9) {
+      // Log only the first overrun of each report period, so a slow stretch can't flood the log
+      if (s_overruns == s_overrunsAtLastReport) {
+        log(String.format("%.3f overrun %.2f ms, slowest %s %.2f ms", RobotClock.now(), cycleNanos * 1e-6,
+            s_slowestSection.m_name, s_slowestNanos * 1e-6));
+      }
+      s_overruns++;
+    }
+
+    if (s_lastMark - s_lastReport >= ProfilerConstants.REPORT_PERIOD * 1e9) {
+      report();
+      s_lastReport = s_lastMark;
+    }
+  }
+
+  private static Section section(Object key) {
+    Section section = SECTIONS_BY_KEY.get(key);
+    if (section == null) {
+      String name = nameOf(key);
+      section = SECTIONS_BY_NAME.get(name);
+      if (section == null) {
+        section = new Section(name);
+        SECTIONS_BY_NAME.put(name, section);
+        SECTIONS.add(section);
+      }
+      SECTIONS_BY_KEY.put(key, section);
+    }
+    return section;
+  }
+
+  private static String nameOf(Object key) {
+    if (key instanceof Command) return "Command " + ((Command) key).getName();
+    if (key instanceof SubsystemBase) return "Subsystem " + ((SubsystemBase) key).getName();
+    if (key instanceof Subsystem) return "Subsystem " + key.getClass().getSimpleName();
+    return key.toString();
+  }
+
+  private static void report() {
+    StringBuilder text = new StringBuilder();
+    text.append(String.format("%.3f report, %d overruns%n", RobotClock.now(), s_overruns - s_overrunsAtLastReport));
+    for (Section section : SECTIONS) {
+      Histogram histogram = section.m_histogram;
+      if (histogram.getCount() == 0) continue;
+
+      double p50 = histogram.getValueAtPercentile(50) * 1e-3;
+      double p99 = histogram.getValueAtPercentile(99) * 1e-3;
+      double max = histogram.getMax() * 1e-3;
+      section.publish(p50, p99, max);
+      text.append(String.format("  %-40s n=%-5d p50=%7.3f p99=%7.3f max=%7.3f ms%n", section.m_name,
+          histogram.getCount(), p50, p99, max));
+      histogram.reset();
+    }
+    s_overrunEntry.setBoolean(s_overruns > s_overrunsAtLastReport);
+    s_overrunCountEntry.setDouble(s_overruns);
+    s_overrunsAtLastReport = s_overruns;
+    log(text.toString());
+  }
+
+  private static void log(String text) {
+    // If the disk falls this far behind, dropping reports is better than stalling the loop
+    LOG_QUEUE.offer(text);
+  }
+
+  private static void writeLog() {
+    File file = new File(Filesystem.getOperatingDirectory(), ProfilerConstants.LOG_FILE);
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+      writer.write(String.format("LoopProfiler started, budget %.1f ms%n", ProfilerConstants.BUDGET * 1e3));
+      writer.flush();
+      while (true) {
+        String text = LOG_QUEUE.take();
+        writer.write(text);
+        if (!text.endsWith("\n")) writer.newLine();
+        writer.flush();
+      }
+    } catch (IOException e) {
+      System.out.println("LoopProfiler could not write " + file + ": " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static final class Section {
+    private final String m_name;
+    private final Histogram m_histogram = new Histogram(5, 10_000_000); // microseconds, up to 10 s
+    private NetworkTableEntry[] m_entries = null;
+
+    private Section(String name) {
+      m_name = name;
+    }
+
+    private void publish(double p50, double p99, double max) {
+      if (m_entries == null) {
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("LoopProfiler").getSubTable(m_name);
+        m_entries = new NetworkTableEntry[] {
+          table.getEntry("p50 ms"), table.getEntry("p99 ms"), table.getEntry("Max ms")
+        };
+      }
+      m_entries[0].setDouble(p50);
+      m_entries[1].setDouble(p99);
+      m_entries[2].setDouble(max);
+    }
+  }
+}
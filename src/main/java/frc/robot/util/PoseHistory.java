@@ -0,0 +1,162 @@
+package frc.robot.util;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * A fixed-size ring buffer of timestamped robot poses (x, y, heading). Used to look up where the robot was when
+ * a delayed measurement, such as a vision frame, was taken. Samples must be added in time order. Nothing is
+ * allocated after construction.
+ *
+ * <p>One thread (the odometry thread) adds samples, and any thread can read them without locking. Like
+ * {@link SocketVision}, it's a seqlock: readers retry in the rare case that a sample was added while they were
+ * reading.
+ */
+public class PoseHistory {
+  private final double[] m_time;
+  private final double[] m_x;
+  private final double[] m_y;
+  private final double[] m_heading;
+
+  // Odd while add() is writing, even when the buffer is consistent
+  private volatile long m_version = 0;
+  private int m_count = 0; // Total samples ever added; the newest is at (m_count - 1) % capacity
+  private volatile boolean m_clearRequested = false;
+
+  /**
+   * @param capacity The number of samples to keep. At 50 Hz, 50 samples is one second of history.
+   */
+  public PoseHistory(int capacity) {
+    m_time = new double[capacity];
+    m_x = new double[capacity];
+    m_y = new double[capacity];
+    m_heading = new double[capacity];
+  }
+
+  /**
+   * Add a sample. Timestamps must not go backwards. Only call this from one thread.
+   * @param time The sample time in {@link RobotClock} seconds.
+   * @param x The x position in inches.
+   * @param y The y position in inches.
+   * @param heading The heading in degrees, counterclockwise positive.
+   */
+  public void add(double time, double x, double y, double heading) {
+    long version = m_version;
+    m_version = version + 1;
+    VarHandle.storeStoreFence();
+
+    if (m_clearRequested) {
+      m_clearRequested = false;
+      m_count = 0;
+    }
+
+    int i = m_count % m_time.length;
+    m_time[i] = time;
+    m_x[i] = x;
+    m_y[i] = y;
+    m_heading[i] = heading;
+    m_count++;
+
+    m_version = version + 2;
+  }
+
+  /**
+   * Forget every sample, e.g. after the robot's position is reset. Safe to call from any thread; lookups fail
+   * until the next sample is added.
+   */
+  public void clear() {
+    m_clearRequested = true;
+  }
+
+  /**
+   * Interpolate the pose at a past time. Times older than the oldest sample get the oldest sample; times newer
+   * than the newest sample get the newest.
+   * @param time The time to look up in {@link RobotClock} seconds.
+   * @param out double[3] that receives {x, y, heading}.
+   * @return false if the history is empty (out may have been written, but isn't meaningful).
+   */
+  public boolean sample(double time, double[] out) {
+    while (true) {
+      long version = m_version;
+      if ((version & 1) != 0) {
+        Thread.onSpinWait(); // add() is mid-write
+        continue;
+      }
+
+      boolean found = readSample(time, out);
+
+      VarHandle.loadLoadFence();
+      if (m_version == version) {
+        return found;
+      }
+    }
+  }
+
+  private boolean readSample(double time, double[] out) {
+    if (m_count == 0 || m_clearRequested) return false;
+
+    int capacity = m_time.length;
+    int newest = (m_count - 1) % capacity;
+    int size = Math.min(m_count, capacity);
+
+    // Walk back from the newest sample; the buffer is short, and lookups are usually for recent times
+    int after = newest;
+    for (int n = 1; n < size; n++) {
+      int before = (newest - n + capacity) % capacity;
+      if (m_time[before] <= time) {
+        double span = m_time[after] - m_time[before];
+        double t = span > 0 ? (time - m_time[before]) / span : 1;
+        t = Math.max(0, Math.min(1, t));
+        out[0] = m_x[before] + (m_x[after] - m_x[before]) * t;
+        out[1] = m_y[before] + (m_y[after] - m_y[before]) * t;
+        out[2] = m_heading[before] + wrapDegrees(m_heading[after] - m_heading[before]) * t;
+        return true;
+      }
+      after = before;
+    }
+
+    // Older than anything we have
+    out[0] = m_x[after];
+    out[1] = m_y[after];
+    out[2] = m_heading[after];
+    return true;
+  }
+
+  /**
+   * Get the newest sample.
+   * @param out double[3] that receives {x, y, heading}.
+   * @return false if the history is empty (out may have been written, but isn't meaningful).
+   */
+  public boolean latest(double[] out) {
+    while (true) {
+      long version = m_version;
+      if ((version & 1) != 0) {
+        Thread.onSpinWait(); // add() is mid-write
+        continue;
+      }
+
+      boolean found = false;
+      if (m_count != 0 && !m_clearRequested) {
+        int newest = (m_count - 1) % m_time.length;
+        out[0] = m_x[newest];
+        out[1] = m_y[newest];
+        out[2] = m_heading[newest];
+        found = true;
+      }
+
+      VarHandle.loadLoadFence();
+      if (m_version == version) {
+        return found;
+      }
+    }
+  }
+
+  /**
+   * Wrap an angle difference into [-180, 180).
+   */
+  public static double wrapDegrees(double degrees) {
+    degrees %= 360;
+    if (degrees >= 180) degrees -= 360;
+    if (degrees < -180) degrees += 360;
+    return degrees;
+  }
+}
@@ -0,0 +1,19 @@
+package frc.robot.util;
+
+/**
+ * The monotonic clock used to timestamp data that is shared between threads (vision frames, pose history).
+ * Backed by {@link System#nanoTime()} so it is cheap, allocation-free and works off the roboRIO too.
+ */
+public final class RobotClock {
+  private static final long START = System.nanoTime();
+
+  private RobotClock() {
+  }
+
+  /**
+   * @return Seconds since the robot code started.
+   */
+  public static double now() {
+    return (System.nanoTime() - START) * 1e-9;
+  }
+}
@@ -0,0 +1,49 @@
+package frc.robot.util;
+
+/**
+ * An immutable snapshot of where the robot is on the field. Positions are in inches and the heading is in degrees,
+ * counterclockwise positive, the same frame as {@link PoseHistory}.
+ */
+public final class RobotPose {
+  /** The pose before odometry has run. */
+  public static final RobotPose ORIGIN = new RobotPose(Double.NEGATIVE_INFINITY, 0, 0, 0);
+
+  private final double m_timestamp;
+  private final double m_x;
+  private final double m_y;
+  private final double m_heading;
+
+  public RobotPose(double timestamp, double x, double y, double heading) {
+    m_timestamp = timestamp;
+    m_x = x;
+    m_y = y;
+    m_heading = heading;
+  }
+
+  /**
+   * @return When the sensors behind this pose were read, in {@link RobotClock} seconds.
+   */
+  public double getTimestamp() {
+    return m_timestamp;
+  }
+
+  public double getX() {
+    return m_x;
+  }
+
+  public double getY() {
+    return m_y;
+  }
+
+  /**
+   * @return The heading in degrees, counterclockwise positive, in [0, 360).
+   */
+  public double getHeading() {
+    return m_heading;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("RobotPose(%.3f, %.1f, %.1f, %.1f)", m_timestamp, m_x, m_y, m_heading);
+  }
+}
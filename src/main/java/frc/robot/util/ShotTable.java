@@ -0,0 +1,157 @@
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps distance to the target onto thrower wheel speed, interpolating between measured shots with a monotone
+ * cubic (Fritsch-Carlson) curve. The curve passes through every point, is smooth between them, and never
+ * overshoots: between two shots it stays between their speeds, so a table that only rises gives speeds that
+ * only rise. Outside the table the nearest end's speed is used.
+ *
+ * <p>Points are kept in sorted primitive arrays with the tangents worked out up front, so a lookup is a binary
+ * search and a few multiplies with no allocation. A table never changes; reloading makes a new one.
+ */
+public final class ShotTable {
+  private final double[] m_distances;
+  private final double[] m_rpms;
+  private final double[] m_tangents;
+
+  /**
+   * @param distances Distances in inches, in increasing order with no repeats.
+   * @param rpms The wheel speed for each distance.
+   */
+  public ShotTable(double[] distances, double[] rpms) {
+    if (distances.length == 0 || distances.length != rpms.length) {
+      throw new IllegalArgumentException("A shot table needs the same number of distances and speeds, at least one");
+    }
+    for (int i = 0; i < distances.length; i++) {
+      if (!Double.isFinite(distances[i]) || !Double.isFinite(rpms[i])) {
+        throw new IllegalArgumentException("Shot table values must be finite numbers");
+      }
+      if (i > 0 && distances[i] <= distances[i - 1]) {
+        throw new IllegalArgumentException("Shot table distances must increase: " + distances[i - 1] + " then " + distances[i]);
+      }
+    }
+    m_distances = distances.clone();
+    m_rpms = rpms.clone();
+    m_tangents = monotoneTangents(m_distances, m_rpms);
+  }
+
+  // Fritsch-Carlson: start from the average of the neighbouring slopes, flatten at local extremes, and scale
+  // down any pair of tangents steep enough to overshoot
+  private static double[] monotoneTangents(double[] x, double[] y) {
+    int n = x.length;
+    double[] tangents = new double[n];
+    if (n < 2) return tangents;
+
+    double[] slopes = new double[n - 1];
+    for (int i = 0; i < n - 1; i++) {
+      slopes[i] = (y[i + 1] - y[i]) / (x[i + 1] - x[i]);
+    }
+    tangents[0] = slopes[0];
+    tangents[n - 1] = slopes[n - 2];
+    for (int i = 1; i < n - 1; i++) {
+      tangents[i] = slopes[i - 1] * slopes[i] <= 0 ? 0 : (slopes[i - 1] + slopes[i]) / 2;
+    }
+    for (int i = 0; i < n - 1; i++) {
+      if (slopes[i] == 0) {
+        tangents[i] = 0;
+        tangents[i + 1] = 0;
+        continue;
+      }
+      double a = tangents[i] / slopes[i];
+      double b = tangents[i + 1] / slopes[i];
+      double length = a * a + b * b;
+      if (length > 9) {
+        double scale = 3 / Math.sqrt(length);
+        tangents[i] = scale * a * slopes[i];
+        tangents[i + 1] = scale * b * slopes[i];
+      }
+    }
+    return tangents;
+  }
+
+  /**
+   * @param distance Distance to the target in inches.
+   * @return The wheel speed for that distance.
+   */
+  public double get(double distance) {
+    int last = m_distances.length - 1;
+    if (!(distance > m_distances[0])) return m_rpms[0]; // Also catches NaN
+    if (distance >= m_distances[last]) return m_rpms[last];
+
+    // The point at or before the distance
+    int i = Arrays.binarySearch(m_distances, distance);
+    if (i >= 0) return m_rpms[i];
+    i = -i - 2;
+
+    double h = m_distances[i + 1] - m_distances[i];
+    double t = (distance - m_distances[i]) / h;
+    double t2 = t * t;
+    double t3 = t2 * t;
+    return (2 * t3 - 3 * t2 + 1) * m_rpms[i]
+        + (t3 - 2 * t2 + t) * h * m_tangents[i]
+        + (-2 * t3 + 3 * t2) * m_rpms[i + 1]
+        + (t3 - t2) * h * m_tangents[i + 1];
+  }
+
+  public int size() {
+    return m_distances.length;
+  }
+
+  /**
+   * @return The fastest speed the table gives at any distance. The curve never overshoots, so this is the
+   * fastest row.
+   */
+  public double getMaxRPM() {
+    double max = m_rpms[0];
+    for (double rpm : m_rpms) {
+      max = Math.max(max, rpm);
+    }
+    return max;
+  }
+
+  /**
+   * Read a table from a text file with one "distance, rpm" pair per line, in any order. Blank lines and
+   * lines starting with # are skipped.
+   * @throws IOException If the file can't be read or isn't a valid table; the message says which line.
+   */
+  public static ShotTable load(Path file) throws IOException {
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    double[][] points = new double[lines.size()][];
+    int count = 0;
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i).trim();
+      if (line.isEmpty() || line.startsWith("#")) continue;
+
+      String[] fields = line.split("\\s*,\\s*");
+      if (fields.length != 2) {
+        throw new IOException(file + " line " + (i + 1) + ": expected \"distance, rpm\"");
+      }
+      try {
+        points[count++] = new double[] { Double.parseDouble(fields[0]), Double.parseDouble(fields[1]) };
+      } catch (NumberFormatException e) {
+        throw new IOException(file + " line " + (i + 1) + ": " + e.getMessage());
+      }
+    }
+
+    double[][] sorted = Arrays.copyOf(points, count);
+    Arrays.sort(sorted, (p, q) -> Double.compare(p[0], q[0]));
+    double[] distances = new double[count];
+    double[] rpms = new double[count];
+    for (int i = 0; i < count; i++) {
+      distances[i] = sorted[i][0];
+      rpms[i] = sorted[i][1];
+    }
+    try {
+      return new ShotTable(distances, rpms);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(file + ": " + e.getMessage());
+    }
+  }
+}
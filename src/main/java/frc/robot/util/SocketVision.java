@@ -1,14 +1,23 @@
 package frc.robot.util;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.lang.invoke.VarHandle;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 
 import frc.robot.Constants;
+import frc.robot.Constants.VisionConstants;
 
-public class SocketVision extends Thread {
+/**
+ * One vision stream (one UDP port) from the co-processor. SocketVision objects don't have a thread of their own;
+ * they are registered with a {@link SocketVisionReceiver}, which reads every stream from a single selector thread.
+ */
+public class SocketVision {
   public static final String NADA = "nada";
   public static final String CENTER = "center";
 	public static final String RIGHT = "right";
@@ -17,16 +26,33 @@ public class SocketVision extends Thread {
 	private String ip_;
 	private int port_;
 	private boolean is_connected_ = false;
-	private boolean keep_running = false;
-	private byte[] data_ = new byte[1024];
-	private DatagramSocket socket_;
-	private String direction_ = new String();
-	// private double degrees_x = 0;
-	private volatile double degrees_x = 0;
-	private double degrees_y = 0;
+	private final VisionPacketDecoder decoder_ = new VisionPacketDecoder(VisionConstants.ACCEPT_TEXT_FRAMES);
+	private DatagramChannel channel_;
+	private int received_ = 0;
+	private final VisionStreamStats stats_;
+
+	// Recent (receive time - co-processor capture time) samples. Their minimum is the clock offset plus the
+	// shortest processing + transport delay, which is how co-processor timestamps are mapped to RobotClock.
+	private final double[] clock_offsets_ = new double[VisionConstants.CLOCK_SYNC_WINDOW];
+	private int clock_offset_count_ = 0;
+
+	/*
+	 * The latest frame is published with a seqlock: version_ is odd while the
+	 * receiver thread is writing the fields below and even once they are
+	 * consistent. Readers never block the receiver and never see half a frame.
+	 */
+	private volatile long version_ = 0;
+	private int sequence_ = -1;
+	private double receive_timestamp_ = Double.NEGATIVE_INFINITY;
+	private double capture_timestamp_ = Double.NEGATIVE_INFINITY;
+	private long capture_timestamp_micros_ = 0;
+	private String direction_ = NADA;
+	private double degrees_x = 0;
 	private double degrees_width = 0;
-
 	private double distance = 0;
+
+	// The last snapshot handed out, reused until a new frame is published
+	private volatile VisionTarget snapshot_ = VisionTarget.NONE;
 	
 	/**
 	 * Each SocketVision object is created with an ip and a port. There is no default constructor. The ip address
@@ -37,6 +63,7 @@ public class SocketVision extends Thread {
 	public SocketVision(String ip, int port) {
 		ip_ = ip;
 		port_ = port;
+		stats_ = new VisionStreamStats(port);
 	}
 
 	/**
@@ -46,27 +73,32 @@ public class SocketVision extends Thread {
 	 * @param port
 	 */
 	public SocketVision(){
+		stats_ = new VisionStreamStats(port_);
 	}
 	
 	/**
-	 * This function tries to create a new DatagramSocket object with the port and ip set in the constructor.
+	 * This function tries to open a non-blocking DatagramChannel on the port set in the constructor and register
+	 * it with the selector. Only call this from the selector's thread.
 	 * 
-	 * @return true if IP and port are valid
 	 * @return <code>true</code> <strong>IF</strong> valid IP <strong>AND</strong> port
 	 * <p></p> <code>false</code> <strong>IF</strong> invalid IP <strong>OR</strong> port
 	 */
-	public boolean connect() {
+	public boolean connect(Selector selector) {
 		try {
-			System.out.println("SocketVision trying to connect...");
-			socket_ = new DatagramSocket(port_);
-			socket_.setSoTimeout(1000);
+			System.out.println("SocketVision trying to connect on port " + port_ + "...");
 			InetAddress.getByName(ip_);
+			channel_ = DatagramChannel.open();
+			channel_.configureBlocking(false);
+			channel_.bind(new InetSocketAddress(port_));
+			channel_.register(selector, SelectionKey.OP_READ, this);
 			is_connected_ = true;
 		} catch (UnknownHostException ex) {
 			System.out.println("SocketVision connect Exception: " + ex.getMessage());
+			stoprunning();
 			return false;
 		} catch (IOException ex) {
 			// System.out.println("SocketVision connect IOExcepton: " + ex.getMessage());
+			stoprunning();
 			return false;
 		}
 		return true;
@@ -76,213 +108,210 @@ public class SocketVision extends Thread {
 		return is_connected_;
 	}
 
+	public int getPort() {
+		return port_;
+	}
+
 	/**
-	 * Read DatagramPackets from the UDP Socket and parses the information into usable variables. 
+	 * @return This stream's health counters. Only use them from the receiver thread.
+	 */
+	public VisionStreamStats getStats() {
+		return stats_;
+	}
+
+	/**
+	 * Drain every datagram waiting on the channel and parse them into usable variables. The newest valid packet
+	 * wins. Called by the {@link SocketVisionReceiver} thread when the channel is readable.
+	 * @param buffer A scratch buffer owned by the receiver thread; reused for every packet so nothing is allocated.
 	 * @return <code>true</code> ::<strong> Datagram Packets </strong>  in valid format
 	 * <p></p> <code>false</code> ::<strong> Datagram Packets</strong> failed <code>try...catch</code> block or are <code>null</code>
 	 */
-	public boolean recv() {
-		DatagramPacket packet = new DatagramPacket(data_, data_.length);
+	public boolean recv(ByteBuffer buffer) {
+		boolean gotData = false;
 		try {
-			packet.setLength(data_.length);
-			socket_.receive(packet);
-			if (packet.getData().length > 0) {
+			while (true) {
+				buffer.clear();
+				if (channel_.receive(buffer) == null) break; // Nothing left to read
+				buffer.flip();
+				if (!buffer.hasRemaining()) continue;
 
 				/*
 				 * Once the packet has been received and proven to have some
-				 * data in it, the parsing begins. First, get the 'stuff' from
-				 * the packet. Then start standardization and splitting.
-				 * Finally, use the indices of appropriate data (as shown in the
-				 * example) to share the new info with the rest of the robot.
-				 * Since these are both threaded, synchronization is an issue,
-				 * but is handled nicely later on.
+				 * data in it, decode it in place. Binary frames are preferred;
+				 * the old "Identifier: x, distance, width, distanceW, L/C/R"
+				 * text is still accepted if VisionConstants.ACCEPT_TEXT_FRAMES.
+				 * Since the receiver is threaded, synchronization is an issue,
+				 * but is handled nicely by publish() and getTarget().
 				 */
-
-				String stuffInThePacket = new String(packet.getData(), 0, packet.getLength());
-
-				// String contains:: Identifier: x position, distance, L/C/R
-				// e.g. "Peg found at: -100.14, 20.33, L "
-
-				// standardize everything. Just in case.
-				stuffInThePacket = stuffInThePacket.toLowerCase();
-
 				if (Constants.SHOW_DEBUG_VISION) {
-					System.out.println("Stuff in the packet is: " + stuffInThePacket);
+					byte[] debug = new byte[buffer.remaining()];
+					buffer.duplicate().get(debug);
+					System.out.println("Stuff in the packet is: " + new String(debug));
 				}
 
-				// make sure that this is a string you want by testing for an
-				// unique character
-				if (!stuffInThePacket.contains(":"))
-					return false;
-
-				// take out the identifying string to make the rest of
-				// processing easier
-
-				String[] noIdentifier = stuffInThePacket.split(":");
-
-				// now is {"peg found at"," -100.14,20.33,15.75,172.56,l "}
-
-				// now is: {"-100.14","20.33","15.75","172.56","l"}
-				String[] packetParsing = noIdentifier[1].split(",");
-
-				int count = 0; // keep track of the index in the for loop below
-				for (String x : packetParsing) {
-					// take the spaces out, just in case there needs to be other
-					// recognition later
-					packetParsing[count] = x.trim();
-					++count;
-				}
-				// now is: {"-100.14","20.33","15.75","172.56","l"} Look at the
-				// last and first indices (pl. index) for the difference
-
-				// following example, is-100.14
-				double ldegrees_x = Double.parseDouble(packetParsing[0]);
-
-				// is 20.33
-				double ldistance = Double.parseDouble(packetParsing[1]);
-
-				// is 15.75
-				//double ldegrees_width = Double.parseDouble(packetParsing[2]);
-
-				// is 172.56
-				//double ldistanceW = Double.parseDouble(packetParsing[3]);
-
-				/*
-				 * ADDED 2/21/17 due to small change in UpBoard code. Example is
-				 * still valid otherwise.
-				 */
-
-				String ldirection_;
-				if (packetParsing[4].equalsIgnoreCase("l")) {
-					ldirection_ = LEFT;
-
-				} else if (packetParsing[4].equalsIgnoreCase("r")) {
-					ldirection_ = RIGHT;
-
-				} else if (packetParsing[4].equalsIgnoreCase("c")) {
-					ldirection_ = CENTER;
-
-				} else {
+				if (!decoder_.decode(buffer)) {
+					stats_.parseFailed();
 					if (Constants.SHOW_DEBUG_VISION) {
 						System.err.println("My mayonnaise went bad!! :(");
 					}
-					ldirection_ = NADA;
+					continue;
 				}
 
-				synchronized (this) 
-				{
-					degrees_x = ldegrees_x;
-//					degrees_y = ldegrees_y;
-//					degrees_width = ldegrees_width;
-//					distanceWidth = ldistanceW;
-					distance = ldistance;
-					direction_ = ldirection_;
-				}
+				double now = RobotClock.now();
+				publish(now);
+				stats_.packetReceived(now, decoder_.wasBinary(), decoder_.getSequence());
+				gotData = true;
 
 				if (Constants.SHOW_DEBUG_VISION) {
-					System.out.println("Done got that data! " + stuffInThePacket);
-					// SmartDashboard.putString("Port " + port_ + " output: ", stuffInThePacket);
-
+					System.out.println("Done got that data! " + (decoder_.wasBinary() ? "binary frame " + decoder_.getSequence() : "text"));
 				}
-				return true;
 			}
 		} catch (Exception e) {
+			stats_.receiveFailed();
 			if (Constants.SHOW_DEBUG_VISION) {
 				System.err.println(e);
 			}
 			return false;
 		}
-		return false;
+		return gotData;
 	}
-
-	@Override
-	public void run() {
-		// this is the threaded method that constantly checks
-		// and reads the socket.
-		keep_running = true;
-		while (keep_running) {
-			if (!is_connected()) {
-				connect();
+	
+	/**
+	 * This function closes the UDP channel properly, so it can be reconnected later. Closing the channel
+	 * also removes it from the selector.
+	 */
+	public void stoprunning() {
+		is_connected_ = false;
+		if (channel_ != null) {
+			try {
+				channel_.close();
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
-			recv();
+			channel_ = null;
 		}
 	}
-	
+
 	/**
-	 * This function stops the UDP socket properly, so it can be restarted later.
+	 * Copy the decoder's latest frame into the published fields. Only called from the receiver thread.
+	 * @param now The receive time of the frame.
 	 */
-	public void stoprunning() {
-		keep_running = false;
+	private void publish(double now) {
+		long version = version_;
+		version_ = version + 1; // odd: write in progress
+		VarHandle.storeStoreFence();
+
+		received_++;
+		sequence_ = decoder_.wasBinary() ? decoder_.getSequence() : received_;
+		receive_timestamp_ = now;
+		capture_timestamp_micros_ = decoder_.wasBinary() ? decoder_.getTimestampMicros() : 0;
+		capture_timestamp_ = decoder_.wasBinary() ? estimateCaptureTime(now, decoder_.getTimestampMicros())
+				: now - VisionConstants.DEFAULT_FRAME_LATENCY;
+		direction_ = decoder_.getDirection();
+		degrees_x = decoder_.getDegreesX();
+		degrees_width = decoder_.getWidth();
+		distance = decoder_.getDistance();
+
+		version_ = version + 2; // even: consistent again
+	}
+
+	/**
+	 * Map a co-processor capture timestamp onto RobotClock. Only called from the receiver thread.
+	 * @param now The receive time of the frame.
+	 * @param captureMicros The capture time from the frame, on the co-processor's clock.
+	 * @return The estimated capture time in RobotClock seconds, never later than now.
+	 */
+	private double estimateCaptureTime(double now, long captureMicros) {
+		double capture = captureMicros * 1e-6;
+		clock_offsets_[clock_offset_count_++ % clock_offsets_.length] = now - capture;
+
+		double offset = Double.POSITIVE_INFINITY;
+		int samples = Math.min(clock_offset_count_, clock_offsets_.length);
+		for (int i = 0; i < samples; i++) {
+			offset = Math.min(offset, clock_offsets_[i]);
+		}
 
-		socket_.disconnect();
-		socket_.close();
+		double estimate = capture + offset - VisionConstants.MIN_FRAME_LATENCY;
+		return Math.min(estimate, now);
 	}
 
-	// the below methods are the easiest way to access the data that was grabbed
-	// from the string below
-	
 	/**
-	 * Returns a single, constant character that represents the error direction of the target
-	 * with respect to the camera. If no target is found, the character will be 'C', same as if
-	 * the camera is dead-on.
-	 * @return
-	 * A character-long String containing L, R, or C as described above.
+	 * Get a consistent snapshot of the latest frame. This never blocks the receiver thread and doesn't consume
+	 * the data, so any number of commands can read the same frame in a cycle. Check the snapshot's age with
+	 * {@link VisionTarget#isFresh(double)} before acting on it.
+	 * @return The latest frame, or {@link VisionTarget#NONE} if nothing has been received yet.
 	 */
-	public synchronized String get_direction() {
-		String tmp = NADA;
+	public VisionTarget getTarget() {
+		VisionTarget snapshot = snapshot_;
+		while (true) {
+			long version = version_;
+			if (version == snapshot.m_version) return snapshot; // Nothing new since the last snapshot
+			if ((version & 1) != 0) {
+				Thread.onSpinWait(); // The receiver is mid-write
+				continue;
+			}
 
-		if (direction_ != null) {
-			tmp = direction_;
-			direction_ = NADA;
+			int sequence = sequence_;
+			double receiveTimestamp = receive_timestamp_;
+			double captureTimestamp = capture_timestamp_;
+			long captureTimestampMicros = capture_timestamp_micros_;
+			String direction = direction_;
+			double degreesX = degrees_x;
+			double width = degrees_width;
+			double dist = distance;
+
+			VarHandle.loadLoadFence();
+			if (version_ == version) {
+				snapshot = new VisionTarget(version, sequence, receiveTimestamp, captureTimestamp, captureTimestampMicros,
+						degreesX, dist, width, direction);
+				snapshot_ = snapshot;
+				return snapshot;
+			}
 		}
-		return tmp;
 	}
 
+	// the below methods are the easiest way to access the latest frame if only one value is needed.
+	// They don't clear anything; a frame older than VisionConstants.MAX_TARGET_AGE reads as no target.
+	
 	/**
-	 * Returns the x error from 0 in camera units. Can be positive or negative depending on whether the target
-	 * is left or right of center.
+	 * Returns a single, constant String that represents the error direction of the target
+	 * with respect to the camera. If no recent target is found, returns NADA.
 	 * @return
-	 * The number of units from center (L/R) the target is. -1 if no target is found.
+	 * One of NADA, LEFT, CENTER or RIGHT.
 	 */
-	public synchronized double get_degrees_x() {
-    double tmp = degrees_x;		
-    degrees_x = 0;
-		return tmp;
+	public String get_direction() {
+		VisionTarget target = getTarget();
+		return target.isFresh(VisionConstants.MAX_TARGET_AGE) ? target.getDirection() : NADA;
 	}
 
-	/** @deprecated
-	 * 
-	 * Returns the y error from 0 in camera units. Can be positive or negative depending on whether the target
-	 * is above or below image center.
+	/**
+	 * Returns the x error from 0 in camera units. Can be positive or negative depending on whether the target
+	 * is left or right of center.
 	 * @return
-	 * The number of units from center (up/down) the target is. -1 if no target is found.
+	 * The number of units from center (L/R) the target is. 0 if no recent target is found.
 	 */
-	@Deprecated
-	public synchronized double get_degrees_y() {
-		double tmp = degrees_y;
-		degrees_y = 0;
-		return tmp;
+	public double get_degrees_x() {
+		VisionTarget target = getTarget();
+		return target.isFresh(VisionConstants.MAX_TARGET_AGE) ? target.getDegreesX() : 0;
 	}
 
 	/**
 	 * 
 	 * @return
+	 * The width of the target. 0 if no recent target is found.
 	 */
-	public synchronized double get_width() {
-		double tmp = degrees_width;
-		degrees_width = 0;
-		return tmp;
+	public double get_width() {
+		VisionTarget target = getTarget();
+		return target.isFresh(VisionConstants.MAX_TARGET_AGE) ? target.getWidth() : 0;
 	}
 
 	/**
 	 * Returns the distance error from "inside the camera" in camera units. Can be only be positive. Calculated from target height.
 	 * @return
-	 * The number of units from the camera the target is. [-1 if no target is found?  More likely -0.01 or -0.03.]
-	 * @return
+	 * The number of units from the camera the target is. 0 if no recent target is found.
 	 */
-	public synchronized double get_distance() {
-		double tmp = distance;
-		distance = 0;
-		return tmp;
+	public double get_distance() {
+		VisionTarget target = getTarget();
+		return target.isFresh(VisionConstants.MAX_TARGET_AGE) ? target.getDistance() : 0;
 	}
-}
\ No newline at end of file
+}
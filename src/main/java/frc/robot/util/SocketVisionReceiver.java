@@ -0,0 +1,162 @@
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import frc.robot.Constants.VisionConstants;
+
+/**
+ * Reads any number of {@link SocketVision} streams from one thread. Each stream is a non-blocking DatagramChannel
+ * registered with a single NIO Selector, so adding a vision port doesn't add a thread, and nothing waits on a
+ * socket timeout.
+ *
+ * <p>Streams are registered and unregistered by {@link SocketVisionWrapper}. Like the wrappers, the receiver is
+ * started with {@code init()} and stopped with {@code shutDown()} so no threads are left running in disabled.
+ */
+public class SocketVisionReceiver {
+  private final ConcurrentLinkedQueue<SocketVision> m_toConnect = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<SocketVision> m_toClose = new ConcurrentLinkedQueue<>();
+
+  // Only touched by the receiver thread
+  private final ByteBuffer m_buffer = ByteBuffer.allocateDirect(VisionConstants.RECEIVE_BUFFER_SIZE);
+  private final Consumer<SelectionKey> m_onReadable = this::onReadable;
+
+  private double m_lastStatsUpdate = 0;
+
+  private Selector m_selector;
+  private Thread m_thread = null;
+  private volatile boolean m_keepRunning = false;
+
+  /**
+   * Start the receiver thread. Streams registered before this is called are connected once it starts.
+   */
+  public synchronized void init() {
+    if (m_thread == null) {
+      try {
+        m_selector = Selector.open();
+      } catch (IOException e) {
+        System.out.println("SocketVisionReceiver could not open a selector: " + e.getMessage());
+        return;
+      }
+
+      m_keepRunning = true;
+      m_thread = new Thread(this::run, "SocketVisionReceiver");
+      m_thread.setDaemon(true);
+      m_thread.start();
+    }
+  }
+
+  /**
+   * Stop the receiver thread and close every stream's channel. Registered streams stay registered and are
+   * reconnected by the next {@code init()}.
+   */
+  public synchronized void shutDown() {
+    if (m_thread != null) {
+      m_keepRunning = false;
+      m_selector.wakeup();
+      try {
+        m_thread.join();
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      }
+      m_thread = null;
+    }
+  }
+
+  /**
+   * Start reading a stream. Safe to call from any thread.
+   */
+  public void register(SocketVision stream) {
+    m_toClose.remove(stream);
+    m_toConnect.add(stream);
+    wakeup();
+  }
+
+  /**
+   * Stop reading a stream and close its channel. Safe to call from any thread.
+   */
+  public void unregister(SocketVision stream) {
+    m_toConnect.remove(stream);
+    m_toClose.add(stream);
+    wakeup();
+  }
+
+  private synchronized void wakeup() {
+    if (m_thread != null) {
+      m_selector.wakeup();
+    }
+  }
+
+  /**
+   * This is the threaded method that waits on the selector and reads every stream that has data.
+   */
+  private void run() {
+    while (m_keepRunning) {
+      applyRegistrations();
+
+      try {
+        m_selector.select(m_onReadable, VisionConstants.SELECT_TIMEOUT_MS);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+
+      updateStats();
+    }
+
+    // Close everything down so the ports can be reopened later. Streams that are still registered are queued
+    // to reconnect on init().
+    SocketVision stream;
+    while ((stream = m_toClose.poll()) != null) {
+      stream.stoprunning();
+    }
+    for (SelectionKey key : m_selector.keys()) {
+      stream = (SocketVision) key.attachment();
+      if (stream.is_connected()) {
+        stream.stoprunning();
+        m_toConnect.add(stream);
+      }
+    }
+    try {
+      m_selector.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void applyRegistrations() {
+    SocketVision stream;
+    while ((stream = m_toClose.poll()) != null) {
+      stream.stoprunning();
+    }
+
+    // Streams that fail to connect (e.g. port in use) are retried on the next pass
+    int pending = m_toConnect.size();
+    for (int i = 0; i < pending && (stream = m_toConnect.poll()) != null; i++) {
+      if (!stream.is_connected() && !stream.connect(m_selector)) {
+        m_toConnect.add(stream);
+      }
+    }
+  }
+
+  /**
+   * Let each stream's stats check for stalls and publish. Throttled so a busy stream doesn't make this run on
+   * every packet.
+   */
+  private void updateStats() {
+    double now = RobotClock.now();
+    if (now - m_lastStatsUpdate < VisionConstants.SELECT_TIMEOUT_MS * 1e-3) return;
+    m_lastStatsUpdate = now;
+
+    for (SelectionKey key : m_selector.keys()) {
+      ((SocketVision) key.attachment()).getStats().update(now);
+    }
+  }
+
+  private void onReadable(SelectionKey key) {
+    ((SocketVision) key.attachment()).recv(m_buffer);
+  }
+}
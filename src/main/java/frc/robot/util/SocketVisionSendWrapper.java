@@ -11,16 +11,25 @@ public class SocketVisionSendWrapper {
   private SocketVisionSender m_sender = null;
 
   private int m_port;
+  private int m_localPort;
   private String m_ip;
 
   public SocketVisionSendWrapper( String ip, int port){
+    this(ip, port, port);
+  }
+
+  /**
+   * @param localPort The port to send from, or 0 for any free port. See {@link SocketVisionSender}.
+   */
+  public SocketVisionSendWrapper(String ip, int port, int localPort){
     m_ip = ip;
     m_port = port;
+    m_localPort = localPort;
   }
 
   public void init(){
     if( m_sender == null) {
-			m_sender = new SocketVisionSender(m_ip, m_port);
+			m_sender = new SocketVisionSender(m_ip, m_port, m_localPort);
 
 			m_sender.start();
     }
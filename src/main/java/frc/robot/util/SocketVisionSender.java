@@ -7,7 +7,13 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 
 import frc.robot.Constants;
+import frc.robot.Constants.VisionConstants;
 
+/**
+ * Sends the vision mode to the co-processor. The thread sleeps until {@code setSendData()} changes the mode and
+ * sends it right away, then keeps resending it every {@link VisionConstants#SENDER_KEEPALIVE_MS} as a heartbeat
+ * in case a packet was lost or the co-processor restarted.
+ */
 public class SocketVisionSender extends Thread {
 	public static final String StartRFT = "R";
 	public static final String StartDepth = "E";
@@ -18,27 +24,51 @@ public class SocketVisionSender extends Thread {
 
 	private String ip_;
 	private int port_;
+	private int local_port_;
 	private boolean is_connected_ = false;
-	private boolean keep_running = false;
-	private byte[] data_ = CarryOnMyWaywardSon.getBytes();
+	private volatile boolean keep_running = false;
 	private DatagramSocket socket_;
 
+	// Guarded by this
+	private String string_ = CarryOnMyWaywardSon;
+	private byte[] data_ = CarryOnMyWaywardSon.getBytes();
+	private boolean changed_ = true;
+
+	// Only touched by the sender thread; reused for every send
+	private final DatagramPacket packet_ = new DatagramPacket(new byte[0], 0);
+
 	public SocketVisionSender(String ip, int port) {
+		this(ip, port, port);
+	}
+
+	/**
+	 * @param ip The co-processor's address.
+	 * @param port The port the co-processor listens on.
+	 * @param localPort The port to send from, or 0 for any free port. In simulation the co-processor stand-in
+	 * runs on the same machine, so it can't be the same as port.
+	 */
+	public SocketVisionSender(String ip, int port, int localPort) {
+		super("SocketVisionSender");
 		ip_ = ip;
 		port_ = port;
+		local_port_ = localPort;
 	}
 
 	/**
-	 * This method tries to "connect" by instantiating the necessary socket for sending.
+	 * This method tries to "connect" by resolving the co-processor's address once and instantiating the
+	 * socket used for every send.
 	 * @return
 	 * true if successful
 	 */
 	public boolean connect() {
 		try {
 			System.out.println("SocketVisionSender trying to connect...");
-			socket_ = new DatagramSocket(port_);
+			InetAddress address = InetAddress.getByName(ip_);
+			socket_ = new DatagramSocket(local_port_);
 			socket_.setReuseAddress(true);
-			socket_.connect(InetAddress.getByName(ip_), port_);
+			socket_.connect(address, port_);
+			packet_.setAddress(address);
+			packet_.setPort(port_);
 			is_connected_ = true;
 		} catch (UnknownHostException ex) {
 			System.out.println("SocketVisionSender connect failed with exception: " + ex.getMessage());
@@ -62,62 +92,67 @@ public class SocketVisionSender extends Thread {
 	}
 
 	/**
-	 * This method sends the data to the socket.
+	 * This method sends the current data to the socket using the preallocated packet.
 	 * @return true if successful.
 	 */
 	public boolean send() {
-		try {
-			byte[] data;
-
-			synchronized(this){
-				data = data_;
-			}
-			
-			if(Constants.SHOW_DEBUG_VISION) {
-				System.out.println("Sending: \"" + getData() + "\"...");
-			}
+		byte[] data;
 
-			if(data == null) return false;
+		synchronized(this){
+			data = data_;
+			changed_ = false;
+		}
 
-			try {
-				DatagramPacket packet = new DatagramPacket(data, data.length, InetAddress.getByName(ip_), port_);			
-				socket_.send(packet);
-			}catch(Exception e) {
-				e.printStackTrace();
-				return false;
-			}
+		if(Constants.SHOW_DEBUG_VISION) {
+			System.out.println("Sending: \"" + getData() + "\"...");
+		}
 
-			if(Constants.SHOW_DEBUG_VISION) {
-				System.out.println("Sent: \"" + getData() + ".\"");
-			}
-		} catch (Exception e){
+		try {
+			packet_.setData(data);
+			socket_.send(packet_);
+		} catch (Exception e) {
 			System.out.println("SocketVisionSender failed to send with exception" + e.getMessage());
 			System.out.println("SocketVisionSender send() was trying to send: \"" + getData() + "\"");
+			return false;
+		}
+
+		if(Constants.SHOW_DEBUG_VISION) {
+			System.out.println("Sent: \"" + getData() + ".\"");
 		}
-	
 		return true;
 	}
 
 	/**
-	 * This is the threaded method that constantly checks and sends to the socket.
+	 * This is the threaded method that sends to the socket whenever the data changes, or after the
+	 * keepalive period if it hasn't.
 	 */
 	@Override
 	public void run() {
-		// this is the threaded method that constantly checks
-		// and sends to the socket.
 		keep_running = true;
 		while (keep_running) {
-			if (!is_connected()) {
-				connect();
+			if (!is_connected() && !connect()) {
+				waitForChange(VisionConstants.SENDER_RECONNECT_MS);
+				continue;
 			}
 			send();
-						
+			waitForChange(VisionConstants.SENDER_KEEPALIVE_MS);
+		}
+	}
+
+	/**
+	 * Sleep until the data changes, the sender is stopped, or timeoutMs passes.
+	 */
+	private synchronized void waitForChange(long timeoutMs) {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		long remaining = timeoutMs;
+		while (!changed_ && keep_running && remaining > 0) {
 			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e1) {
-				e1.printStackTrace();
+				wait(remaining);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				return;
 			}
-			
+			remaining = deadline - System.currentTimeMillis();
 		}
 	}
 
@@ -125,26 +160,35 @@ public class SocketVisionSender extends Thread {
 	 * This function stops the UDP socket properly, so it can be restarted later.
 	 */
 	public void stoprunning() {
-    	keep_running = false;
-		socket_.disconnect();
-		socket_.close();
+		keep_running = false;
+		synchronized(this) {
+			notifyAll();
+		}
+		if (socket_ != null) {
+			socket_.disconnect();
+			socket_.close();
+		}
 	}
 
 	/**
-	 * Sets the data content of the datagram packet.
+	 * Sets the data content of the datagram packet. If it is different from what is being sent, the sender
+	 * wakes up and sends it immediately.
 	 * @param stringToSend The string to encode into bytes for the datagram packet.
 	 */
 	public synchronized void setSendData(String stringToSend) {
-		if(stringToSend != null) data_ = stringToSend.getBytes();
-		else {
-			data_ = CarryOnMyWaywardSon.getBytes();
-		}
+		if(stringToSend == null) stringToSend = CarryOnMyWaywardSon;
+		if(stringToSend.equals(string_)) return;
+
+		string_ = stringToSend;
+		data_ = stringToSend.getBytes();
+		changed_ = true;
+		notifyAll();
 	}
 
 	/**
 	 * @return a String object representing the data being sent through the socket.
 	 */
-	public String getData() {
-		return new String(data_);
+	public synchronized String getData() {
+		return string_;
 	}
-}
\ No newline at end of file
+}
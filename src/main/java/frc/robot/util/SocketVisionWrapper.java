@@ -3,17 +3,20 @@ package frc.robot.util;
 import frc.robot.util.SocketVision;
 
 /**
- * Wrapper for SocketVisionSender (one-to-one) so the threaded objects can be handled in an FRC-safe
- * manner and be passed around commands in a more generic way.
+ * Wrapper for a SocketVision stream (one-to-one) so the stream can be handled in an FRC-safe
+ * manner and be passed around commands in a more generic way. The stream is read by a shared
+ * {@link SocketVisionReceiver}.
  */
 public class SocketVisionWrapper {
 
   private SocketVision m_reader = null;
+  private final SocketVisionReceiver m_receiver;
 
   private int m_port;
   private String m_ip;
 
-  public SocketVisionWrapper( String ip, int port){
+  public SocketVisionWrapper(SocketVisionReceiver receiver, String ip, int port){
+    m_receiver = receiver;
     m_ip = ip;
     m_port = port;
   }
@@ -22,23 +25,18 @@ public class SocketVisionWrapper {
     if( m_reader == null) {
 			m_reader = new SocketVision(m_ip, m_port);
 
-			m_reader.start();
+			m_receiver.register(m_reader);
     }
   }
 
   public void shutDown(){
     if(m_reader != null) {
-			try {
-				m_reader.stoprunning();
-				m_reader.join();
-				m_reader = null;
-			}catch (Exception e) {
-				e.printStackTrace();
-			}
+			m_receiver.unregister(m_reader);
+			m_reader = null;
 		}
   }
 
   public SocketVision get(){
     return m_reader;
   }
-}
\ No newline at end of file
+}
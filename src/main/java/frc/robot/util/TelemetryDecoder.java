@@ -0,0 +1,129 @@
+package frc.robot.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Converts a {@link TelemetryRecorder} file to CSV, oldest record first. Each double is a column, each
+ * boolean a 0/1 column, and each double array one column per element named "name[i]". The first two columns
+ * are the record's sequence number and its time in seconds since the robot code started.
+ *
+ * <p>Run on a laptop with {@code ./gradlew telemetryDecode --args="telemetry-20200307-101500.tlm [out.csv]"}.
+ * Without an output file, the CSV goes next to the input with a .csv extension.
+ */
+public final class TelemetryDecoder {
+  private TelemetryDecoder() {
+  }
+
+  public static void main(String... args) throws IOException {
+    if (args.length < 1) {
+      System.out.println("Usage: TelemetryDecoder <telemetry file> [csv file]");
+      System.exit(2);
+    }
+    Path input = Paths.get(args[0]);
+    Path output = args.length > 1 ? Paths.get(args[1])
+        : input.resolveSibling(input.getFileName().toString().replaceFirst("\\.[^.]*$", "") + ".csv");
+
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(input)).order(ByteOrder.LITTLE_ENDIAN);
+    try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+      int records = decode(buffer, writer);
+      System.out.println("Wrote " + records + " records to " + output);
+    }
+  }
+
+  /**
+   * @return How many records were written.
+   */
+  public static int decode(ByteBuffer buffer, Writer writer) throws IOException {
+    byte[] magic = new byte[TelemetryRecorder.MAGIC.length];
+    buffer.get(magic);
+    if (!Arrays.equals(magic, TelemetryRecorder.MAGIC)) {
+      throw new IOException("Not a telemetry file");
+    }
+    int version = buffer.getInt();
+    if (version != TelemetryRecorder.VERSION) {
+      throw new IOException("Unsupported telemetry file version " + version);
+    }
+    int recordSize = buffer.getInt();
+    int capacity = buffer.getInt();
+    int dataOffset = buffer.getInt();
+    int channelCount = buffer.getInt();
+
+    byte[] types = new byte[channelCount];
+    int[] lengths = new int[channelCount];
+    StringBuilder header = new StringBuilder("sequence,time");
+    for (int i = 0; i < channelCount; i++) {
+      types[i] = buffer.get();
+      lengths[i] = buffer.getInt();
+      byte[] nameBytes = new byte[buffer.getShort()];
+      buffer.get(nameBytes);
+      String name = new String(nameBytes, StandardCharsets.UTF_8);
+      if (types[i] == TelemetryRecorder.TYPE_DOUBLE_ARRAY) {
+        for (int j = 0; j < lengths[i]; j++) {
+          header.append(',').append(csvQuote(name + "[" + j + "]"));
+        }
+      } else {
+        header.append(',').append(csvQuote(name));
+      }
+    }
+
+    // The ring wraps, so start from the oldest complete record. Sequence 0 is empty or half written.
+    int oldest = -1;
+    long oldestSequence = Long.MAX_VALUE;
+    for (int i = 0; i < capacity; i++) {
+      long sequence = buffer.getLong(dataOffset + i * recordSize);
+      if (sequence > 0 && sequence < oldestSequence) {
+        oldestSequence = sequence;
+        oldest = i;
+      }
+    }
+
+    BufferedWriter out = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+    out.write(header.toString());
+    out.newLine();
+    if (oldest < 0) {
+      out.flush();
+      return 0;
+    }
+
+    int written = 0;
+    for (int n = 0; n < capacity; n++) {
+      int offset = dataOffset + ((oldest + n) % capacity) * recordSize;
+      long sequence = buffer.getLong(offset);
+      if (sequence <= 0) continue;
+
+      StringBuilder line = new StringBuilder();
+      line.append(sequence).append(',').append(buffer.getDouble(offset + Long.BYTES));
+      int position = offset + TelemetryRecorder.RECORD_HEADER_SIZE;
+      for (int i = 0; i < channelCount; i++) {
+        if (types[i] == TelemetryRecorder.TYPE_BOOLEAN) {
+          line.append(',').append(buffer.get(position));
+          position += 1;
+        } else {
+          for (int j = 0; j < lengths[i]; j++) {
+            line.append(',').append(buffer.getDouble(position));
+            position += Double.BYTES;
+          }
+        }
+      }
+      out.write(line.toString());
+      out.newLine();
+      written++;
+    }
+    out.flush();
+    return written;
+  }
+
+  private static String csvQuote(String text) {
+    if (text.indexOf(',') < 0 && text.indexOf('"') < 0) return text;
+    return '"' + text.replace("\"", "\"\"") + '"';
+  }
+}
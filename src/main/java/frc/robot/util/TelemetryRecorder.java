@@ -0,0 +1,319 @@
+package frc.robot.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.wpi.first.wpilibj.Filesystem;
+
+import frc.robot.Constants.TelemetryConstants;
+
+/**
+ * Records typed telemetry channels to a binary file once per loop, so a match can be looked at afterwards.
+ * Subsystems register their channels while they are being built and set the values whenever they have them;
+ * Robot calls {@link #start()} once everything is built and {@link #record()} at the end of every loop, which
+ * writes one fixed-size record holding the latest value of every channel.
+ *
+ * <p>The file is a ring of {@link TelemetryConstants#CAPACITY} records, sized and memory-mapped up front, so
+ * recording is a bounded number of buffer writes with no allocation or system call; the kernel writes the
+ * pages back on its own. Once full, the oldest records are overwritten. A new file is started every boot, on
+ * the first of {@link TelemetryConstants#DIRECTORIES} that exists (the USB stick) or in the operating
+ * directory. {@link TelemetryDecoder} turns a file into CSV.
+ *
+ * <p>File layout, little-endian: the header is {@link #MAGIC}, the format version, the record size, the
+ * capacity, the offset of the first record and the channel count as ints, then for each channel its type byte,
+ * its length as an int and its name as a short byte count followed by UTF-8. Each record is a long sequence
+ * number (0 while the record is being written), the {@link RobotClock} time as a double, then each channel's
+ * values in order: doubles as 8 bytes, booleans as 1 byte.
+ *
+ * <p>Only used from the main robot thread.
+ */
+public final class TelemetryRecorder {
+  static final byte[] MAGIC = "FRCTLM01".getBytes(StandardCharsets.US_ASCII);
+  static final int VERSION = 1;
+  static final byte TYPE_DOUBLE = 0;
+  static final byte TYPE_BOOLEAN = 1;
+  static final byte TYPE_DOUBLE_ARRAY = 2;
+  static final int RECORD_HEADER_SIZE = Long.BYTES + Double.BYTES;
+
+  private static final List<Channel> CHANNELS = new ArrayList<>();
+  private static final Set<String> NAMES = new HashSet<>();
+
+  private static boolean s_started = false;
+  private static MappedByteBuffer s_buffer = null;
+  private static int s_recordSize = 0;
+  private static int s_dataOffset = 0;
+  private static int s_capacity = 0;
+  private static long s_sequence = 0;
+
+  private TelemetryRecorder() {
+  }
+
+  public static DoubleChannel addDouble(String name) {
+    return add(new DoubleChannel(name));
+  }
+
+  public static BooleanChannel addBoolean(String name) {
+    return add(new BooleanChannel(name));
+  }
+
+  /**
+   * @param length How many values the channel holds. Fixed, so every record is the same size.
+   */
+  public static DoubleArrayChannel addDoubleArray(String name, int length) {
+    return add(new DoubleArrayChannel(name, length));
+  }
+
+  private static <C extends Channel> C add(C channel) {
+    if (s_started) {
+      throw new IllegalStateException("Telemetry channel " + channel.m_name + " added after the recorder started");
+    }
+    if (!NAMES.add(channel.m_name)) {
+      throw new IllegalArgumentException("Telemetry channel " + channel.m_name + " added twice");
+    }
+    CHANNELS.add(channel);
+    return channel;
+  }
+
+  /**
+   * Create this boot's file and start recording. Channels can't be added after this. If the file can't be
+   * created, a message is printed and {@link #record()} does nothing.
+   */
+  public static void start() {
+    if (!TelemetryConstants.ENABLED) {
+      s_started = true;
+      return;
+    }
+    start(directory(), TelemetryConstants.CAPACITY);
+  }
+
+  /**
+   * {@link #start()} with the file in a given directory and a given number of records, so tests can fill a small
+   * ring.
+   */
+  static void start(File directory, int capacity) {
+    if (s_started) return;
+    s_started = true;
+
+    int headerSize = MAGIC.length + 5 * Integer.BYTES;
+    s_recordSize = RECORD_HEADER_SIZE;
+    for (Channel channel : CHANNELS) {
+      headerSize += 1 + Integer.BYTES + Short.BYTES + channel.m_name.getBytes(StandardCharsets.UTF_8).length;
+      s_recordSize += channel.size();
+    }
+    s_dataOffset = (headerSize + 7) & ~7;
+    s_capacity = capacity;
+
+    String stem = TelemetryConstants.FILE_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+    File file = new File(directory, stem + TelemetryConstants.FILE_SUFFIX);
+    long size = s_dataOffset + (long) s_recordSize * capacity;
+    try {
+      // The roboRIO's clock starts from the same date every boot until something sets it, so the name can be
+      // taken by an earlier log. Mapping that file would mix its records in with ours; keep it and pick another.
+      for (int suffix = 1; !file.createNewFile(); suffix++) {
+        file = new File(directory, stem + "-" + suffix + TelemetryConstants.FILE_SUFFIX);
+      }
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        // The mapping stays valid after the file is closed
+        s_buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      }
+    } catch (IOException e) {
+      System.out.println("TelemetryRecorder could not create " + file + ": " + e.getMessage());
+      return;
+    }
+    s_buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    s_buffer.put(MAGIC);
+    s_buffer.putInt(VERSION);
+    s_buffer.putInt(s_recordSize);
+    s_buffer.putInt(capacity);
+    s_buffer.putInt(s_dataOffset);
+    s_buffer.putInt(CHANNELS.size());
+    for (Channel channel : CHANNELS) {
+      byte[] name = channel.m_name.getBytes(StandardCharsets.UTF_8);
+      s_buffer.put(channel.m_type);
+      s_buffer.putInt(channel.length());
+      s_buffer.putShort((short) name.length);
+      s_buffer.put(name);
+    }
+    System.out.println("TelemetryRecorder recording " + CHANNELS.size() + " channels to " + file);
+
+    deleteOldFiles(file);
+  }
+
+  private static File directory() {
+    for (String path : TelemetryConstants.DIRECTORIES) {
+      File directory = new File(path);
+      if (directory.isDirectory() && directory.canWrite()) return directory;
+    }
+    return Filesystem.getOperatingDirectory();
+  }
+
+  // Keep the newest MAX_FILES files, counting the one just created. The names sort by time, but the current
+  // file is never deleted in case the clock hasn't been set yet.
+  private static void deleteOldFiles(File current) {
+    File[] files = current.getAbsoluteFile().getParentFile().listFiles((dir, name) ->
+        name.startsWith(TelemetryConstants.FILE_PREFIX) && name.endsWith(TelemetryConstants.FILE_SUFFIX));
+    if (files == null || files.length <= TelemetryConstants.MAX_FILES) return;
+    Arrays.sort(files);
+    for (int i = 0; i < files.length - TelemetryConstants.MAX_FILES; i++) {
+      if (!files[i].equals(current) && !files[i].delete()) {
+        System.out.println("TelemetryRecorder could not delete " + files[i]);
+      }
+    }
+  }
+
+  /**
+   * Write one record with the current value of every channel. Called at the end of every loop.
+   */
+  public static void record() {
+    if (s_buffer == null) return;
+
+    int offset = s_dataOffset + (int) (s_sequence % s_capacity) * s_recordSize;
+    s_sequence++;
+
+    // Mark the record as incomplete first, so a crash part way through doesn't leave old and new data mixed
+    s_buffer.putLong(offset, 0);
+    s_buffer.putDouble(offset + Long.BYTES, RobotClock.now());
+    int position = offset + RECORD_HEADER_SIZE;
+    for (int i = 0; i < CHANNELS.size(); i++) {
+      position = CHANNELS.get(i).write(s_buffer, position);
+    }
+    s_buffer.putLong(offset, s_sequence);
+  }
+
+  /**
+   * Push everything recorded so far out to the file. This waits on the disk, so only call it when the loop
+   * timing doesn't matter, such as when the robot is disabled.
+   */
+  public static void flush() {
+    if (s_buffer != null) {
+      s_buffer.force();
+    }
+  }
+
+  /**
+   * A value recorded every loop. Keeps its last value until it is set again.
+   */
+  public abstract static class Channel {
+    final String m_name;
+    final byte m_type;
+
+    private Channel(String name, byte type) {
+      m_name = name;
+      m_type = type;
+    }
+
+    abstract int length();
+
+    abstract int size();
+
+    abstract int write(MappedByteBuffer buffer, int position);
+  }
+
+  public static final class DoubleChannel extends Channel {
+    private double m_value = 0;
+
+    private DoubleChannel(String name) {
+      super(name, TYPE_DOUBLE);
+    }
+
+    public void set(double value) {
+      m_value = value;
+    }
+
+    @Override
+    int length() {
+      return 1;
+    }
+
+    @Override
+    int size() {
+      return Double.BYTES;
+    }
+
+    @Override
+    int write(MappedByteBuffer buffer, int position) {
+      buffer.putDouble(position, m_value);
+      return position + Double.BYTES;
+    }
+  }
+
+  public static final class BooleanChannel extends Channel {
+    private boolean m_value = false;
+
+    private BooleanChannel(String name) {
+      super(name, TYPE_BOOLEAN);
+    }
+
+    public void set(boolean value) {
+      m_value = value;
+    }
+
+    @Override
+    int length() {
+      return 1;
+    }
+
+    @Override
+    int size() {
+      return 1;
+    }
+
+    @Override
+    int write(MappedByteBuffer buffer, int position) {
+      buffer.put(position, (byte) (m_value ? 1 : 0));
+      return position + 1;
+    }
+  }
+
+  public static final class DoubleArrayChannel extends Channel {
+    private final double[] m_values;
+
+    private DoubleArrayChannel(String name, int length) {
+      super(name, TYPE_DOUBLE_ARRAY);
+      m_values = new double[length];
+    }
+
+    public void set(int index, double value) {
+      m_values[index] = value;
+    }
+
+    /**
+     * Copy in as many values as the channel holds.
+     */
+    public void set(double[] values) {
+      System.arraycopy(values, 0, m_values, 0, Math.min(values.length, m_values.length));
+    }
+
+    @Override
+    int length() {
+      return m_values.length;
+    }
+
+    @Override
+    int size() {
+      return Double.BYTES * m_values.length;
+    }
+
+    @Override
+    int write(MappedByteBuffer buffer, int position) {
+      for (double value : m_values) {
+        buffer.putDouble(position, value);
+        position += Double.BYTES;
+      }
+      return position;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package frc.robot.util;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A path for a holonomic drive with the time it takes, made by {@link TrajectoryGenerator}: where the robot should
+ * be, which way it should face and how fast it should be moving, sampled every period seconds from the start at
+ * rest to the end at rest.
+ *
+ * <p>Samples are stored one after another in a buffer of doubles, {@link #STRIDE} values per sample, so
+ * {@link #sample(double, double[])} allocates nothing. The buffer is an array for a trajectory just generated, or a
+ * memory-mapped file for one read from {@link TrajectoryCache}. Positions are in inches in the odometry frame (x
+ * forward and y left at zero heading), velocities are field-relative, and headings are in degrees, counterclockwise
+ * positive. Headings and module angles don't wrap, so a path that turns all the way around ends at 360.
+ */
+public final class Trajectory {
+  // The values in each sample
+  public static final int TIME = 0;
+  public static final int X = 1;
+  public static final int Y = 2;
+  public static final int HEADING = 3;
+  // Inches per second
+  public static final int VX = 4;
+  public static final int VY = 5;
+  // Degrees per second
+  public static final int OMEGA = 6;
+  // Inches per second squared along the direction of travel, negative when slowing down
+  public static final int ACCELERATION = 7;
+  // The first of four module angles (degrees) and four module speeds (inches per second), LF, RF, RB, LB, that
+  // the trajectory's velocity alone gives. Informational only, for plotting a path and checking it against the
+  // wheel speed limit: FollowTrajectoryCommand adds feedback to the velocity, so the drive works the module states
+  // out from the corrected velocity every loop. These are exact for the wheel positions; SwerveKinematics gives the
+  // same when the robot isn't turning, or always on a square drivetrain.
+  public static final int MODULE_ANGLES = 8;
+  public static final int MODULE_SPEEDS = 12;
+  public static final int STRIDE = 16;
+
+  private final double m_period;
+  private final DoubleBuffer m_samples;
+  private final int m_size;
+
+  /**
+   * @param period Seconds between samples.
+   * @param samples STRIDE values for each sample from index 0 to the limit, the first at time 0 and the last at
+   * the end. Not copied, and only read with absolute gets, so its position doesn't matter.
+   */
+  Trajectory(double period, DoubleBuffer samples) {
+    if (samples.limit() < STRIDE || samples.limit() % STRIDE != 0) {
+      throw new IllegalArgumentException("A trajectory needs at least one sample of " + STRIDE + " values");
+    }
+    m_period = period;
+    m_samples = samples;
+    m_size = samples.limit() / STRIDE;
+  }
+
+  public int size() {
+    return m_size;
+  }
+
+  public double getPeriod() {
+    return m_period;
+  }
+
+  /**
+   * @return Seconds from the start to the end of the trajectory.
+   */
+  public double getTotalTime() {
+    return get(m_size - 1, TIME);
+  }
+
+  /**
+   * @param sample Which sample, from 0 to size() - 1.
+   * @param field One of the value indexes, such as {@link #X}.
+   */
+  public double get(int sample, int field) {
+    return m_samples.get(sample * STRIDE + field);
+  }
+
+  /**
+   * Where the robot should be at a time, interpolated between samples. Before the start it is the start, and
+   * after the end it is the end.
+   * @param time Seconds since the start.
+   * @param out double[STRIDE] that receives the values, indexed like {@link #X}.
+   */
+  public void sample(double time, double[] out) {
+    int last = m_size - 1;
+    double position = time / m_period;
+    if (!(position > 0)) {
+      copySample(0, out); // Also catches NaN
+      return;
+    }
+    if (position >= last) {
+      copySample(last, out);
+      return;
+    }
+
+    int before = (int) position;
+    double t = position - before;
+    int a = before * STRIDE;
+    int b = a + STRIDE;
+    for (int i = 0; i < STRIDE; i++) {
+      double from = m_samples.get(a + i);
+      out[i] = from + (m_samples.get(b + i) - from) * t;
+    }
+  }
+
+  private void copySample(int sample, double[] out) {
+    int offset = sample * STRIDE;
+    for (int i = 0; i < STRIDE; i++) {
+      out[i] = m_samples.get(offset + i);
+    }
+  }
+
+  /**
+   * Write every sample to a buffer, for {@link TrajectoryCache}.
+   */
+  void copyTo(DoubleBuffer out) {
+    for (int i = 0; i < m_samples.limit(); i++) {
+      out.put(m_samples.get(i));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Trajectory(%d samples, %.2f s, ends at %.1f, %.1f, %.1f)", m_size, getTotalTime(),
+        get(m_size - 1, X), get(m_size - 1, Y), get(m_size - 1, HEADING));
+  }
+}
@@ -0,0 +1,167 @@
+package frc.robot.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import frc.robot.Constants.TrajectoryConstants;
+
+/**
+ * Trajectories generated ahead of time and stored in a compact binary file, so the robot maps them into memory at
+ * init instead of generating them. The build runs {@link #main(String...)} over the waypoint files (the
+ * generateTrajectories task), and the results are deployed next to them.
+ *
+ * <p>A file is a header of 32 bytes (the magic number, format version, {@link Trajectory#STRIDE} and sample count
+ * as ints, the period as a double, and the generator's fingerprint of the waypoints as a long) followed by the
+ * samples as doubles, all little-endian like the roboRIO. The samples are used straight from the mapped file,
+ * read-only, so loading one is a map and a few header checks however long the path is.
+ *
+ * <p>The fingerprint covers the waypoint file and the generator's limits. If a cache doesn't match, because the
+ * waypoints were copied to the robot without a build or a constant changed, the trajectory is generated on the
+ * robot as before.
+ */
+public final class TrajectoryCache {
+  private static final int MAGIC = 0x5452414A; // "TRAJ"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 32;
+
+  private TrajectoryCache() {
+  }
+
+  /**
+   * Generate a cache for every waypoint file in a directory. Exits with status 1 if any path is invalid, so a bad
+   * path fails the build instead of the autonomous.
+   * @param args The waypoint directory and the directory to write the caches to.
+   */
+  public static void main(String... args) throws IOException {
+    if (args.length != 2) {
+      System.out.println("Usage: TrajectoryCache <waypoint directory> <output directory>");
+      System.exit(2);
+    }
+    File[] files = new File(args[0]).listFiles((dir, name) -> name.endsWith(".csv"));
+    if (files == null) {
+      System.out.println("TrajectoryCache could not find " + args[0]);
+      System.exit(1);
+    }
+    Arrays.sort(files);
+    Path output = Paths.get(args[1]);
+    Files.createDirectories(output);
+
+    TrajectoryGenerator generator = TrajectoryGenerator.forDrivetrain();
+    boolean failed = false;
+    for (File file : files) {
+      try {
+        byte[] source = Files.readAllBytes(file.toPath());
+        Trajectory trajectory = generator.load(file.toPath(), source);
+        Path cache = output.resolve(cacheName(file.toPath()));
+        write(trajectory, generator.fingerprint(source), cache);
+        System.out.println("Wrote " + cache + ": " + trajectory);
+      } catch (IOException e) {
+        System.out.println("TrajectoryCache could not generate " + file + ": " + e.getMessage());
+        failed = true;
+      }
+    }
+    System.exit(failed ? 1 : 0);
+  }
+
+  /**
+   * @return The cache file's name for a waypoint file: its name with {@link TrajectoryConstants#CACHE_EXTENSION}
+   * in place of ".csv".
+   */
+  public static String cacheName(Path waypointFile) {
+    String name = waypointFile.getFileName().toString();
+    return name.replaceFirst("\\.csv$", "") + TrajectoryConstants.CACHE_EXTENSION;
+  }
+
+  /**
+   * Load a path's trajectory: from its cache next to the waypoint file if there is one that matches the
+   * waypoints and the generator, otherwise by generating it.
+   * @throws IOException If the waypoint file can't be read or isn't a valid path.
+   */
+  public static Trajectory load(TrajectoryGenerator generator, Path waypointFile) throws IOException {
+    byte[] source = Files.readAllBytes(waypointFile);
+    long fingerprint = generator.fingerprint(source);
+    Path cache = waypointFile.resolveSibling(cacheName(waypointFile));
+    if (Files.exists(cache)) {
+      try {
+        return map(cache, fingerprint);
+      } catch (IOException e) {
+        System.out.println("TrajectoryCache is generating " + waypointFile + " again: " + e.getMessage());
+      }
+    } else {
+      System.out.println("TrajectoryCache is generating " + waypointFile + ", which has no cache");
+    }
+    return generator.load(waypointFile, source);
+  }
+
+  /**
+   * Map a cache file.
+   * @param fingerprint What {@link TrajectoryGenerator#fingerprint(byte[])} gives for the waypoints it should
+   * have been generated from.
+   * @throws IOException If the file can't be read, isn't a cache, or doesn't match the fingerprint.
+   */
+  public static Trajectory map(Path file, long fingerprint) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+      throw new IOException(file + " isn't a trajectory cache");
+    }
+    int version = buffer.getInt(4);
+    int stride = buffer.getInt(8);
+    int size = buffer.getInt(12);
+    double period = buffer.getDouble(16);
+    long cachedFingerprint = buffer.getLong(24);
+    if (version != VERSION || stride != Trajectory.STRIDE) {
+      throw new IOException(file + " is format " + version + " with " + stride + " values per sample, not format "
+          + VERSION + " with " + Trajectory.STRIDE);
+    }
+    if ((long) size * stride * Double.BYTES != buffer.capacity() - HEADER_BYTES) {
+      throw new IOException(file + " is the wrong length for " + size + " samples");
+    }
+    if (cachedFingerprint != fingerprint) {
+      throw new IOException(file + " was generated from different waypoints or limits");
+    }
+
+    // Read the pages in now, so following the path never waits on the disk
+    buffer.load();
+    buffer.position(HEADER_BYTES);
+    DoubleBuffer samples = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    return new Trajectory(period, samples);
+  }
+
+  /**
+   * Write a cache file, replacing any that is there.
+   */
+  public static void write(Trajectory trajectory, long fingerprint, Path file) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + trajectory.size() * Trajectory.STRIDE * Double.BYTES)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(Trajectory.STRIDE);
+    buffer.putInt(trajectory.size());
+    buffer.putDouble(trajectory.getPeriod());
+    buffer.putLong(fingerprint);
+    DoubleBuffer samples = buffer.asDoubleBuffer();
+    trajectory.copyTo(samples);
+
+    // Write beside it and move it into place, so a cache is never half written
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.write(temporary, buffer.array());
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
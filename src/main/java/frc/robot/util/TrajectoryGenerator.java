@@ -0,0 +1,349 @@
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import frc.robot.Constants.DrivetrainConstants;
+import frc.robot.Constants.TrajectoryConstants;
+
+/**
+ * Turns waypoints into a {@link Trajectory} a holonomic drive can follow. The path through the waypoints is a cubic
+ * Hermite spline with Catmull-Rom tangents, so it passes through every waypoint and its direction changes smoothly.
+ * The heading is separate from the direction of travel: between two waypoints it turns from one's heading to the
+ * next's the short way round, easing in and out so the robot isn't asked to start or stop turning instantly.
+ *
+ * <p>Speed along the path is limited three ways: the top speed, shared between driving and turning (a wheel on a
+ * robot that turns while it drives has to go faster than the robot); the acceleration it takes to follow the
+ * curve; and the acceleration to get up to speed from the start and down to a stop at the end. Each is worked out
+ * on a fine sampling of the path, and the result is sampled in time at a fixed period.
+ *
+ * <p>Generating allocates freely and takes a while on the roboRIO, so it is done at build time and the results
+ * cached (see {@link TrajectoryCache}); on the robot it is only the fallback for a path without a cache.
+ */
+public final class TrajectoryGenerator {
+  // Points each spline segment is divided into for measuring its length and curvature
+  private static final int STEPS_PER_SEGMENT = 200;
+
+  private final double m_maxVelocity;
+  private final double m_maxAcceleration;
+  private final double m_wheelbase;
+  private final double m_trackwidth;
+  private final double m_period;
+  // Inches from the center of the robot to each wheel
+  private final double m_rotationRadius;
+  // Where each module is from the center, LF, RF, RB, LB
+  private final double[] m_moduleX;
+  private final double[] m_moduleY;
+
+  /**
+   * @param maxVelocity The fastest any wheel may go, in inches per second.
+   * @param maxAcceleration The most acceleration the path may ask for, in inches per second squared.
+   * @param wheelbase Inches between the front and back wheels.
+   * @param trackwidth Inches between the left and right wheels.
+   * @param period Seconds between the trajectory's samples.
+   */
+  public TrajectoryGenerator(double maxVelocity, double maxAcceleration, double wheelbase, double trackwidth, double period) {
+    if (!(maxVelocity > 0) || !(maxAcceleration > 0) || !(period > 0) || !(wheelbase > 0) || !(trackwidth > 0)) {
+      throw new IllegalArgumentException("Trajectory limits and drivetrain size must be positive");
+    }
+    m_maxVelocity = maxVelocity;
+    m_maxAcceleration = maxAcceleration;
+    m_wheelbase = wheelbase;
+    m_trackwidth = trackwidth;
+    m_period = period;
+    m_rotationRadius = Math.hypot(wheelbase, trackwidth) / 2;
+    m_moduleX = new double[] { wheelbase / 2, wheelbase / 2, -wheelbase / 2, -wheelbase / 2 };
+    m_moduleY = new double[] { trackwidth / 2, -trackwidth / 2, -trackwidth / 2, trackwidth / 2 };
+  }
+
+  /**
+   * @return A generator for the robot's drivetrain, from DrivetrainConstants and TrajectoryConstants. The robot and
+   * the build both use this, so a cached trajectory matches the one the robot would generate.
+   */
+  public static TrajectoryGenerator forDrivetrain() {
+    // The drivetrain's limits are in feet
+    return new TrajectoryGenerator(DrivetrainConstants.MAX_VELOCITY * 12 * TrajectoryConstants.VELOCITY_FRACTION,
+        DrivetrainConstants.MAX_ACCELERATION * 12 * TrajectoryConstants.ACCELERATION_FRACTION,
+        DrivetrainConstants.WHEELBASE, DrivetrainConstants.TRACKWIDTH, TrajectoryConstants.PERIOD);
+  }
+
+  /**
+   * @param source The contents of a waypoint file.
+   * @return A checksum of the waypoints and everything else the trajectory depends on, so a cached trajectory
+   * can be told apart from one generated from different waypoints or limits.
+   */
+  public long fingerprint(byte[] source) {
+    CRC32 crc = new CRC32();
+    crc.update(source);
+    double[] settings = { m_maxVelocity, m_maxAcceleration, m_wheelbase, m_trackwidth, m_period, STEPS_PER_SEGMENT,
+        Trajectory.STRIDE };
+    for (double setting : settings) {
+      long bits = Double.doubleToLongBits(setting);
+      for (int shift = 0; shift < 64; shift += 8) {
+        crc.update((int) (bits >>> shift));
+      }
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * @param x Waypoint positions in inches, at least two, with no two in a row at the same place.
+   * @param y
+   * @param heading Which way the robot faces at each waypoint, degrees counterclockwise.
+   * @throws IllegalArgumentException If the waypoints don't make a path.
+   */
+  public Trajectory generate(double[] x, double[] y, double[] heading) {
+    int waypoints = x.length;
+    if (waypoints < 2 || y.length != waypoints || heading.length != waypoints) {
+      throw new IllegalArgumentException("A path needs at least two waypoints, each with x, y and heading");
+    }
+    for (int i = 0; i < waypoints; i++) {
+      if (!Double.isFinite(x[i]) || !Double.isFinite(y[i]) || !Double.isFinite(heading[i])) {
+        throw new IllegalArgumentException("Waypoint values must be finite numbers");
+      }
+      if (i > 0 && x[i] == x[i - 1] && y[i] == y[i - 1]) {
+        throw new IllegalArgumentException("Waypoints " + (i - 1) + " and " + i + " are at the same place");
+      }
+    }
+
+    // Catmull-Rom tangents: each waypoint heads from the one before it toward the one after, and the ends head
+    // straight at their neighbour
+    double[] tx = new double[waypoints];
+    double[] ty = new double[waypoints];
+    for (int i = 0; i < waypoints; i++) {
+      int before = Math.max(0, i - 1);
+      int after = Math.min(waypoints - 1, i + 1);
+      double scale = i == 0 || i == waypoints - 1 ? 1 : 0.5;
+      tx[i] = (x[after] - x[before]) * scale;
+      ty[i] = (y[after] - y[before]) * scale;
+    }
+
+    // Headings turning the short way between waypoints, without wrapping
+    double[] headings = new double[waypoints];
+    headings[0] = heading[0];
+    for (int i = 1; i < waypoints; i++) {
+      headings[i] = headings[i - 1] + PoseHistory.wrapDegrees(heading[i] - heading[i - 1]);
+    }
+
+    // Sample the spline finely: position, arc length, direction of travel and curvature
+    int points = (waypoints - 1) * STEPS_PER_SEGMENT + 1;
+    double[] px = new double[points];
+    double[] py = new double[points];
+    double[] dirX = new double[points];
+    double[] dirY = new double[points];
+    double[] curvature = new double[points];
+    double[] distance = new double[points];
+    for (int i = 0; i < points; i++) {
+      int segment = Math.min(i / STEPS_PER_SEGMENT, waypoints - 2);
+      double u = (double) (i - segment * STEPS_PER_SEGMENT) / STEPS_PER_SEGMENT;
+      double u2 = u * u;
+      double u3 = u2 * u;
+      int a = segment;
+      int b = segment + 1;
+
+      // Hermite basis functions and their first and second derivatives
+      double h00 = 2 * u3 - 3 * u2 + 1;
+      double h10 = u3 - 2 * u2 + u;
+      double h01 = -2 * u3 + 3 * u2;
+      double h11 = u3 - u2;
+      px[i] = h00 * x[a] + h10 * tx[a] + h01 * x[b] + h11 * tx[b];
+      py[i] = h00 * y[a] + h10 * ty[a] + h01 * y[b] + h11 * ty[b];
+
+      double d00 = 6 * u2 - 6 * u;
+      double d10 = 3 * u2 - 4 * u + 1;
+      double d01 = -6 * u2 + 6 * u;
+      double d11 = 3 * u2 - 2 * u;
+      double dx = d00 * x[a] + d10 * tx[a] + d01 * x[b] + d11 * tx[b];
+      double dy = d00 * y[a] + d10 * ty[a] + d01 * y[b] + d11 * ty[b];
+
+      double s00 = 12 * u - 6;
+      double s10 = 6 * u - 4;
+      double s01 = -12 * u + 6;
+      double s11 = 6 * u - 2;
+      double ddx = s00 * x[a] + s10 * tx[a] + s01 * x[b] + s11 * tx[b];
+      double ddy = s00 * y[a] + s10 * ty[a] + s01 * y[b] + s11 * ty[b];
+
+      double speed = Math.hypot(dx, dy);
+      if (speed > 1e-9) {
+        dirX[i] = dx / speed;
+        dirY[i] = dy / speed;
+        curvature[i] = Math.abs(dx * ddy - dy * ddx) / (speed * speed * speed);
+      } else {
+        // A cusp: no direction of its own, so keep the last one. The robot stops here anyway (infinite curvature).
+        dirX[i] = i > 0 ? dirX[i - 1] : x[b] - x[a];
+        dirY[i] = i > 0 ? dirY[i - 1] : y[b] - y[a];
+        curvature[i] = Double.POSITIVE_INFINITY;
+      }
+      if (i > 0) {
+        distance[i] = distance[i - 1] + Math.hypot(px[i] - px[i - 1], py[i] - py[i - 1]);
+      }
+    }
+
+    // Heading along the path, and how fast it turns per inch travelled
+    double[] pathHeading = new double[points];
+    double[] turnPerInch = new double[points];
+    for (int i = 0; i < points; i++) {
+      int segment = Math.min(i / STEPS_PER_SEGMENT, waypoints - 2);
+      double start = distance[segment * STEPS_PER_SEGMENT];
+      double length = distance[(segment + 1) * STEPS_PER_SEGMENT] - start;
+      double f = length > 0 ? (distance[i] - start) / length : 1;
+      double turn = headings[segment + 1] - headings[segment];
+      // Smoothstep, so the turn starts and ends with no turning rate
+      pathHeading[i] = headings[segment] + turn * f * f * (3 - 2 * f);
+      turnPerInch[i] = length > 0 ? turn * 6 * f * (1 - f) / length : 0;
+    }
+
+    // The fastest each point can be taken: wheel speed is the robot's speed plus the turn's speed at the wheels,
+    // and the curve's centripetal acceleration can't be over the limit
+    double[] velocity = new double[points];
+    for (int i = 0; i < points; i++) {
+      double turning = 1 + Math.abs(Math.toRadians(turnPerInch[i])) * m_rotationRadius;
+      double limit = m_maxVelocity / turning;
+      if (curvature[i] > 0) {
+        limit = Math.min(limit, Math.sqrt(m_maxAcceleration / curvature[i]));
+      }
+      velocity[i] = limit;
+    }
+
+    // Accelerate from rest at the start, and decelerate to rest at the end
+    velocity[0] = 0;
+    for (int i = 1; i < points; i++) {
+      double step = distance[i] - distance[i - 1];
+      velocity[i] = Math.min(velocity[i], Math.sqrt(velocity[i - 1] * velocity[i - 1] + 2 * m_maxAcceleration * step));
+    }
+    velocity[points - 1] = 0;
+    for (int i = points - 2; i >= 0; i--) {
+      double step = distance[i + 1] - distance[i];
+      velocity[i] = Math.min(velocity[i], Math.sqrt(velocity[i + 1] * velocity[i + 1] + 2 * m_maxAcceleration * step));
+    }
+
+    // Time to reach each point, at constant acceleration between points
+    double[] time = new double[points];
+    for (int i = 1; i < points; i++) {
+      double step = distance[i] - distance[i - 1];
+      double average = (velocity[i - 1] + velocity[i]) / 2;
+      time[i] = time[i - 1] + (step > 0 && average > 0 ? step / average : 0);
+    }
+    if (!(time[points - 1] > 0)) {
+      throw new IllegalArgumentException("The path doesn't go anywhere");
+    }
+
+    // Sample at the fixed period. The last sample is at or just after the end, holding still at the end.
+    int size = (int) Math.ceil(time[points - 1] / m_period - 1e-9) + 1;
+    double[] samples = new double[size * Trajectory.STRIDE];
+    int modules = m_moduleX.length;
+    // Each module's angle so far, so angles carry on past 180 rather than jump; the first is where it first moves
+    double[] moduleAngles = new double[modules];
+    boolean[] moduleMoved = new boolean[modules];
+    int i = 0;
+    for (int k = 0; k < size; k++) {
+      double t = Math.min(k * m_period, time[points - 1]);
+      while (i < points - 2 && time[i + 1] <= t) {
+        i++;
+      }
+
+      double step = distance[i + 1] - distance[i];
+      double dt = time[i + 1] - time[i];
+      double acceleration = step > 0 ? (velocity[i + 1] * velocity[i + 1] - velocity[i] * velocity[i]) / (2 * step) : 0;
+      double tau = Math.max(0, Math.min(dt, t - time[i]));
+      double along = Math.min(step, velocity[i] * tau + acceleration * tau * tau / 2);
+      double f = step > 0 ? along / step : 0;
+      double speed = Math.max(0, velocity[i] + acceleration * tau);
+
+      double directionX = dirX[i] + (dirX[i + 1] - dirX[i]) * f;
+      double directionY = dirY[i] + (dirY[i + 1] - dirY[i]) * f;
+      double norm = Math.hypot(directionX, directionY);
+      if (norm > 0) {
+        directionX /= norm;
+        directionY /= norm;
+      }
+
+      int o = k * Trajectory.STRIDE;
+      samples[o + Trajectory.TIME] = k * m_period;
+      samples[o + Trajectory.X] = px[i] + (px[i + 1] - px[i]) * f;
+      samples[o + Trajectory.Y] = py[i] + (py[i + 1] - py[i]) * f;
+      samples[o + Trajectory.HEADING] = pathHeading[i] + (pathHeading[i + 1] - pathHeading[i]) * f;
+      samples[o + Trajectory.VX] = speed * directionX;
+      samples[o + Trajectory.VY] = speed * directionY;
+      samples[o + Trajectory.OMEGA] = speed * (turnPerInch[i] + (turnPerInch[i + 1] - turnPerInch[i]) * f);
+      samples[o + Trajectory.ACCELERATION] = t < time[points - 1] ? acceleration : 0;
+
+      // The velocity in the robot's frame, plus turning, at each module
+      double robotHeading = Math.toRadians(samples[o + Trajectory.HEADING]);
+      double cos = Math.cos(robotHeading);
+      double sin = Math.sin(robotHeading);
+      double vx = samples[o + Trajectory.VX];
+      double vy = samples[o + Trajectory.VY];
+      double forward = vx * cos + vy * sin;
+      double left = -vx * sin + vy * cos;
+      double omega = Math.toRadians(samples[o + Trajectory.OMEGA]);
+      for (int m = 0; m < modules; m++) {
+        double moduleForward = forward - omega * m_moduleY[m];
+        double moduleLeft = left + omega * m_moduleX[m];
+        double moduleSpeed = Math.hypot(moduleForward, moduleLeft);
+        if (moduleSpeed > 1e-6) {
+          double angle = Math.toDegrees(Math.atan2(moduleLeft, moduleForward));
+          moduleAngles[m] = moduleMoved[m] ? moduleAngles[m] + PoseHistory.wrapDegrees(angle - moduleAngles[m]) : angle;
+          if (!moduleMoved[m]) {
+            // Point it that way from the start, rather than from 0
+            for (int earlier = 0; earlier < k; earlier++) {
+              samples[earlier * Trajectory.STRIDE + Trajectory.MODULE_ANGLES + m] = angle;
+            }
+            moduleMoved[m] = true;
+          }
+        }
+        samples[o + Trajectory.MODULE_ANGLES + m] = moduleAngles[m];
+        samples[o + Trajectory.MODULE_SPEEDS + m] = moduleSpeed;
+      }
+    }
+    return new Trajectory(m_period, DoubleBuffer.wrap(samples));
+  }
+
+  /**
+   * Read waypoints from a text file with one "x, y, heading" line per waypoint, in the order they are driven,
+   * and generate their trajectory. Blank lines and lines starting with # are skipped.
+   * @throws IOException If the file can't be read or isn't a valid path; the message says which line.
+   */
+  public Trajectory load(Path file) throws IOException {
+    return load(file, Files.readAllBytes(file));
+  }
+
+  /**
+   * @param source The contents of file, already read.
+   */
+  Trajectory load(Path file, byte[] source) throws IOException {
+    String[] lines = new String(source, StandardCharsets.UTF_8).split("\\r?\\n");
+    double[] x = new double[lines.length];
+    double[] y = new double[lines.length];
+    double[] heading = new double[lines.length];
+    int count = 0;
+    for (int i = 0; i < lines.length; i++) {
+      String line = lines[i].trim();
+      if (line.isEmpty() || line.startsWith("#")) continue;
+
+      String[] fields = line.split("\\s*,\\s*");
+      if (fields.length != 3) {
+        throw new IOException(file + " line " + (i + 1) + ": expected \"x, y, heading\"");
+      }
+      try {
+        x[count] = Double.parseDouble(fields[0]);
+        y[count] = Double.parseDouble(fields[1]);
+        heading[count] = Double.parseDouble(fields[2]);
+        count++;
+      } catch (NumberFormatException e) {
+        throw new IOException(file + " line " + (i + 1) + ": " + e.getMessage());
+      }
+    }
+
+    try {
+      return generate(Arrays.copyOf(x, count), Arrays.copyOf(y, count), Arrays.copyOf(heading, count));
+    } catch (IllegalArgumentException e) {
+      throw new IOException(file + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,299 @@
+package frc.robot.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes vision datagrams straight out of a {@link ByteBuffer} without allocating. One decoder is owned by
+ * each {@link SocketVision} stream and is reused for every packet.
+ *
+ * <p>The preferred format is a fixed-layout binary frame (all values big-endian):
+ * <pre>
+ *  offset  size  field
+ *       0     2  magic (5933)
+ *       2     1  version (1)
+ *       3     1  direction (0 = nada, 1 = left, 2 = center, 3 = right)
+ *       4     4  sequence number (int)
+ *       8     8  capture timestamp in microseconds, coprocessor clock (long)
+ *      16     4  degrees_x (float)
+ *      20     4  distance (float)
+ *      24     4  width (float)
+ * </pre>
+ *
+ * <p>The older text format ("Identifier: x, distance, width, distanceW, L/C/R") is still accepted when
+ * text fallback is enabled. It is parsed byte by byte, so it doesn't allocate either.
+ */
+public class VisionPacketDecoder {
+  public static final short MAGIC = 5933;
+  public static final byte VERSION = 1;
+  public static final int FRAME_SIZE = 28;
+
+  public static final byte DIRECTION_NADA = 0;
+  public static final byte DIRECTION_LEFT = 1;
+  public static final byte DIRECTION_CENTER = 2;
+  public static final byte DIRECTION_RIGHT = 3;
+
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+  };
+
+  private final boolean m_acceptText;
+
+  // Results of the last successful decode
+  private boolean m_binary;
+  private int m_sequence;
+  private long m_timestampMicros;
+  private double m_degreesX;
+  private double m_distance;
+  private double m_width;
+  private String m_direction = SocketVision.NADA;
+
+  // Cursor for the text parser
+  private int m_textPosition;
+
+  /**
+   * @param acceptText true to fall back to the legacy text format when a packet isn't a binary frame.
+   */
+  public VisionPacketDecoder(boolean acceptText) {
+    m_acceptText = acceptText;
+  }
+
+  /**
+   * Decode the bytes between the buffer's position and limit. The buffer's position is not changed.
+   * @return true if the packet was a valid frame. The getters only change when this returns true.
+   */
+  public boolean decode(ByteBuffer buffer) {
+    if (isBinaryFrame(buffer)) {
+      return decodeBinary(buffer);
+    }
+    return m_acceptText && decodeText(buffer);
+  }
+
+  private static boolean isBinaryFrame(ByteBuffer buffer) {
+    return buffer.remaining() >= FRAME_SIZE && buffer.getShort(buffer.position()) == MAGIC;
+  }
+
+  private boolean decodeBinary(ByteBuffer buffer) {
+    int start = buffer.position();
+    if (buffer.get(start + 2) != VERSION) return false;
+
+    String direction = directionFromCode(buffer.get(start + 3));
+    if (direction == null) return false;
+
+    m_binary = true;
+    m_direction = direction;
+    m_sequence = buffer.getInt(start + 4);
+    m_timestampMicros = buffer.getLong(start + 8);
+    m_degreesX = buffer.getFloat(start + 16);
+    m_distance = buffer.getFloat(start + 20);
+    m_width = buffer.getFloat(start + 24);
+    return true;
+  }
+
+  private boolean decodeText(ByteBuffer buffer) {
+    int end = buffer.limit();
+
+    // Skip the identifier, which ends at the first colon
+    int colon = -1;
+    for (int i = buffer.position(); i < end; i++) {
+      if (buffer.get(i) == ':') {
+        colon = i;
+        break;
+      }
+    }
+    if (colon < 0) return false;
+
+    // Fields are: x, distance, width, distanceW, L/C/R
+    m_textPosition = colon + 1;
+    double degreesX = parseDoubleField(buffer, end);
+    double distance = parseDoubleField(buffer, end);
+    double width = parseDoubleField(buffer, end);
+    if (Double.isNaN(degreesX) || Double.isNaN(distance) || Double.isNaN(width)) return false;
+    if (!skipField(buffer, end)) return false;
+
+    skipSpaces(buffer, end);
+    if (m_textPosition >= end) return false;
+
+    String direction;
+    switch (buffer.get(m_textPosition)) {
+      case 'l': case 'L':
+        direction = SocketVision.LEFT;
+        break;
+      case 'r': case 'R':
+        direction = SocketVision.RIGHT;
+        break;
+      case 'c': case 'C':
+        direction = SocketVision.CENTER;
+        break;
+      default:
+        direction = SocketVision.NADA;
+    }
+
+    m_binary = false;
+    m_direction = direction;
+    m_degreesX = degreesX;
+    m_distance = distance;
+    m_width = width;
+    return true;
+  }
+
+  /**
+   * Parse a decimal number starting at the text cursor and move the cursor past the following comma.
+   * @return The parsed value, or NaN if the field isn't a number.
+   */
+  private double parseDoubleField(ByteBuffer buffer, int end) {
+    skipSpaces(buffer, end);
+
+    boolean negative = false;
+    if (m_textPosition < end && (buffer.get(m_textPosition) == '-' || buffer.get(m_textPosition) == '+')) {
+      negative = buffer.get(m_textPosition) == '-';
+      m_textPosition++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean seenPoint = false;
+    boolean seenDigit = false;
+    while (m_textPosition < end) {
+      byte c = buffer.get(m_textPosition);
+      if (c >= '0' && c <= '9') {
+        seenDigit = true;
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (c - '0');
+          if (mantissa != 0) digits++;
+          if (seenPoint) exponent--;
+        } else if (!seenPoint) {
+          exponent++; // Ran out of precision; keep the magnitude
+        }
+      } else if (c == '.' && !seenPoint) {
+        seenPoint = true;
+      } else {
+        break;
+      }
+      m_textPosition++;
+    }
+    if (!seenDigit) return Double.NaN;
+
+    if (m_textPosition < end && (buffer.get(m_textPosition) == 'e' || buffer.get(m_textPosition) == 'E')) {
+      m_textPosition++;
+      boolean negativeExponent = false;
+      if (m_textPosition < end && (buffer.get(m_textPosition) == '-' || buffer.get(m_textPosition) == '+')) {
+        negativeExponent = buffer.get(m_textPosition) == '-';
+        m_textPosition++;
+      }
+      int explicitExponent = 0;
+      while (m_textPosition < end && buffer.get(m_textPosition) >= '0' && buffer.get(m_textPosition) <= '9') {
+        explicitExponent = Math.min(explicitExponent * 10 + (buffer.get(m_textPosition) - '0'), 400);
+        m_textPosition++;
+      }
+      exponent += negativeExponent ? -explicitExponent : explicitExponent;
+    }
+
+    if (!skipField(buffer, end)) return Double.NaN;
+
+    double value = scaleByPowerOfTen(mantissa, exponent);
+    return negative ? -value : value;
+  }
+
+  private static double scaleByPowerOfTen(long mantissa, int exponent) {
+    double value = mantissa;
+    while (exponent > 0) {
+      int step = Math.min(exponent, POWERS_OF_TEN.length - 1);
+      value *= POWERS_OF_TEN[step];
+      exponent -= step;
+    }
+    while (exponent < 0) {
+      int step = Math.min(-exponent, POWERS_OF_TEN.length - 1);
+      value /= POWERS_OF_TEN[step];
+      exponent += step;
+    }
+    return value;
+  }
+
+  /**
+   * Move the text cursor past the next comma.
+   * @return false if there is no comma before the end of the packet.
+   */
+  private boolean skipField(ByteBuffer buffer, int end) {
+    while (m_textPosition < end) {
+      if (buffer.get(m_textPosition++) == ',') return true;
+    }
+    return false;
+  }
+
+  private void skipSpaces(ByteBuffer buffer, int end) {
+    while (m_textPosition < end && buffer.get(m_textPosition) <= ' ') {
+      m_textPosition++;
+    }
+  }
+
+  /**
+   * Map a binary direction code to one of the {@link SocketVision} direction constants.
+   * @return The direction, or null if the code is not valid.
+   */
+  public static String directionFromCode(byte code) {
+    switch (code) {
+      case DIRECTION_NADA:
+        return SocketVision.NADA;
+      case DIRECTION_LEFT:
+        return SocketVision.LEFT;
+      case DIRECTION_CENTER:
+        return SocketVision.CENTER;
+      case DIRECTION_RIGHT:
+        return SocketVision.RIGHT;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Map one of the {@link SocketVision} direction constants to its binary direction code.
+   */
+  public static byte codeFromDirection(String direction) {
+    if (SocketVision.LEFT.equals(direction)) return DIRECTION_LEFT;
+    if (SocketVision.CENTER.equals(direction)) return DIRECTION_CENTER;
+    if (SocketVision.RIGHT.equals(direction)) return DIRECTION_RIGHT;
+    return DIRECTION_NADA;
+  }
+
+  /**
+   * @return true if the last decoded packet was a binary frame, false if it was text.
+   */
+  public boolean wasBinary() {
+    return m_binary;
+  }
+
+  /**
+   * @return The sequence number of the last binary frame. Text packets don't carry one.
+   */
+  public int getSequence() {
+    return m_sequence;
+  }
+
+  /**
+   * @return The capture timestamp of the last binary frame in microseconds, on the coprocessor's clock.
+   */
+  public long getTimestampMicros() {
+    return m_timestampMicros;
+  }
+
+  public double getDegreesX() {
+    return m_degreesX;
+  }
+
+  public double getDistance() {
+    return m_distance;
+  }
+
+  public double getWidth() {
+    return m_width;
+  }
+
+  /**
+   * @return One of {@link SocketVision#NADA}, {@link SocketVision#LEFT}, {@link SocketVision#CENTER} or
+   * {@link SocketVision#RIGHT}.
+   */
+  public String getDirection() {
+    return m_direction;
+  }
+}
@@ -0,0 +1,141 @@
+package frc.robot.util;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+import frc.robot.Constants.VisionConstants;
+
+/**
+ * Health counters for one {@link SocketVision} stream: packets received, packets that failed to parse, frames
+ * lost (gaps in the binary sequence numbers), stalls (no packet for {@link VisionConstants#STREAM_TIMEOUT}) and
+ * a histogram of the time between packets.
+ *
+ * <p>Everything here is only touched by the {@link SocketVisionReceiver} thread, which also publishes the
+ * numbers to NetworkTables under "Vision/&lt;port&gt;" every {@link VisionConstants#STATS_PUBLISH_PERIOD}
+ * seconds. Counters are totals since the robot started; the rate and inter-arrival numbers cover the last
+ * publish period.
+ */
+public class VisionStreamStats {
+  private final int m_port;
+  private final Histogram m_interArrival = new Histogram(5, 10_000_000); // microseconds, up to 10 s
+
+  private long m_packets = 0;
+  private long m_parseFailures = 0;
+  private long m_receiveErrors = 0;
+  private long m_droppedFrames = 0;
+  private long m_timeouts = 0;
+
+  private double m_lastPacketTime = Double.NaN;
+  private boolean m_hasSequence = false;
+  private int m_lastSequence = 0;
+  private boolean m_timedOut = false;
+
+  // Publishing state; entries are looked up once
+  private NetworkTableEntry[] m_entries = null;
+  private double m_lastPublishTime = Double.NaN;
+  private long m_packetsAtLastPublish = 0;
+
+  private static final int PACKETS = 0;
+  private static final int PARSE_FAILURES = 1;
+  private static final int RECEIVE_ERRORS = 2;
+  private static final int DROPPED_FRAMES = 3;
+  private static final int TIMEOUTS = 4;
+  private static final int RATE = 5;
+  private static final int INTERVAL_P50 = 6;
+  private static final int INTERVAL_P99 = 7;
+  private static final int INTERVAL_MAX = 8;
+  private static final int STALLED = 9;
+  private static final String[] ENTRY_NAMES = {
+    "Packets", "Parse Failures", "Receive Errors", "Dropped Frames", "Timeouts",
+    "Rate Hz", "Interval p50 ms", "Interval p99 ms", "Interval Max ms", "Stalled"
+  };
+
+  public VisionStreamStats(int port) {
+    m_port = port;
+  }
+
+  /**
+   * Count a packet that decoded into a valid frame.
+   * @param now The receive time in {@link RobotClock} seconds.
+   * @param binary true if the frame carried a sequence number.
+   * @param sequence The frame's sequence number; ignored for text frames.
+   */
+  public void packetReceived(double now, boolean binary, int sequence) {
+    m_packets++;
+    m_timedOut = false;
+
+    if (!Double.isNaN(m_lastPacketTime)) {
+      m_interArrival.record((long) ((now - m_lastPacketTime) * 1e6));
+    }
+    m_lastPacketTime = now;
+
+    if (binary) {
+      // A backwards jump means the co-processor restarted, so only count forward gaps
+      if (m_hasSequence && sequence - m_lastSequence > 1) {
+        m_droppedFrames += sequence - m_lastSequence - 1;
+      }
+      m_hasSequence = true;
+      m_lastSequence = sequence;
+    }
+  }
+
+  /**
+   * Count a packet that arrived but wasn't a valid frame.
+   */
+  public void parseFailed() {
+    m_parseFailures++;
+  }
+
+  /**
+   * Count a failed read from the channel.
+   */
+  public void receiveFailed() {
+    m_receiveErrors++;
+  }
+
+  /**
+   * Check for a stall, and publish to NetworkTables if the publish period has passed. Called periodically by
+   * the receiver thread whether or not packets are arriving.
+   * @param now The current time in {@link RobotClock} seconds.
+   */
+  public void update(double now) {
+    // A stall counts once, when it starts. Streams that have never sent anything aren't stalled, just absent.
+    if (!m_timedOut && !Double.isNaN(m_lastPacketTime)
+        && now - m_lastPacketTime > VisionConstants.STREAM_TIMEOUT) {
+      m_timedOut = true;
+      m_timeouts++;
+    }
+
+    if (Double.isNaN(m_lastPublishTime)) {
+      m_lastPublishTime = now;
+      m_packetsAtLastPublish = m_packets;
+      return;
+    }
+    double elapsed = now - m_lastPublishTime;
+    if (elapsed < VisionConstants.STATS_PUBLISH_PERIOD) return;
+
+    if (m_entries == null) {
+      NetworkTable table = NetworkTableInstance.getDefault().getTable("Vision").getSubTable(Integer.toString(m_port));
+      m_entries = new NetworkTableEntry[ENTRY_NAMES.length];
+      for (int i = 0; i < ENTRY_NAMES.length; i++) {
+        m_entries[i] = table.getEntry(ENTRY_NAMES[i]);
+      }
+    }
+
+    m_entries[PACKETS].setDouble(m_packets);
+    m_entries[PARSE_FAILURES].setDouble(m_parseFailures);
+    m_entries[RECEIVE_ERRORS].setDouble(m_receiveErrors);
+    m_entries[DROPPED_FRAMES].setDouble(m_droppedFrames);
+    m_entries[TIMEOUTS].setDouble(m_timeouts);
+    m_entries[RATE].setDouble((m_packets - m_packetsAtLastPublish) / elapsed);
+    m_entries[INTERVAL_P50].setDouble(m_interArrival.getValueAtPercentile(50) * 1e-3);
+    m_entries[INTERVAL_P99].setDouble(m_interArrival.getValueAtPercentile(99) * 1e-3);
+    m_entries[INTERVAL_MAX].setDouble(m_interArrival.getMax() * 1e-3);
+    m_entries[STALLED].setBoolean(m_timedOut);
+
+    m_interArrival.reset();
+    m_lastPublishTime = now;
+    m_packetsAtLastPublish = m_packets;
+  }
+}
@@ -0,0 +1,122 @@
+package frc.robot.util;
+
+/**
+ * An immutable snapshot of one vision frame. Everything in a snapshot came from the same packet, so two commands
+ * reading in the same cycle always agree. Get one from {@link SocketVision#getTarget()} and use its age to decide
+ * whether it is fresh enough to act on.
+ */
+public final class VisionTarget {
+  /** The snapshot returned before any frame has been received. */
+  public static final VisionTarget NONE = new VisionTarget(0, -1, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, 0, 0, 0, SocketVision.NADA);
+
+  // Publication version from SocketVision, used to reuse the snapshot until a new frame arrives
+  final long m_version;
+
+  private final int m_sequence;
+  private final double m_receiveTimestamp;
+  private final double m_captureTimestamp;
+  private final long m_captureTimestampMicros;
+  private final double m_degreesX;
+  private final double m_distance;
+  private final double m_width;
+  private final String m_direction;
+
+  VisionTarget(long version, int sequence, double receiveTimestamp, double captureTimestamp, long captureTimestampMicros,
+      double degreesX, double distance, double width, String direction) {
+    m_version = version;
+    m_sequence = sequence;
+    m_receiveTimestamp = receiveTimestamp;
+    m_captureTimestamp = captureTimestamp;
+    m_captureTimestampMicros = captureTimestampMicros;
+    m_degreesX = degreesX;
+    m_distance = distance;
+    m_width = width;
+    m_direction = direction;
+  }
+
+  /**
+   * @return The frame's sequence number. Binary frames carry their own; text frames are numbered as they arrive.
+   */
+  public int getSequence() {
+    return m_sequence;
+  }
+
+  /**
+   * @return When the frame was received, in {@link RobotClock} seconds.
+   */
+  public double getReceiveTimestamp() {
+    return m_receiveTimestamp;
+  }
+
+  /**
+   * @return When the camera captured the frame, estimated in {@link RobotClock} seconds. Use this (not the receive
+   * timestamp) to line the measurement up with the robot's pose history.
+   */
+  public double getCaptureTimestamp() {
+    return m_captureTimestamp;
+  }
+
+  /**
+   * @return When the frame was captured in microseconds on the co-processor's clock, or 0 for text frames.
+   */
+  public long getCaptureTimestampMicros() {
+    return m_captureTimestampMicros;
+  }
+
+  /**
+   * @return Seconds since the frame was received.
+   */
+  public double getAge() {
+    return RobotClock.now() - m_receiveTimestamp;
+  }
+
+  /**
+   * @return true if the frame was received less than maxAge seconds ago.
+   */
+  public boolean isFresh(double maxAge) {
+    return getAge() < maxAge;
+  }
+
+  /**
+   * @return true if the co-processor reported a target in this frame.
+   */
+  public boolean hasTarget() {
+    return m_direction != SocketVision.NADA;
+  }
+
+  /**
+   * @return The x error from 0 in camera units. Can be positive or negative depending on whether the target
+   * is left or right of center.
+   */
+  public double getDegreesX() {
+    return m_degreesX;
+  }
+
+  /**
+   * @return The distance from the camera in camera units, calculated from target height.
+   */
+  public double getDistance() {
+    return m_distance;
+  }
+
+  public double getWidth() {
+    return m_width;
+  }
+
+  /**
+   * @return One of {@link SocketVision#NADA}, {@link SocketVision#LEFT}, {@link SocketVision#CENTER} or
+   * {@link SocketVision#RIGHT}.
+   */
+  public String getDirection() {
+    return m_direction;
+  }
+
+  /**
+   * Copy this frame with a corrected measurement, e.g. after re-projecting it to the robot's current pose.
+   * The copy keeps this frame's sequence number and timestamps.
+   */
+  public VisionTarget withMeasurement(double degreesX, double distance) {
+    return new VisionTarget(m_version, m_sequence, m_receiveTimestamp, m_captureTimestamp, m_captureTimestampMicros,
+        degreesX, distance, m_width, m_direction);
+  }
+}
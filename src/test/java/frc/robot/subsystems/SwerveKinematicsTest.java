@@ -0,0 +1,144 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks SwerveKinematics against the drive math it replaced in SwerveDriveSubsystem.holonomicDrive() and
+ * SwerveDriveModule.setTargetAngle(), copied here as it was.
+ */
+public class SwerveKinematicsTest {
+    private static final int CASES = 2_000_000;
+    private static final double WHEELBASE = 22;
+    private static final double TRACKWIDTH = 19.5;
+
+    // The old setTargetAngle() with the sensor read and motor writes taken out: {setpoint rotations, 1 if inverted}
+    private static double[] oldSetTargetAngle(double targetAngle, double zeroOffset, double currentAngle) {
+        targetAngle %= 360;
+        targetAngle += zeroOffset;
+
+        double currentAngleMod = currentAngle % 360;
+        if (currentAngleMod < 0) currentAngleMod += 360;
+
+        double delta = currentAngleMod - targetAngle;
+
+        if (delta > 180) {
+            targetAngle += 360;
+        } else if (delta < -180) {
+            targetAngle -= 360;
+        }
+
+        boolean inverted;
+        delta = currentAngleMod - targetAngle;
+        if (delta > 90 || delta < -90) {
+            if (delta > 90)
+                targetAngle += 180;
+            else if (delta < -90)
+                targetAngle -= 180;
+            inverted = false;
+        } else {
+            inverted = true;
+        }
+
+        targetAngle += currentAngle - currentAngleMod;
+
+        targetAngle = targetAngle / 360.0;
+        return new double[] { targetAngle, inverted ? 1 : 0 };
+    }
+
+    // The old holonomicDrive() up to the module writes: {angles[4], speeds[4]}
+    private static double[] oldHolonomicDrive(double forward, double strafe, double rotation, double gyroAngle, boolean fieldOriented) {
+        if (fieldOriented) {
+            double angleRad = Math.toRadians(gyroAngle);
+            double temp = forward * Math.cos(angleRad) +
+                    strafe * Math.sin(angleRad);
+            strafe = -forward * Math.sin(angleRad) + strafe * Math.cos(angleRad);
+            forward = temp;
+        }
+
+        double a = strafe - rotation * (WHEELBASE / TRACKWIDTH);
+        double b = strafe + rotation * (WHEELBASE / TRACKWIDTH);
+        double c = forward - rotation * (TRACKWIDTH / WHEELBASE);
+        double d = forward + rotation * (TRACKWIDTH / WHEELBASE);
+
+        return new double[] {
+                Math.atan2(b, c) * 180 / Math.PI,
+                Math.atan2(b, d) * 180 / Math.PI,
+                Math.atan2(a, d) * 180 / Math.PI,
+                Math.atan2(a, c) * 180 / Math.PI,
+                Math.sqrt(b * b + c * c),
+                Math.sqrt(b * b + d * d),
+                Math.sqrt(a * a + d * d),
+                Math.sqrt(a * a + c * c)
+        };
+    }
+
+    @Test
+    public void moduleSetpointMatchesOldSetTargetAngle() {
+        Random random = new Random(9);
+        SwerveKinematics.ModuleSetpoint setpoint = new SwerveKinematics.ModuleSetpoint();
+        for (int i = 0; i < CASES; i++) {
+            // holonomicDrive() sends atan2 angles plus 180; every other case lands exactly on a multiple of 45
+            // degrees, where the turn and reverse boundaries are
+            double targetAngle = i % 2 == 0 ? random.nextDouble() * 720 - 180 : (random.nextInt(17) - 4) * 45;
+            double zeroOffset = random.nextDouble() * 360;
+            double currentAngle = i % 2 == 0 ? random.nextDouble() * 2160 - 1080 : (random.nextInt(49) - 24) * 45 + zeroOffset;
+
+            double[] expected = oldSetTargetAngle(targetAngle, zeroOffset, currentAngle);
+            SwerveKinematics.moduleSetpoint(targetAngle, zeroOffset, currentAngle, setpoint);
+            if (Double.doubleToLongBits(expected[0]) != Double.doubleToLongBits(setpoint.getRotations())
+                    || (expected[1] == 1) != setpoint.isDriveInverted()) {
+                fail("Setpoint " + setpoint.getRotations() + (setpoint.isDriveInverted() ? " inverted" : "") + " for "
+                        + targetAngle + ", " + zeroOffset + ", " + currentAngle + "; was " + expected[0]
+                        + (expected[1] == 1 ? " inverted" : ""));
+            }
+        }
+    }
+
+    @Test
+    public void calculateMatchesOldHolonomicDrive() {
+        Random random = new Random(10);
+        SwerveKinematics kinematics = new SwerveKinematics(WHEELBASE, TRACKWIDTH);
+        SwerveModuleStates states = new SwerveModuleStates();
+        for (int i = 0; i < CASES; i++) {
+            double forward = random.nextDouble() * 2 - 1;
+            double strafe = random.nextDouble() * 2 - 1;
+            double rotation = random.nextDouble() * 2 - 1;
+            double gyroAngle = random.nextDouble() * 1440 - 720;
+            boolean fieldOriented = random.nextBoolean();
+
+            double[] expected = oldHolonomicDrive(forward, strafe, rotation, gyroAngle, fieldOriented);
+            kinematics.calculate(forward, strafe, rotation, gyroAngle, fieldOriented, states);
+
+            // The old code found the fastest module and didn't use it; now every speed is scaled down together
+            double max = Math.max(Math.max(expected[4], expected[5]), Math.max(expected[6], expected[7]));
+            double scale = max > 1 ? 1 / max : 1;
+            for (int m = 0; m < SwerveModuleStates.MODULE_COUNT; m++) {
+                assertEquals(expected[m], states.getAngle(m), 1e-12);
+                assertEquals(expected[4 + m] * scale, states.getSpeed(m), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void normalizeLeavesSpeedsInRangeAlone() {
+        SwerveKinematics kinematics = new SwerveKinematics(WHEELBASE, TRACKWIDTH);
+        SwerveModuleStates states = new SwerveModuleStates();
+        kinematics.calculate(0.3, 0.4, 0, 0, false, states);
+        for (int m = 0; m < SwerveModuleStates.MODULE_COUNT; m++) {
+            assertEquals(0.5, states.getSpeed(m), 1e-12);
+        }
+
+        // Driving and turning at full output: the fastest module is at full output and the rest keep their share
+        kinematics.calculate(1, 0, 1, 0, false, states);
+        double[] unscaled = oldHolonomicDrive(1, 0, 1, 0, false);
+        double max = Math.max(Math.max(unscaled[4], unscaled[5]), Math.max(unscaled[6], unscaled[7]));
+        for (int m = 0; m < SwerveModuleStates.MODULE_COUNT; m++) {
+            assertEquals(unscaled[4 + m] / max, states.getSpeed(m), 1e-12);
+        }
+    }
+}
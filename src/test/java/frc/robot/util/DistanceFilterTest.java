@@ -0,0 +1,68 @@
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DistanceFilterTest {
+  @Test
+  public void startsFromTheFirstMeasurement() {
+    DistanceFilter filter = new DistanceFilter(3, 0.5);
+    assertFalse(filter.hasValue());
+    assertEquals(0, filter.get(), 0);
+    assertEquals(120, filter.calculate(120, 10.0), 0);
+    assertTrue(filter.hasValue());
+    assertEquals(120, filter.get(), 0);
+  }
+
+  @Test
+  public void medianThrowsOutASingleBadFrame() {
+    DistanceFilter filter = new DistanceFilter(3, 0);
+    filter.calculate(100, 0.0);
+    filter.calculate(100, 0.1);
+    assertEquals(100, filter.calculate(400, 0.2), 0);
+    assertEquals(100, filter.calculate(100, 0.3), 0);
+  }
+
+  @Test
+  public void smoothsWithTheTimeBetweenMeasurements() {
+    DistanceFilter once = new DistanceFilter(1, 0.5);
+    once.calculate(100, 0);
+    // One time constant moves it 1 - 1/e of the way
+    assertEquals(100 + 100 * (1 - Math.exp(-1)), once.calculate(200, 0.5), 1e-9);
+
+    // Two frames half as far apart end up in the same place
+    DistanceFilter twice = new DistanceFilter(1, 0.5);
+    twice.calculate(100, 0);
+    twice.calculate(200, 0.25);
+    assertEquals(once.get(), twice.calculate(200, 0.5), 1e-9);
+  }
+
+  @Test
+  public void ignoresTimeGoingBackwards() {
+    DistanceFilter filter = new DistanceFilter(1, 0.5);
+    filter.calculate(100, 1.0);
+    assertEquals(100, filter.calculate(200, 0.5), 0);
+  }
+
+  @Test
+  public void zeroTimeConstantFollowsTheMedian() {
+    DistanceFilter filter = new DistanceFilter(1, 0);
+    filter.calculate(100, 0);
+    assertEquals(150, filter.calculate(150, 0.02), 0);
+  }
+
+  @Test
+  public void resetStartsOver() {
+    DistanceFilter filter = new DistanceFilter(3, 0.5);
+    filter.calculate(100, 0);
+    filter.calculate(100, 0.1);
+    filter.reset();
+    assertFalse(filter.hasValue());
+    assertEquals(0, filter.get(), 0);
+    // The old measurements are gone from the median too
+    assertEquals(300, filter.calculate(300, 0.2), 0);
+  }
+}
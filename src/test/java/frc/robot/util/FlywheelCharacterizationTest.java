@@ -0,0 +1,115 @@
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FlywheelCharacterizationTest {
+  // A thrower-like wheel in volts and RPM
+  private static final double kS = 0.25;
+  private static final double kV = 0.0021;
+  private static final double kA = 0.0004;
+  private static final double PERIOD = 0.005;
+  private static final int RAMP = CharacterizationSampler.RAMP;
+  private static final int STEP = CharacterizationSampler.STEP;
+
+  @Rule
+  public TemporaryFolder m_folder = new TemporaryFolder();
+
+  // A quasistatic ramp then a voltage step from rest, through the model's exact discrete form, with optional
+  // Gaussian noise on the measured velocity
+  private static FlywheelCharacterization.Recording run(double velocityNoise, long seed) {
+    Random random = new Random(seed);
+    double alpha = Math.exp(-kV * PERIOD / kA);
+    double beta = (1 - alpha) / kV;
+    FlywheelCharacterization.Recording recording = new FlywheelCharacterization.Recording(8000);
+    double time = 0;
+    for (int phase = RAMP; phase <= STEP; phase++) {
+      double velocity = 0;
+      for (int k = 0; k < 3000; k++) {
+        double volts = phase == RAMP ? 0.25 * k * PERIOD : 6;
+        recording.add(time, volts, velocity + velocityNoise * random.nextGaussian(), phase);
+        // Static friction holds it until the voltage overcomes it
+        if (velocity > 0 || volts > kS) {
+          velocity = alpha * velocity + beta * (volts - kS);
+        }
+        time += PERIOD;
+      }
+      // The gap between phases
+      time += 1;
+    }
+    return recording;
+  }
+
+  // Each phase starts from rest, so stepping across the gap between them would spoil the fit
+  @Test
+  public void recoversTheModelExactly() {
+    FlywheelCharacterization.Fit fit = FlywheelCharacterization.fit(run(0, 0), 50);
+    assertEquals(kS, fit.getKS(), 1e-6);
+    assertEquals(kV, fit.getKV(), 1e-9);
+    assertEquals(kA, fit.getKA(), 1e-9);
+    assertEquals(0, fit.getRMSError(), 1e-6);
+  }
+
+  @Test
+  public void toleratesVelocityNoise() {
+    FlywheelCharacterization.Fit fit = FlywheelCharacterization.fit(run(5, 22), 50);
+    assertEquals(kS, fit.getKS(), kS * 0.1);
+    assertEquals(kV, fit.getKV(), kV * 0.05);
+    assertEquals(kA, fit.getKA(), kA * 0.1);
+    // About the noise, since the model is right
+    assertEquals(5 * Math.sqrt(2), fit.getRMSError(), 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAWheelThatNeverMoves() {
+    FlywheelCharacterization.Recording recording = new FlywheelCharacterization.Recording(100);
+    for (int k = 0; k < 100; k++) {
+      recording.add(k * PERIOD, 0.1, 0, RAMP);
+    }
+    FlywheelCharacterization.fit(recording, 50);
+  }
+
+  @Test
+  public void recommendsGainsFromTheModel() {
+    FlywheelCharacterization.Fit fit = FlywheelCharacterization.fit(run(0, 0), 50);
+    assertEquals(kV / 12, fit.getRecommendedFF(12), 1e-12);
+    assertEquals((kA / 0.1 - kV) / 12, fit.getRecommendedKP(12, 0.1), 1e-9);
+    // A wheel that is already faster than asked for needs no kP
+    assertEquals(0, fit.getRecommendedKP(12, 10), 0);
+  }
+
+  @Test
+  public void recordingDropsSamplesWhenFull() {
+    FlywheelCharacterization.Recording recording = new FlywheelCharacterization.Recording(2);
+    assertTrue(recording.add(0, 1, 2, RAMP));
+    assertTrue(recording.add(1, 1, 2, RAMP));
+    assertFalse(recording.add(2, 1, 2, RAMP));
+    assertEquals(2, recording.size());
+    recording.clear();
+    assertEquals(0, recording.size());
+  }
+
+  @Test
+  public void csvRoundTrips() throws IOException {
+    FlywheelCharacterization.Recording recording = run(5, 3);
+    Path file = m_folder.getRoot().toPath().resolve("characterization.csv");
+    recording.writeCsv(file);
+    FlywheelCharacterization.Recording read = FlywheelCharacterization.Recording.readCsv(file);
+    assertEquals(recording.size(), read.size());
+
+    FlywheelCharacterization.Fit expected = FlywheelCharacterization.fit(recording, 50);
+    FlywheelCharacterization.Fit actual = FlywheelCharacterization.fit(read, 50);
+    assertEquals(expected.getKS(), actual.getKS(), 0);
+    assertEquals(expected.getKV(), actual.getKV(), 0);
+    assertEquals(expected.getKA(), actual.getKA(), 0);
+  }
+}
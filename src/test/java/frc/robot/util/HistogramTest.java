@@ -0,0 +1,90 @@
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HistogramTest {
+  @Test
+  public void emptyHistogramReadsZero() {
+    Histogram histogram = new Histogram(5, 1_000_000);
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getMean(), 0);
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  @Test
+  public void smallValuesAreExact() {
+    Histogram histogram = new Histogram(5, 1_000_000);
+    for (long value = 0; value < 32; value++) {
+      histogram.record(value);
+    }
+    assertEquals(32, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(31, histogram.getMax());
+    assertEquals(15.5, histogram.getMean(), 1e-12);
+    assertEquals(0, histogram.getValueAtPercentile(0));
+    assertEquals(15, histogram.getValueAtPercentile(50));
+    assertEquals(31, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void percentilesAreWithinBucketPrecision() {
+    Random random = new Random(6);
+    long[] values = new long[20_000];
+    Histogram histogram = new Histogram(5, 10_000_000);
+    for (int i = 0; i < values.length; i++) {
+      // Spread over several powers of two, like loop times in microseconds
+      values[i] = (long) Math.exp(random.nextDouble() * Math.log(5_000_000));
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    assertEquals(values[0], histogram.getMin());
+    assertEquals(values[values.length - 1], histogram.getMax());
+    assertEquals(Arrays.stream(values).average().getAsDouble(), histogram.getMean(), 1e-6);
+    for (double percentile : new double[] { 1, 10, 50, 90, 99, 99.9, 100 }) {
+      long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+      long reported = histogram.getValueAtPercentile(percentile);
+      // The top of the value's bucket: never under it, and over by at most one sub-bucket (1/16 with 5 bits)
+      assertTrue(percentile + "th was " + reported + ", not " + exact, reported >= exact && reported <= exact + exact / 16 + 1);
+    }
+  }
+
+  @Test
+  public void clampsOutOfRangeValues() {
+    Histogram histogram = new Histogram(5, 1000);
+    histogram.record(-5);
+    histogram.record(1_000_000);
+    assertEquals(2, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(1_000_000, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    assertTrue(histogram.getValueAtPercentile(100) >= 1000);
+  }
+
+  @Test
+  public void resetForgetsEverything() {
+    Histogram histogram = new Histogram(5, 1_000_000);
+    histogram.record(100);
+    histogram.record(200_000);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(100));
+    histogram.record(7);
+    assertEquals(7, histogram.getMin());
+    assertEquals(7, histogram.getValueAtPercentile(50));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTooManySignificantBits() {
+    new Histogram(17, 1000);
+  }
+}
@@ -0,0 +1,127 @@
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShotTableTest {
+  private static final double[] DISTANCES = { 60, 120, 150, 240, 300 };
+  // Flat in the middle and steep at the far end, where a plain cubic spline overshoots
+  private static final double[] RPMS = { 2500, 3000, 3000, 3400, 5200 };
+
+  @Rule
+  public TemporaryFolder m_folder = new TemporaryFolder();
+
+  @Test
+  public void passesThroughEveryRow() {
+    ShotTable table = new ShotTable(DISTANCES, RPMS);
+    assertEquals(DISTANCES.length, table.size());
+    for (int i = 0; i < DISTANCES.length; i++) {
+      assertEquals(RPMS[i], table.get(DISTANCES[i]), 1e-9);
+    }
+  }
+
+  @Test
+  public void risesMonotonicallyBetweenRows() {
+    ShotTable table = new ShotTable(DISTANCES, RPMS);
+    double last = table.get(DISTANCES[0]);
+    for (double distance = DISTANCES[0]; distance <= DISTANCES[DISTANCES.length - 1]; distance += 0.25) {
+      double rpm = table.get(distance);
+      assertTrue("Speed fell to " + rpm + " at " + distance, rpm >= last - 1e-9);
+      last = rpm;
+    }
+  }
+
+  @Test
+  public void staysBetweenNeighbouringRows() {
+    ShotTable table = new ShotTable(DISTANCES, RPMS);
+    for (int i = 0; i + 1 < DISTANCES.length; i++) {
+      double low = Math.min(RPMS[i], RPMS[i + 1]);
+      double high = Math.max(RPMS[i], RPMS[i + 1]);
+      for (double t = 0; t <= 1; t += 0.01) {
+        double rpm = table.get(DISTANCES[i] + t * (DISTANCES[i + 1] - DISTANCES[i]));
+        assertTrue("Overshot to " + rpm + " between rows " + i + " and " + (i + 1), rpm >= low - 1e-9 && rpm <= high + 1e-9);
+      }
+    }
+  }
+
+  @Test
+  public void clampsAtBothEnds() {
+    ShotTable table = new ShotTable(DISTANCES, RPMS);
+    assertEquals(RPMS[0], table.get(0), 0);
+    assertEquals(RPMS[0], table.get(-50), 0);
+    assertEquals(RPMS[0], table.get(Double.NaN), 0);
+    assertEquals(RPMS[RPMS.length - 1], table.get(1000), 0);
+    assertEquals(RPMS[RPMS.length - 1], table.get(Double.POSITIVE_INFINITY), 0);
+  }
+
+  @Test
+  public void maxRPMIsTheFastestRow() {
+    assertEquals(5200, new ShotTable(DISTANCES, RPMS).getMaxRPM(), 0);
+    assertEquals(3000, new ShotTable(new double[] { 60, 120 }, new double[] { 3000, 2000 }).getMaxRPM(), 0);
+  }
+
+  @Test
+  public void singleRowIsConstant() {
+    ShotTable table = new ShotTable(new double[] { 100 }, new double[] { 4000 });
+    assertEquals(4000, table.get(0), 0);
+    assertEquals(4000, table.get(100), 0);
+    assertEquals(4000, table.get(500), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRepeatedDistances() {
+    new ShotTable(new double[] { 60, 60 }, new double[] { 2500, 2600 });
+  }
+
+  @Test
+  public void loadSkipsCommentsAndBlankLinesAndSorts() throws IOException {
+    File file = write("# distance, rpm",
+        "",
+        "  # indented comment, 1, 2",
+        "150, 3000",
+        "60,2500",
+        "   ",
+        "120 , 3000",
+        "300, 5200",
+        "240, 3400");
+    ShotTable table = ShotTable.load(file.toPath());
+    ShotTable expected = new ShotTable(DISTANCES, RPMS);
+    assertEquals(DISTANCES.length, table.size());
+    for (double distance = 0; distance <= 350; distance += 5) {
+      assertEquals(expected.get(distance), table.get(distance), 0);
+    }
+  }
+
+  @Test
+  public void loadReportsTheBadLine() throws IOException {
+    File file = write("# header", "60, 2500", "120; 3000");
+    try {
+      ShotTable.load(file.toPath());
+      fail("Loaded a table with a bad line");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("line 3"));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void loadRejectsAnEmptyTable() throws IOException {
+    ShotTable.load(write("# nothing but comments").toPath());
+  }
+
+  private File write(String... lines) throws IOException {
+    File file = m_folder.newFile("shot-table.csv");
+    Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    return file;
+  }
+}
@@ -0,0 +1,100 @@
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class TelemetryDecoderTest {
+  private static final int CAPACITY = 5;
+  // Sequence, time, one double and one boolean
+  private static final int RECORD_SIZE = TelemetryRecorder.RECORD_HEADER_SIZE + Double.BYTES + 1;
+
+  // A file in TelemetryRecorder's layout with a double channel "speed" and a boolean channel "ready, set"
+  private static ByteBuffer file() {
+    byte[] speed = "speed".getBytes(StandardCharsets.UTF_8);
+    byte[] ready = "ready, set".getBytes(StandardCharsets.UTF_8);
+    int headerSize = TelemetryRecorder.MAGIC.length + 5 * Integer.BYTES
+        + 2 * (1 + Integer.BYTES + Short.BYTES) + speed.length + ready.length;
+    int dataOffset = (headerSize + 7) & ~7;
+
+    ByteBuffer buffer = ByteBuffer.allocate(dataOffset + CAPACITY * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(TelemetryRecorder.MAGIC);
+    buffer.putInt(TelemetryRecorder.VERSION);
+    buffer.putInt(RECORD_SIZE);
+    buffer.putInt(CAPACITY);
+    buffer.putInt(dataOffset);
+    buffer.putInt(2);
+    buffer.put(TelemetryRecorder.TYPE_DOUBLE).putInt(1).putShort((short) speed.length).put(speed);
+    buffer.put(TelemetryRecorder.TYPE_BOOLEAN).putInt(1).putShort((short) ready.length).put(ready);
+    buffer.position(dataOffset);
+    return buffer;
+  }
+
+  // Write a record the way TelemetryRecorder does, into the slot its sequence number lands in
+  private static void putRecord(ByteBuffer buffer, int dataOffset, long sequence, boolean complete) {
+    int offset = dataOffset + (int) ((sequence - 1) % CAPACITY) * RECORD_SIZE;
+    buffer.putLong(offset, complete ? sequence : 0);
+    buffer.putDouble(offset + Long.BYTES, sequence * 0.02);
+    buffer.putDouble(offset + TelemetryRecorder.RECORD_HEADER_SIZE, sequence * 10.0);
+    buffer.put(offset + TelemetryRecorder.RECORD_HEADER_SIZE + Double.BYTES, (byte) (sequence % 2));
+  }
+
+  private static String[] decode(ByteBuffer buffer) throws IOException {
+    buffer.position(0);
+    StringWriter writer = new StringWriter();
+    TelemetryDecoder.decode(buffer, writer);
+    return writer.toString().split(System.lineSeparator());
+  }
+
+  @Test
+  public void writesHeaderOnlyForEmptyFile() throws IOException {
+    String[] lines = decode(file());
+    assertEquals(1, lines.length);
+    assertEquals("sequence,time,speed,\"ready, set\"", lines[0]);
+  }
+
+  @Test
+  public void writesPartlyFilledRingInOrder() throws IOException {
+    ByteBuffer buffer = file();
+    int dataOffset = buffer.position();
+    for (long sequence = 1; sequence <= 3; sequence++) {
+      putRecord(buffer, dataOffset, sequence, true);
+    }
+
+    String[] lines = decode(buffer);
+    assertEquals(4, lines.length);
+    assertEquals("1,0.02,10.0,1", lines[1]);
+    assertEquals("3,0.06,30.0,1", lines[3]);
+  }
+
+  @Test
+  public void startsWrappedRingFromOldestRecord() throws IOException {
+    ByteBuffer buffer = file();
+    int dataOffset = buffer.position();
+    // 12 records into a ring of 5: slots hold 11, 12, 8, 9, 10, and 13 was being written over 8
+    for (long sequence = 1; sequence <= 12; sequence++) {
+      putRecord(buffer, dataOffset, sequence, true);
+    }
+    putRecord(buffer, dataOffset, 13, false);
+
+    String[] lines = decode(buffer);
+    assertEquals(5, lines.length);
+    for (int i = 1; i < lines.length; i++) {
+      long sequence = 8 + i;
+      assertEquals(sequence + "," + sequence * 0.02 + "," + sequence * 10.0 + "," + sequence % 2, lines[i]);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsOtherFiles() throws IOException {
+    ByteBuffer buffer = file();
+    buffer.put(0, (byte) 'X');
+    decode(buffer);
+  }
+}
@@ -0,0 +1,89 @@
+package frc.robot.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import frc.robot.Constants.TelemetryConstants;
+
+public class TelemetryRecorderTest {
+  private static final int CAPACITY = 4;
+  private static final int RECORDS = 10;
+
+  @Rule
+  public TemporaryFolder m_folder = new TemporaryFolder();
+
+  // The recorder is static and starts once per JVM, so the whole round trip is one test
+  @Test
+  public void roundTripsThroughDecoder() throws IOException {
+    TelemetryRecorder.DoubleChannel speed = TelemetryRecorder.addDouble("test/speed");
+    TelemetryRecorder.BooleanChannel ready = TelemetryRecorder.addBoolean("test/ready");
+    TelemetryRecorder.DoubleArrayChannel modules = TelemetryRecorder.addDoubleArray("test/modules", 2);
+
+    // Logs from an earlier boot under the names this one could pick, as when the clock hasn't been set
+    byte[] oldLog = new byte[4096];
+    Arrays.fill(oldLog, (byte) 0x5a);
+    long now = System.currentTimeMillis();
+    File[] oldFiles = new File[3];
+    for (int i = 0; i < oldFiles.length; i++) {
+      oldFiles[i] = new File(m_folder.getRoot(), TelemetryConstants.FILE_PREFIX
+          + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(now + i * 1000)) + TelemetryConstants.FILE_SUFFIX);
+      Files.write(oldFiles[i].toPath(), oldLog);
+    }
+
+    TelemetryRecorder.start(m_folder.getRoot(), CAPACITY);
+
+    for (int i = 1; i <= RECORDS; i++) {
+      speed.set(i * 1.5);
+      ready.set(i % 3 == 0);
+      modules.set(new double[] { i, -i });
+      TelemetryRecorder.record();
+    }
+    TelemetryRecorder.flush();
+
+    // The old logs are left alone and ours is a new file beside them
+    for (File oldFile : oldFiles) {
+      assertArrayEquals(oldLog, Files.readAllBytes(oldFile.toPath()));
+    }
+    List<File> oldList = Arrays.asList(oldFiles);
+    File[] files = m_folder.getRoot().listFiles((dir, name) -> name.endsWith(TelemetryConstants.FILE_SUFFIX)
+        && !oldList.contains(new File(dir, name)));
+    assertEquals(1, files.length);
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(files[0].toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    StringWriter writer = new StringWriter();
+    assertEquals(CAPACITY, TelemetryDecoder.decode(buffer, writer));
+
+    // Only the last CAPACITY records survive, oldest first
+    String[] lines = writer.toString().split(System.lineSeparator());
+    assertEquals(CAPACITY + 1, lines.length);
+    assertEquals("sequence,time,test/speed,test/ready,test/modules[0],test/modules[1]", lines[0]);
+    double lastTime = -1;
+    for (int row = 1; row < lines.length; row++) {
+      int i = RECORDS - CAPACITY + row;
+      String[] fields = lines[row].split(",");
+      assertEquals(Integer.toString(i), fields[0]);
+      double time = Double.parseDouble(fields[1]);
+      assertTrue(time >= lastTime);
+      lastTime = time;
+      assertEquals(i * 1.5, Double.parseDouble(fields[2]), 0);
+      assertEquals(i % 3 == 0 ? "1" : "0", fields[3]);
+      assertEquals(i, Double.parseDouble(fields[4]), 0);
+      assertEquals(-i, Double.parseDouble(fields[5]), 0);
+    }
+  }
+}
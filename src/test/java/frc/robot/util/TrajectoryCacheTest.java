@@ -0,0 +1,138 @@
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import frc.robot.Constants.TrajectoryConstants;
+
+public class TrajectoryCacheTest {
+  private static final long FINGERPRINT = 0x1234_5678_9ABCL;
+
+  @Rule
+  public TemporaryFolder m_folder = new TemporaryFolder();
+
+  private final TrajectoryGenerator m_generator = new TrajectoryGenerator(120, 66, 22, 19.5, 0.02);
+
+  private Trajectory generate() {
+    return m_generator.generate(new double[] { 0, 60, 120 }, new double[] { 0, 10, 40 }, new double[] { 0, 45, 90 });
+  }
+
+  private static void assertSameSamples(Trajectory expected, Trajectory actual) {
+    assertEquals(expected.size(), actual.size());
+    assertEquals(expected.getPeriod(), actual.getPeriod(), 0);
+    for (int k = 0; k < expected.size(); k++) {
+      for (int field = 0; field < Trajectory.STRIDE; field++) {
+        assertEquals(expected.get(k, field), actual.get(k, field), 0);
+      }
+    }
+  }
+
+  private static void assertMapFails(Path file, long fingerprint) {
+    try {
+      TrajectoryCache.map(file, fingerprint);
+      fail("Mapped " + file);
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  private Path waypoints(String... lines) throws IOException {
+    File file = m_folder.newFile("path.csv");
+    Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    return file.toPath();
+  }
+
+  @Test
+  public void mapReadsWhatWriteWrote() throws IOException {
+    Trajectory trajectory = generate();
+    Path file = m_folder.getRoot().toPath().resolve("path.traj");
+    TrajectoryCache.write(trajectory, FINGERPRINT, file);
+    assertEquals(32 + trajectory.size() * Trajectory.STRIDE * Double.BYTES, Files.size(file));
+    assertSameSamples(trajectory, TrajectoryCache.map(file, FINGERPRINT));
+  }
+
+  @Test
+  public void writeReplacesAnOldCache() throws IOException {
+    Path file = m_folder.getRoot().toPath().resolve("path.traj");
+    TrajectoryCache.write(m_generator.generate(new double[] { 0, 10 }, new double[] { 0, 0 }, new double[] { 0, 0 }),
+        FINGERPRINT, file);
+    Trajectory trajectory = generate();
+    TrajectoryCache.write(trajectory, FINGERPRINT, file);
+    assertSameSamples(trajectory, TrajectoryCache.map(file, FINGERPRINT));
+  }
+
+  @Test
+  public void mapRejectsOtherFingerprint() throws IOException {
+    Path file = m_folder.getRoot().toPath().resolve("path.traj");
+    TrajectoryCache.write(generate(), FINGERPRINT, file);
+    assertMapFails(file, FINGERPRINT + 1);
+  }
+
+  @Test
+  public void mapRejectsWrongLength() throws IOException {
+    Path file = m_folder.getRoot().toPath().resolve("path.traj");
+    TrajectoryCache.write(generate(), FINGERPRINT, file);
+    byte[] bytes = Files.readAllBytes(file);
+
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - Double.BYTES));
+    assertMapFails(file, FINGERPRINT);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length + Double.BYTES));
+    assertMapFails(file, FINGERPRINT);
+    Files.write(file, Arrays.copyOf(bytes, 20));
+    assertMapFails(file, FINGERPRINT);
+  }
+
+  @Test
+  public void mapRejectsOtherFiles() throws IOException {
+    Path file = m_folder.getRoot().toPath().resolve("path.traj");
+    TrajectoryCache.write(generate(), FINGERPRINT, file);
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[0] ^= 1;
+    Files.write(file, bytes);
+    assertMapFails(file, FINGERPRINT);
+
+    Files.write(file, new byte[0]);
+    assertMapFails(file, FINGERPRINT);
+  }
+
+  @Test
+  public void cacheNameReplacesTheExtension() {
+    assertEquals("drive-off-line" + TrajectoryConstants.CACHE_EXTENSION,
+        TrajectoryCache.cacheName(m_folder.getRoot().toPath().resolve("drive-off-line.csv")));
+  }
+
+  @Test
+  public void loadUsesAMatchingCache() throws IOException {
+    Path path = waypoints("0, 0, 0", "60, 0, 0");
+    // A cache holding some other trajectory, under the waypoints' fingerprint, shows where load() read from
+    Trajectory cached = generate();
+    TrajectoryCache.write(cached, m_generator.fingerprint(Files.readAllBytes(path)),
+        path.resolveSibling(TrajectoryCache.cacheName(path)));
+    assertSameSamples(cached, TrajectoryCache.load(m_generator, path));
+  }
+
+  @Test
+  public void loadGeneratesWhenTheCacheIsStale() throws IOException {
+    Path path = waypoints("0, 0, 0", "60, 0, 0");
+    TrajectoryCache.write(generate(), m_generator.fingerprint(Files.readAllBytes(path)) + 1,
+        path.resolveSibling(TrajectoryCache.cacheName(path)));
+    assertSameSamples(m_generator.load(path), TrajectoryCache.load(m_generator, path));
+  }
+
+  @Test
+  public void loadGeneratesWithoutACache() throws IOException {
+    Path path = waypoints("0, 0, 0", "60, 0, 0");
+    assertSameSamples(m_generator.load(path), TrajectoryCache.load(m_generator, path));
+  }
+}
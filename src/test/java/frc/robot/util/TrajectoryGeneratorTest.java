@@ -0,0 +1,238 @@
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import frc.robot.subsystems.SwerveKinematics;
+import frc.robot.subsystems.SwerveModuleStates;
+
+public class TrajectoryGeneratorTest {
+  private static final double MAX_VELOCITY = 120;
+  private static final double MAX_ACCELERATION = 66;
+  private static final double PERIOD = 0.02;
+
+  // An S through three waypoints, turning all the way around on the way
+  private static final double[] X = { 0, 60, 120, 120 };
+  private static final double[] Y = { 0, 0, 40, 90 };
+  private static final double[] HEADING = { 0, 0, 90, 180 };
+
+  @Rule
+  public TemporaryFolder m_folder = new TemporaryFolder();
+
+  private final TrajectoryGenerator m_generator = new TrajectoryGenerator(MAX_VELOCITY, MAX_ACCELERATION, 22, 19.5, PERIOD);
+
+  private static double speed(Trajectory trajectory, int sample) {
+    return Math.hypot(trajectory.get(sample, Trajectory.VX), trajectory.get(sample, Trajectory.VY));
+  }
+
+  @Test
+  public void startsAndEndsAtRestOnTheWaypoints() {
+    Trajectory trajectory = m_generator.generate(X, Y, HEADING);
+    int last = trajectory.size() - 1;
+    assertEquals(0, trajectory.get(0, Trajectory.X), 1e-9);
+    assertEquals(0, trajectory.get(0, Trajectory.Y), 1e-9);
+    assertEquals(0, trajectory.get(0, Trajectory.HEADING), 1e-9);
+    assertEquals(0, speed(trajectory, 0), 1e-9);
+    assertEquals(120, trajectory.get(last, Trajectory.X), 1e-6);
+    assertEquals(90, trajectory.get(last, Trajectory.Y), 1e-6);
+    assertEquals(180, trajectory.get(last, Trajectory.HEADING), 1e-6);
+    assertEquals(0, speed(trajectory, last), 1e-6);
+    assertEquals(0, trajectory.get(last, Trajectory.OMEGA), 1e-6);
+  }
+
+  @Test
+  public void samplesAreEvenlySpaced() {
+    Trajectory trajectory = m_generator.generate(X, Y, HEADING);
+    assertEquals(PERIOD, trajectory.getPeriod(), 0);
+    for (int k = 0; k < trajectory.size(); k++) {
+      assertEquals(k * PERIOD, trajectory.get(k, Trajectory.TIME), 1e-9);
+    }
+  }
+
+  @Test
+  public void keepsWheelsUnderTopSpeed() {
+    Trajectory trajectory = m_generator.generate(X, Y, HEADING);
+    double fastest = 0;
+    for (int k = 0; k < trajectory.size(); k++) {
+      for (int m = 0; m < 4; m++) {
+        fastest = Math.max(fastest, trajectory.get(k, Trajectory.MODULE_SPEEDS + m));
+      }
+    }
+    assertTrue("A wheel reached " + fastest, fastest <= MAX_VELOCITY + 1e-6);
+    // And the path is fast enough to be worth following
+    assertTrue("The fastest wheel only reached " + fastest, fastest > MAX_VELOCITY / 2);
+  }
+
+  @Test
+  public void keepsAccelerationUnderLimit() {
+    Trajectory trajectory = m_generator.generate(X, Y, HEADING);
+    for (int k = 1; k < trajectory.size(); k++) {
+      double change = Math.abs(speed(trajectory, k) - speed(trajectory, k - 1)) / PERIOD;
+      assertTrue("Speed changed at " + change + " at sample " + k, change <= MAX_ACCELERATION * 1.01);
+    }
+  }
+
+  @Test
+  public void velocitiesIntegrateToPositions() {
+    Trajectory trajectory = m_generator.generate(X, Y, HEADING);
+    double x = 0;
+    double y = 0;
+    double heading = 0;
+    for (int k = 1; k < trajectory.size(); k++) {
+      x += (trajectory.get(k - 1, Trajectory.VX) + trajectory.get(k, Trajectory.VX)) / 2 * PERIOD;
+      y += (trajectory.get(k - 1, Trajectory.VY) + trajectory.get(k, Trajectory.VY)) / 2 * PERIOD;
+      heading += (trajectory.get(k - 1, Trajectory.OMEGA) + trajectory.get(k, Trajectory.OMEGA)) / 2 * PERIOD;
+      assertEquals("x at sample " + k, trajectory.get(k, Trajectory.X), x, 0.5);
+      assertEquals("y at sample " + k, trajectory.get(k, Trajectory.Y), y, 0.5);
+      assertEquals("heading at sample " + k, trajectory.get(k, Trajectory.HEADING), heading, 0.5);
+    }
+  }
+
+  @Test
+  public void moduleAnglesDontJump() {
+    Trajectory trajectory = m_generator.generate(X, Y, HEADING);
+    for (int k = 1; k < trajectory.size(); k++) {
+      for (int m = 0; m < 4; m++) {
+        double turn = trajectory.get(k, Trajectory.MODULE_ANGLES + m) - trajectory.get(k - 1, Trajectory.MODULE_ANGLES + m);
+        assertTrue("Module " + m + " turned " + turn + " at sample " + k, Math.abs(turn) < 90);
+      }
+    }
+  }
+
+  @Test
+  public void moduleStatesMatchKinematicsOnSquareDrivetrain() {
+    TrajectoryGenerator square = new TrajectoryGenerator(MAX_VELOCITY, MAX_ACCELERATION, 22, 22, PERIOD);
+    assertModuleStatesMatchKinematics(square.generate(X, Y, HEADING), 22, 22);
+  }
+
+  @Test
+  public void moduleStatesMatchKinematicsWithoutTurning() {
+    // SwerveKinematics only approximates turning on a drivetrain that isn't square, so hold the heading
+    Trajectory trajectory = m_generator.generate(X, Y, new double[] { 30, 30, 30, 30 });
+    assertModuleStatesMatchKinematics(trajectory, 22, 19.5);
+  }
+
+  // Work the module states out from each sample's velocity the way SwerveDriveSubsystem.driveVelocity() does
+  private static void assertModuleStatesMatchKinematics(Trajectory trajectory, double wheelbase, double trackwidth) {
+    SwerveKinematics kinematics = new SwerveKinematics(wheelbase, trackwidth);
+    SwerveModuleStates states = new SwerveModuleStates();
+    double rotationRadius = Math.hypot(wheelbase, trackwidth) / 2;
+    // Full output above any wheel speed in the trajectory, so calculate() doesn't normalize
+    double maxSpeed = MAX_VELOCITY * 2;
+    for (int k = 0; k < trajectory.size(); k++) {
+      double heading = Math.toRadians(trajectory.get(k, Trajectory.HEADING));
+      double vx = trajectory.get(k, Trajectory.VX);
+      double vy = trajectory.get(k, Trajectory.VY);
+      double forward = vx * Math.cos(heading) + vy * Math.sin(heading);
+      double left = -vx * Math.sin(heading) + vy * Math.cos(heading);
+      double rotationSpeed = Math.toRadians(trajectory.get(k, Trajectory.OMEGA)) * rotationRadius;
+      kinematics.calculate(forward / maxSpeed, left / maxSpeed, rotationSpeed / maxSpeed / kinematics.getRotationScale(),
+          0, false, states);
+
+      for (int m = 0; m < SwerveModuleStates.MODULE_COUNT; m++) {
+        double speed = states.getSpeed(m) * maxSpeed;
+        assertEquals("Module " + m + " speed at sample " + k, speed, trajectory.get(k, Trajectory.MODULE_SPEEDS + m), 1e-6);
+        // A module that isn't moving has no angle of its own
+        if (speed > 1e-3) {
+          double difference = PoseHistory.wrapDegrees(trajectory.get(k, Trajectory.MODULE_ANGLES + m) - states.getAngle(m));
+          assertEquals("Module " + m + " angle at sample " + k, 0, difference, 1e-6);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void turnsTheShortWayBetweenHeadings() {
+    Trajectory trajectory = m_generator.generate(new double[] { 0, 100 }, new double[] { 0, 0 }, new double[] { 170, -170 });
+    assertEquals(190, trajectory.get(trajectory.size() - 1, Trajectory.HEADING), 1e-6);
+  }
+
+  @Test
+  public void rejectsPathsThatGoNowhere() {
+    double[][][] bad = {
+      { { 0 }, { 0 }, { 0 } },
+      { { 0, 0 }, { 0, 0 }, { 0, 90 } },
+      { { 0, Double.NaN }, { 0, 1 }, { 0, 0 } },
+      { { 0, 1 }, { 0, 1 }, { 0 } },
+    };
+    for (double[][] path : bad) {
+      try {
+        m_generator.generate(path[0], path[1], path[2]);
+        fail("Generated " + Arrays.deepToString(path));
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+  }
+
+  @Test
+  public void loadSkipsCommentsAndMatchesGenerate() throws IOException {
+    File file = write("# x, y, heading", "", "0, 0, 0", "60,0,0", "  # a comment", "120 , 40, 90", "120, 90, 180");
+    Trajectory loaded = m_generator.load(file.toPath());
+    Trajectory generated = m_generator.generate(X, Y, HEADING);
+    assertEquals(generated.size(), loaded.size());
+    for (int k = 0; k < generated.size(); k++) {
+      for (int field = 0; field < Trajectory.STRIDE; field++) {
+        assertEquals(generated.get(k, field), loaded.get(k, field), 0);
+      }
+    }
+  }
+
+  @Test
+  public void loadReportsTheBadLine() throws IOException {
+    File file = write("# x, y, heading", "0, 0, 0", "60, 0");
+    try {
+      m_generator.load(file.toPath());
+      fail("Loaded a path with a bad line");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("line 3"));
+    }
+  }
+
+  @Test
+  public void fingerprintCoversWaypointsAndLimits() {
+    byte[] source = "0, 0, 0\n60, 0, 0\n".getBytes(StandardCharsets.UTF_8);
+    byte[] moved = "0, 0, 0\n61, 0, 0\n".getBytes(StandardCharsets.UTF_8);
+    long fingerprint = m_generator.fingerprint(source);
+    assertEquals(fingerprint, new TrajectoryGenerator(MAX_VELOCITY, MAX_ACCELERATION, 22, 19.5, PERIOD).fingerprint(source));
+    assertNotEquals(fingerprint, m_generator.fingerprint(moved));
+    assertNotEquals(fingerprint, new TrajectoryGenerator(MAX_VELOCITY - 1, MAX_ACCELERATION, 22, 19.5, PERIOD).fingerprint(source));
+    assertNotEquals(fingerprint, new TrajectoryGenerator(MAX_VELOCITY, MAX_ACCELERATION, 22, 22, PERIOD).fingerprint(source));
+  }
+
+  @Test
+  public void sampleInterpolatesAndHoldsTheEnds() {
+    Trajectory trajectory = m_generator.generate(X, Y, HEADING);
+    double[] out = new double[Trajectory.STRIDE];
+
+    trajectory.sample(-1, out);
+    assertEquals(trajectory.get(0, Trajectory.X), out[Trajectory.X], 0);
+    trajectory.sample(Double.NaN, out);
+    assertEquals(trajectory.get(0, Trajectory.X), out[Trajectory.X], 0);
+    trajectory.sample(trajectory.getTotalTime() + 5, out);
+    assertEquals(trajectory.get(trajectory.size() - 1, Trajectory.Y), out[Trajectory.Y], 0);
+
+    trajectory.sample(10.5 * PERIOD, out);
+    for (int field = 0; field < Trajectory.STRIDE; field++) {
+      assertEquals((trajectory.get(10, field) + trajectory.get(11, field)) / 2, out[field], 1e-9);
+    }
+  }
+
+  private File write(String... lines) throws IOException {
+    File file = m_folder.newFile("path.csv");
+    Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    return file;
+  }
+}
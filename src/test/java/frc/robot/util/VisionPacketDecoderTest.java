@@ -0,0 +1,154 @@
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class VisionPacketDecoderTest {
+  private static ByteBuffer binaryFrame(short magic, byte version, byte direction, int sequence, long timestamp,
+      float degreesX, float distance, float width) {
+    ByteBuffer buffer = ByteBuffer.allocate(VisionPacketDecoder.FRAME_SIZE);
+    buffer.putShort(magic);
+    buffer.put(version);
+    buffer.put(direction);
+    buffer.putInt(sequence);
+    buffer.putLong(timestamp);
+    buffer.putFloat(degreesX);
+    buffer.putFloat(distance);
+    buffer.putFloat(width);
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer goodFrame() {
+    return binaryFrame(VisionPacketDecoder.MAGIC, VisionPacketDecoder.VERSION, VisionPacketDecoder.DIRECTION_RIGHT,
+        42, 123_456_789_012L, -3.25f, 112.5f, 18.75f);
+  }
+
+  private static ByteBuffer text(String packet) {
+    return ByteBuffer.wrap(packet.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void decodesBinaryFrame() {
+    VisionPacketDecoder decoder = new VisionPacketDecoder(false);
+    assertTrue(decoder.decode(goodFrame()));
+    assertTrue(decoder.wasBinary());
+    assertEquals(42, decoder.getSequence());
+    assertEquals(123_456_789_012L, decoder.getTimestampMicros());
+    assertEquals(-3.25, decoder.getDegreesX(), 0);
+    assertEquals(112.5, decoder.getDistance(), 0);
+    assertEquals(18.75, decoder.getWidth(), 0);
+    assertEquals(SocketVision.RIGHT, decoder.getDirection());
+  }
+
+  @Test
+  public void decodesFromTheBufferPositionWithoutMovingIt() {
+    ByteBuffer frame = goodFrame();
+    ByteBuffer buffer = ByteBuffer.allocate(5 + frame.remaining());
+    buffer.put(new byte[5]).put(frame).flip();
+    buffer.position(5);
+
+    VisionPacketDecoder decoder = new VisionPacketDecoder(false);
+    assertTrue(decoder.decode(buffer));
+    assertEquals(5, buffer.position());
+    assertEquals(42, decoder.getSequence());
+    assertEquals(112.5, decoder.getDistance(), 0);
+  }
+
+  @Test
+  public void rejectsBadMagic() {
+    VisionPacketDecoder decoder = new VisionPacketDecoder(false);
+    assertFalse(decoder.decode(binaryFrame((short) (VisionPacketDecoder.MAGIC + 1), VisionPacketDecoder.VERSION,
+        VisionPacketDecoder.DIRECTION_LEFT, 1, 2, 3, 4, 5)));
+  }
+
+  @Test
+  public void rejectsBadVersionAndDirection() {
+    VisionPacketDecoder decoder = new VisionPacketDecoder(true);
+    assertFalse(decoder.decode(binaryFrame(VisionPacketDecoder.MAGIC, (byte) (VisionPacketDecoder.VERSION + 1),
+        VisionPacketDecoder.DIRECTION_LEFT, 1, 2, 3, 4, 5)));
+    assertFalse(decoder.decode(binaryFrame(VisionPacketDecoder.MAGIC, VisionPacketDecoder.VERSION, (byte) 9,
+        1, 2, 3, 4, 5)));
+  }
+
+  @Test
+  public void rejectsTruncatedBinaryFrame() {
+    ByteBuffer frame = goodFrame();
+    frame.limit(VisionPacketDecoder.FRAME_SIZE - 1);
+    assertFalse(new VisionPacketDecoder(false).decode(frame));
+    frame.limit(2);
+    assertFalse(new VisionPacketDecoder(false).decode(frame));
+    frame.limit(0);
+    assertFalse(new VisionPacketDecoder(true).decode(frame));
+  }
+
+  @Test
+  public void failedDecodeKeepsTheLastFrame() {
+    VisionPacketDecoder decoder = new VisionPacketDecoder(true);
+    assertTrue(decoder.decode(goodFrame()));
+    assertFalse(decoder.decode(text("garbage without a colon")));
+    assertFalse(decoder.decode(text("RFT: 1.0, 2.0")));
+    assertTrue(decoder.wasBinary());
+    assertEquals(42, decoder.getSequence());
+    assertEquals(-3.25, decoder.getDegreesX(), 0);
+    assertEquals(SocketVision.RIGHT, decoder.getDirection());
+  }
+
+  @Test
+  public void decodesTextFrame() {
+    VisionPacketDecoder decoder = new VisionPacketDecoder(true);
+    assertTrue(decoder.decode(text("RFT: -12.5, 96.25, 40, 90.0, L")));
+    assertFalse(decoder.wasBinary());
+    assertEquals(-12.5, decoder.getDegreesX(), 0);
+    assertEquals(96.25, decoder.getDistance(), 0);
+    assertEquals(40, decoder.getWidth(), 0);
+    assertEquals(SocketVision.LEFT, decoder.getDirection());
+
+    assertTrue(decoder.decode(text("PC:+1.5e1,2E-1,0.000123,0,center\n")));
+    assertEquals(15, decoder.getDegreesX(), 1e-12);
+    assertEquals(0.2, decoder.getDistance(), 1e-12);
+    assertEquals(0.000123, decoder.getWidth(), 1e-15);
+    assertEquals(SocketVision.CENTER, decoder.getDirection());
+
+    assertTrue(decoder.decode(text("RFT: 1, 2, 3, 4, nothing")));
+    assertEquals(SocketVision.NADA, decoder.getDirection());
+  }
+
+  @Test
+  public void textMatchesDoubleParse() {
+    VisionPacketDecoder decoder = new VisionPacketDecoder(true);
+    String[] values = { "0", "7", "-0.5", "3.14159265358979", "123456.789", "1e-3", "98.6000000000000000001" };
+    for (String value : values) {
+      assertTrue(value, decoder.decode(text("RFT: " + value + ", 1, 1, 1, R")));
+      assertEquals(value, Double.parseDouble(value), decoder.getDegreesX(), Math.ulp(Double.parseDouble(value)) * 2);
+    }
+  }
+
+  @Test
+  public void rejectsTruncatedAndMalformedText() {
+    VisionPacketDecoder decoder = new VisionPacketDecoder(true);
+    assertFalse(decoder.decode(text("RFT: 1.0, 2.0, 3.0, 4.0")));
+    assertFalse(decoder.decode(text("RFT: 1.0, 2.0, 3.0, 4.0, ")));
+    assertFalse(decoder.decode(text("RFT: 1.0, far, 3.0, 4.0, L")));
+    assertFalse(decoder.decode(text("RFT:")));
+  }
+
+  @Test
+  public void ignoresTextWhenDisabled() {
+    assertFalse(new VisionPacketDecoder(false).decode(text("RFT: -12.5, 96.25, 40, 90.0, L")));
+  }
+
+  @Test
+  public void directionCodesRoundTrip() {
+    String[] directions = { SocketVision.NADA, SocketVision.LEFT, SocketVision.CENTER, SocketVision.RIGHT };
+    for (String direction : directions) {
+      assertEquals(direction, VisionPacketDecoder.directionFromCode(VisionPacketDecoder.codeFromDirection(direction)));
+    }
+  }
+}